@@ -2,6 +2,7 @@ package com.wwdablu.soumya.cam2libsample;
 
 import android.Manifest;
 import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
 import android.hardware.camera2.CameraDevice;
 import android.media.Image;
 import android.os.Handler;
@@ -17,17 +18,26 @@ import android.widget.Toast;
 
 import com.wwdablu.soumya.cam2lib.Cam2Lib;
 import com.wwdablu.soumya.cam2lib.Cam2LibCallback;
+import com.wwdablu.soumya.cam2lib.Cam2LibCameraCache;
 import com.wwdablu.soumya.cam2lib.Cam2LibConverter;
+import com.wwdablu.soumya.cam2lib.Cam2LibExecutors;
+import com.wwdablu.soumya.cam2lib.Cam2LibOrientation;
+
+import java.util.concurrent.ExecutorService;
 
 public class MainActivity extends AppCompatActivity implements Cam2LibCallback {
 
     private Cam2Lib cam2Lib;
     private ImageView mImageView;
+    private Cam2LibConverter mConverter = new Cam2LibConverter();
+    private Bitmap mCapturedBitmap;
+    private ExecutorService mImageExecutor = Cam2LibExecutors.newImagePool(1);
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
+        Cam2LibCameraCache.warmUp(this);
 
         boolean cameraPermission = ContextCompat.checkSelfPermission(this,
             Manifest.permission.CAMERA) == PackageManager.PERMISSION_GRANTED;
@@ -52,10 +62,28 @@ public class MainActivity extends AppCompatActivity implements Cam2LibCallback {
         }
     }
 
+    @Override
+    protected void onPause() {
+        super.onPause();
+        if(cam2Lib != null) {
+            //Coming back within a few seconds only restarts the preview
+            cam2Lib.suspend(5000);
+        }
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        if(cam2Lib != null) {
+            cam2Lib.resume();
+        }
+    }
+
     @Override
     public void onBackPressed() {
         cam2Lib.stopPreview();
         cam2Lib.close();
+        mImageExecutor.shutdown();
         finish();
     }
 
@@ -63,38 +91,52 @@ public class MainActivity extends AppCompatActivity implements Cam2LibCallback {
 
         cam2Lib = new Cam2Lib(this, this);
         cam2Lib.enableDebugLogs(true);
+        cam2Lib.setCallbackExecutors(Cam2LibExecutors.mainThread(), mImageExecutor);
         cam2Lib.open(findViewById(R.id.texv_capture), CameraDevice.TEMPLATE_PREVIEW);
 
         mImageView = findViewById(R.id.iv_capture);
 
-        findViewById(R.id.btn_capture).setOnClickListener(view -> cam2Lib.getImage());
+        findViewById(R.id.btn_capture).setOnClickListener(view -> {
+            cam2Lib.setDeviceOrientation(Cam2LibOrientation.getDeviceDegrees(
+                    getWindowManager().getDefaultDisplay().getRotation()));
+            cam2Lib.getImage();
+        });
     }
 
     @Override
     public void onReady() {
         Log.d("App", "onReady has been called.");
-        runOnUiThread(() -> findViewById(R.id.btn_capture).setVisibility(View.VISIBLE));
+        findViewById(R.id.btn_capture).setVisibility(View.VISIBLE);
         cam2Lib.startPreview();
     }
 
     @Override
     public void onComplete() {
         Log.d("App", "onComplete called.");
-        runOnUiThread(() -> findViewById(R.id.btn_capture).setVisibility(View.GONE));
+        findViewById(R.id.btn_capture).setVisibility(View.GONE);
     }
 
     @Override
     public void onImage(Image image) {
+        //Called on the image executor, decode here and only touch the views on the main thread
+        Bitmap bitmap = mConverter.decode(image, false);
+        runOnUiThread(() -> showCapture(bitmap));
+    }
+
+    private void showCapture(Bitmap bitmap) {
         cam2Lib.stopPreview();
 
         findViewById(R.id.texv_capture).setVisibility(View.GONE);
         mImageView.setVisibility(View.VISIBLE);
-        mImageView.setImageBitmap(Cam2LibConverter.toBitmap(image, false));
+        mCapturedBitmap = bitmap;
+        mImageView.setImageBitmap(mCapturedBitmap);
         findViewById(R.id.btn_capture).setVisibility(View.GONE);
 
         new Handler().postDelayed(() -> {
             findViewById(R.id.texv_capture).setVisibility(View.VISIBLE);
             mImageView.setVisibility(View.GONE);
+            mImageView.setImageBitmap(null);
+            mConverter.recycle(mCapturedBitmap);
             findViewById(R.id.btn_capture).setVisibility(View.VISIBLE);
             cam2Lib.startPreview();
         }, 3000);
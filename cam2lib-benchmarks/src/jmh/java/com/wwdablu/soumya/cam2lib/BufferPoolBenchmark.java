@@ -0,0 +1,31 @@
+package com.wwdablu.soumya.cam2lib;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Taking an array from the pool used for JPEG data and giving it back
+ */
+@State(Scope.Thread)
+public class BufferPoolBenchmark {
+
+    @Param({"65536", "1048576"})
+    public int length;
+
+    private ByteArrayPool mPool;
+
+    @Setup
+    public void setup() {
+        mPool = new ByteArrayPool(64L * 1024 * 1024);
+    }
+
+    @Benchmark
+    public byte[] acquireRelease() {
+        byte[] bytes = mPool.acquire(length);
+        mPool.release(bytes);
+        return bytes;
+    }
+}
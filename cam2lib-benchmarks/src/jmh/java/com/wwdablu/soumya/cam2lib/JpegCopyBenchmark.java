@@ -0,0 +1,52 @@
+package com.wwdablu.soumya.cam2lib;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Copying the JPEG data out of the image buffer before decoding, into a new array as done by
+ * {@link Cam2LibConverter#toBitmap(android.media.Image, boolean)} and into a pooled array as
+ * done by the instance decode methods.
+ */
+@State(Scope.Thread)
+public class JpegCopyBenchmark {
+
+    /**
+     * Sizes of JPEGs of good quality from 1MP, 5MP and 12MP captures
+     */
+    @Param({"131072", "655360", "1572864"})
+    public int length;
+
+    private ByteBuffer mBuffer;
+    private ByteArrayPool mPool;
+
+    @Setup
+    public void setup() {
+        //Image planes are direct buffers
+        mBuffer = ByteBuffer.allocateDirect(length);
+        for (int index = 0; index < length; index++) {
+            mBuffer.put(index, (byte) index);
+        }
+        mPool = new ByteArrayPool(64L * 1024 * 1024);
+    }
+
+    @Benchmark
+    public byte[] copyToNewArray() {
+        ByteBuffer buffer = mBuffer.duplicate();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    @Benchmark
+    public byte[] copyToPooledArray() {
+        byte[] bytes = Cam2LibConverter.copyPooled(mBuffer, mPool);
+        mPool.release(bytes);
+        return bytes;
+    }
+}
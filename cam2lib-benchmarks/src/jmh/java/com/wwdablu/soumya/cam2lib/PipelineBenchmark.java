@@ -0,0 +1,109 @@
+package com.wwdablu.soumya.cam2lib;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The frame streaming end to end: a synthetic source producing YUV frames at the camera rate,
+ * the dispatcher applying the backpressure policy, and a consumer converting every frame to
+ * ARGB on the delivery thread. One operation is one frame delivered, so the score is the time
+ * per delivered frame, which gives the frames per second, and gc.alloc.rate.norm is the bytes
+ * allocated per frame. The latency from a frame being produced to the end of its conversion,
+ * and the frames dropped and skipped, are printed after every iteration.
+ */
+@State(Scope.Benchmark)
+public class PipelineBenchmark {
+
+    private static final int YUV_420_888 = 0x23;
+    private static final int OUTPUT_ARGB = 0;
+    private static final int DEPTH = 3;
+
+    @Param({"640x480", "1920x1080"})
+    public String resolution;
+
+    @Param({"30", "240"})
+    public int fps;
+
+    @Param({"KEEP_LATEST", "BOUNDED_QUEUE", "BLOCK"})
+    public String policy;
+
+    private final Semaphore mDelivered = new Semaphore(0);
+    private final LatencyHistogram mLatency = new LatencyHistogram();
+
+    private SyntheticFrameSource mSource;
+    private FrameDispatcher<SyntheticFrame> mDispatcher;
+    private ExecutorService mDelivery;
+    private long mDroppedAtStart;
+    private long mSkippedAtStart;
+
+    @Setup(Level.Trial)
+    public void setup() {
+
+        String[] dimensions = resolution.split("x");
+        final int width = Integer.parseInt(dimensions[0]);
+        final int height = Integer.parseInt(dimensions[1]);
+
+        final Cam2LibYuvConverter converter = new Cam2LibYuvConverter(null, 1);
+        final int[] argb = new int[width * height];
+
+        mSource = new SyntheticFrameSource(width, height, YUV_420_888, DEPTH, fps);
+        mDelivery = Executors.newSingleThreadExecutor();
+        mDispatcher = new FrameDispatcher<>(mSource, FrameDispatcher.Policy.valueOf(policy), DEPTH,
+                new FrameDispatcher.Consumer<SyntheticFrame>() {
+                    @Override
+                    public void onFrame(SyntheticFrame frame) {
+
+                        converter.convertPlanes(frame.planes[0], frame.rowStrides[0], frame.pixelStrides[0],
+                                frame.planes[1], frame.rowStrides[1], frame.pixelStrides[1],
+                                frame.planes[2], frame.rowStrides[2], frame.pixelStrides[2],
+                                frame.width, frame.height, OUTPUT_ARGB, argb, null);
+
+                        mLatency.recordNanos(System.nanoTime() - frame.timestamp);
+                        mDispatcher.release(frame);
+                        mDelivered.release();
+                    }
+                }, mSource.getExecutor(), mDelivery);
+        mDispatcher.start();
+    }
+
+    @Setup(Level.Iteration)
+    public void startIteration() {
+        //Frames delivered between the iterations are not counted
+        mDelivered.drainPermits();
+        mLatency.reset();
+        mDroppedAtStart = mDispatcher.getDroppedCount();
+        mSkippedAtStart = mSource.getSkippedCount();
+    }
+
+    @Benchmark
+    public void deliver() throws InterruptedException {
+        if(!mDelivered.tryAcquire(1, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("No frame was delivered within a second");
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void report() {
+        System.out.println("latency p50=" + mLatency.getPercentileMicros(50) + "us p99=" +
+                mLatency.getPercentileMicros(99) + "us max=" + mLatency.getMaxMicros() + "us, dropped=" +
+                (mDispatcher.getDroppedCount() - mDroppedAtStart) + ", skipped=" +
+                (mSource.getSkippedCount() - mSkippedAtStart));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        mDispatcher.stop();
+        mDelivery.shutdown();
+        mDelivery.awaitTermination(1, TimeUnit.SECONDS);
+    }
+}
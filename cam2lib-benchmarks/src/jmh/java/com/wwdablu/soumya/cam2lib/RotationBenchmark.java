@@ -0,0 +1,53 @@
+package com.wwdablu.soumya.cam2lib;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Rotating converted frames into reused output arrays
+ */
+@State(Scope.Thread)
+public class RotationBenchmark {
+
+    private static final int WIDTH = 1920;
+    private static final int HEIGHT = 1080;
+
+    @Param({"90", "180", "270"})
+    public int degrees;
+
+    @Param({"false", "true"})
+    public boolean mirror;
+
+    private int[] mArgb;
+    private int[] mRotatedArgb;
+    private byte[] mNv21;
+    private byte[] mRotatedNv21;
+
+    @Setup
+    public void setup() {
+        mArgb = new int[WIDTH * HEIGHT];
+        mRotatedArgb = new int[WIDTH * HEIGHT];
+        for (int index = 0; index < mArgb.length; index++) {
+            mArgb[index] = index;
+        }
+
+        mNv21 = new byte[Cam2LibYuvConverter.yuv420Size(WIDTH, HEIGHT)];
+        mRotatedNv21 = new byte[mNv21.length];
+        for (int index = 0; index < mNv21.length; index++) {
+            mNv21[index] = (byte) index;
+        }
+    }
+
+    @Benchmark
+    public int[] rotateArgb() {
+        return Cam2LibOrientation.rotateArgb(mArgb, WIDTH, HEIGHT, degrees, mirror, mRotatedArgb);
+    }
+
+    @Benchmark
+    public byte[] rotateNv21() {
+        return Cam2LibOrientation.rotateNv21(mNv21, WIDTH, HEIGHT, degrees, mirror, mRotatedNv21);
+    }
+}
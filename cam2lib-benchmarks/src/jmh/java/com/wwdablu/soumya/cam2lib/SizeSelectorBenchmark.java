@@ -0,0 +1,62 @@
+package com.wwdablu.soumya.cam2lib;
+
+import android.util.Size;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Selecting a size from the output sizes of a typical back camera
+ */
+@State(Scope.Thread)
+public class SizeSelectorBenchmark {
+
+    private static final int[][] SIZES = {
+            {4032, 3024}, {4000, 3000}, {4032, 2268}, {3840, 2160}, {3264, 2448}, {3264, 1836},
+            {3024, 3024}, {2976, 2976}, {2880, 2160}, {2592, 1944}, {2560, 1440}, {2400, 1080},
+            {2048, 1536}, {2048, 1152}, {1920, 1440}, {1920, 1080}, {1600, 1200}, {1440, 1080},
+            {1280, 960}, {1280, 720}, {1088, 1088}, {1024, 768}, {960, 720}, {800, 600},
+            {720, 480}, {640, 480}, {640, 360}, {352, 288}, {320, 240}, {176, 144}
+    };
+
+    private Size[] mChoices;
+    private Cam2LibSizeSelector mLargest;
+    private Cam2LibSizeSelector mClosestTo;
+    private Cam2LibSizeSelector mMaxPixels;
+    private Cam2LibSizeSelector mAspectRatio;
+
+    @Setup
+    public void setup() {
+        mChoices = new Size[SIZES.length];
+        for (int index = 0; index < SIZES.length; index++) {
+            mChoices[index] = new Size(SIZES[index][0], SIZES[index][1]);
+        }
+
+        mLargest = Cam2LibSizeSelectors.largest();
+        mClosestTo = Cam2LibSizeSelectors.closestTo(1920, 1080);
+        mMaxPixels = Cam2LibSizeSelectors.maxPixels(2_000_000);
+        mAspectRatio = Cam2LibSizeSelectors.aspectRatio(16, 9, Cam2LibSizeSelectors.largest());
+    }
+
+    @Benchmark
+    public Size largest() {
+        return mLargest.select(mChoices);
+    }
+
+    @Benchmark
+    public Size closestTo() {
+        return mClosestTo.select(mChoices);
+    }
+
+    @Benchmark
+    public Size maxPixels() {
+        return mMaxPixels.select(mChoices);
+    }
+
+    @Benchmark
+    public Size aspectRatio() {
+        return mAspectRatio.select(mChoices);
+    }
+}
@@ -0,0 +1,36 @@
+package com.wwdablu.soumya.cam2lib;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The ring which holds the frames for zero shutter lag, with a frame arriving every 33ms and a
+ * capture taking the frame closest to its trigger every 8 frames
+ */
+@State(Scope.Thread)
+public class TimestampRingBenchmark {
+
+    private static final long FRAME_NANOS = 33_000_000L;
+
+    private TimestampRing<Object> mRing;
+    private Object mItem;
+    private long mFrames;
+
+    @Setup
+    public void setup() {
+        mRing = new TimestampRing<>(8);
+        mItem = new Object();
+    }
+
+    @Benchmark
+    public Object addAndTake() {
+        long timestamp = ++mFrames * FRAME_NANOS;
+        Object evicted = mRing.add(timestamp, mItem);
+        if(mFrames % 8 == 0) {
+            return mRing.removeClosest(timestamp - FRAME_NANOS / 2);
+        }
+        return evicted;
+    }
+}
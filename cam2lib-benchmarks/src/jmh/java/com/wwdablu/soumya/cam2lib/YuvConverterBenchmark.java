@@ -0,0 +1,130 @@
+package com.wwdablu.soumya.cam2lib;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converting YUV_420_888 planes on the calling thread, for the plane layouts reported by camera
+ * HALs and for preview, video and still resolutions.
+ */
+@State(Scope.Thread)
+public class YuvConverterBenchmark {
+
+    public enum Layout {
+        /**
+         * Separate chroma planes with a pixel stride of 1, rows without padding
+         */
+        PLANAR,
+
+        /**
+         * Interleaved VU chroma with a pixel stride of 2, rows without padding
+         */
+        SEMI_PLANAR,
+
+        /**
+         * Interleaved VU chroma with rows padded to 64 bytes, as on most devices
+         */
+        SEMI_PLANAR_PADDED
+    }
+
+    private static final int OUTPUT_ARGB = 0;
+    private static final int OUTPUT_NV21 = 1;
+    private static final int OUTPUT_I420 = 2;
+
+    @Param({"640x480", "1920x1080", "4032x3024"})
+    public String resolution;
+
+    @Param
+    public Layout layout;
+
+    private int mWidth;
+    private int mHeight;
+    private ByteBuffer mY, mU, mV;
+    private int mYRowStride, mChromaRowStride, mChromaPixelStride;
+
+    private Cam2LibYuvConverter mConverter;
+    private int[] mArgb;
+    private byte[] mBytes;
+
+    @Setup
+    public void setup() {
+
+        String[] dimensions = resolution.split("x");
+        mWidth = Integer.parseInt(dimensions[0]);
+        mHeight = Integer.parseInt(dimensions[1]);
+
+        int chromaWidth = (mWidth + 1) / 2;
+        int chromaHeight = (mHeight + 1) / 2;
+        int alignment = layout == Layout.SEMI_PLANAR_PADDED ? 64 : 1;
+
+        mYRowStride = align(mWidth, alignment);
+        mY = fill(ByteBuffer.allocateDirect(mYRowStride * mHeight));
+
+        if(layout == Layout.PLANAR) {
+            mChromaRowStride = chromaWidth;
+            mChromaPixelStride = 1;
+            mU = fill(ByteBuffer.allocateDirect(chromaWidth * chromaHeight));
+            mV = fill(ByteBuffer.allocateDirect(chromaWidth * chromaHeight));
+        } else {
+            //The U plane starts one byte into the memory of the V plane
+            mChromaRowStride = align(2 * chromaWidth, alignment);
+            mChromaPixelStride = 2;
+            ByteBuffer chroma = fill(ByteBuffer.allocateDirect(mChromaRowStride * chromaHeight));
+            int limit = mChromaRowStride * (chromaHeight - 1) + 2 * chromaWidth - 1;
+
+            ByteBuffer v = chroma.duplicate();
+            v.limit(limit);
+            mV = v.slice();
+
+            ByteBuffer u = chroma.duplicate();
+            u.position(1);
+            u.limit(limit + 1);
+            mU = u.slice();
+        }
+
+        mConverter = new Cam2LibYuvConverter(null, 1);
+        mArgb = new int[mWidth * mHeight];
+        mBytes = new byte[Cam2LibYuvConverter.yuv420Size(mWidth, mHeight)];
+    }
+
+    @Benchmark
+    public int[] toArgb() {
+        convert(OUTPUT_ARGB);
+        return mArgb;
+    }
+
+    @Benchmark
+    public byte[] toNv21() {
+        convert(OUTPUT_NV21);
+        return mBytes;
+    }
+
+    @Benchmark
+    public byte[] toI420() {
+        convert(OUTPUT_I420);
+        return mBytes;
+    }
+
+    private void convert(int output) {
+        mConverter.convertPlanes(mY, mYRowStride, 1,
+                mU, mChromaRowStride, mChromaPixelStride,
+                mV, mChromaRowStride, mChromaPixelStride,
+                mWidth, mHeight, output, mArgb, mBytes);
+    }
+
+    private static ByteBuffer fill(ByteBuffer buffer) {
+        for (int index = 0; index < buffer.capacity(); index++) {
+            buffer.put(index, (byte) (index * 31));
+        }
+        return buffer;
+    }
+
+    private static int align(int value, int alignment) {
+        return (value + alignment - 1) / alignment * alignment;
+    }
+}
@@ -0,0 +1,84 @@
+package com.wwdablu.soumya.cam2lib;
+
+import android.graphics.Bitmap;
+import android.util.LongSparseArray;
+
+import java.util.ArrayDeque;
+
+/**
+ * Pool of mutable bitmaps keyed by their dimensions and configuration so that they can be
+ * passed as {@link android.graphics.BitmapFactory.Options#inBitmap}.
+ */
+final class BitmapPool {
+
+    private final LongSparseArray<ArrayDeque<Bitmap>> mBuckets = new LongSparseArray<>();
+    private final int mMaxPerKey;
+
+    private long mHits;
+    private long mMisses;
+
+    BitmapPool(int maxPerKey) {
+        this.mMaxPerKey = maxPerKey;
+    }
+
+    /**
+     * Get a pooled bitmap of the exact dimensions and configuration
+     * @return Pooled bitmap or null if none is available
+     */
+    synchronized Bitmap acquire(int width, int height, Bitmap.Config config) {
+
+        ArrayDeque<Bitmap> bucket = mBuckets.get(keyOf(width, height, config));
+        if(bucket != null && !bucket.isEmpty()) {
+            mHits++;
+            return bucket.pop();
+        }
+
+        mMisses++;
+        return null;
+    }
+
+    /**
+     * Return a bitmap back to the pool. Immutable or recycled bitmaps are ignored.
+     * @param bitmap Bitmap which is no longer used by the caller
+     */
+    synchronized void release(Bitmap bitmap) {
+
+        if(bitmap == null || bitmap.isRecycled() || !bitmap.isMutable() || bitmap.getConfig() == null) {
+            return;
+        }
+
+        long key = keyOf(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+        ArrayDeque<Bitmap> bucket = mBuckets.get(key);
+        if(bucket == null) {
+            bucket = new ArrayDeque<>(mMaxPerKey);
+            mBuckets.put(key, bucket);
+        }
+
+        if(bucket.size() < mMaxPerKey && !bucket.contains(bitmap)) {
+            bucket.push(bitmap);
+        } else {
+            bitmap.recycle();
+        }
+    }
+
+    synchronized void clear() {
+        for (int index = 0; index < mBuckets.size(); index++) {
+            for (Bitmap bitmap : mBuckets.valueAt(index)) {
+                bitmap.recycle();
+            }
+        }
+        mBuckets.clear();
+    }
+
+    synchronized long getHitCount() {
+        return mHits;
+    }
+
+    synchronized long getMissCount() {
+        return mMisses;
+    }
+
+    private static long keyOf(int width, int height, Bitmap.Config config) {
+        return ((long) width << 32) | ((long) height << 8) | config.ordinal();
+    }
+}
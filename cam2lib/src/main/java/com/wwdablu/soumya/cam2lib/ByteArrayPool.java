@@ -0,0 +1,108 @@
+package com.wwdablu.soumya.cam2lib;
+
+import java.util.ArrayDeque;
+
+/**
+ * Pool of byte arrays grouped into power of two size classes. An array handed out is at least
+ * as large as requested, so the caller has to track the length of the valid data.
+ */
+final class ByteArrayPool {
+
+    private static final int MIN_SIZE_CLASS = 16;
+    private static final int SIZE_CLASSES = 32;
+
+    private final ArrayDeque<byte[]>[] mBuckets;
+    private final long mMaxPooledBytes;
+    private long mPooledBytes;
+
+    private long mHits;
+    private long mMisses;
+
+    ByteArrayPool(long maxPooledBytes) {
+        this.mMaxPooledBytes = maxPooledBytes;
+
+        //Generic arrays cannot be created, the buckets are only ever filled with byte arrays
+        @SuppressWarnings("unchecked")
+        ArrayDeque<byte[]>[] buckets = (ArrayDeque<byte[]>[]) new ArrayDeque<?>[SIZE_CLASSES];
+        this.mBuckets = buckets;
+    }
+
+    /**
+     * Get an array which can hold at least the given number of bytes
+     * @param minLength Number of bytes required
+     * @return Pooled array if one is available, else a newly allocated one
+     */
+    synchronized byte[] acquire(int minLength) {
+
+        int sizeClass = sizeClassOf(minLength);
+        ArrayDeque<byte[]> bucket = mBuckets[sizeClass];
+
+        if(bucket != null && !bucket.isEmpty()) {
+            byte[] bytes = bucket.pop();
+            mPooledBytes -= bytes.length;
+            mHits++;
+            return bytes;
+        }
+
+        mMisses++;
+        return new byte[1 << sizeClass];
+    }
+
+    /**
+     * Return an array obtained from {@link #acquire(int)} back to the pool
+     * @param bytes Array to be reused
+     */
+    synchronized void release(byte[] bytes) {
+
+        if(bytes == null || Integer.bitCount(bytes.length) != 1 || bytes.length < (1 << MIN_SIZE_CLASS)) {
+            return;
+        }
+
+        if(mPooledBytes + bytes.length > mMaxPooledBytes) {
+            return;
+        }
+
+        int sizeClass = Integer.numberOfTrailingZeros(bytes.length);
+        if(mBuckets[sizeClass] == null) {
+            mBuckets[sizeClass] = new ArrayDeque<>();
+        }
+
+        mBuckets[sizeClass].push(bytes);
+        mPooledBytes += bytes.length;
+    }
+
+    synchronized void clear() {
+        for (ArrayDeque<byte[]> bucket : mBuckets) {
+            if(bucket != null) {
+                bucket.clear();
+            }
+        }
+        mPooledBytes = 0;
+    }
+
+    synchronized long getHitCount() {
+        return mHits;
+    }
+
+    synchronized long getMissCount() {
+        return mMisses;
+    }
+
+    synchronized long getPooledBytes() {
+        return mPooledBytes;
+    }
+
+    private static int sizeClassOf(int length) {
+
+        if(length <= (1 << MIN_SIZE_CLASS)) {
+            return MIN_SIZE_CLASS;
+        }
+
+        int sizeClass = 32 - Integer.numberOfLeadingZeros(length - 1);
+        if(sizeClass >= SIZE_CLASSES - 1) {
+            throw new IllegalArgumentException("Cannot pool an array of " + length + " bytes");
+        }
+
+        return sizeClass;
+    }
+}
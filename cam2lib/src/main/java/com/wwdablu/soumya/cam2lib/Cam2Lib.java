@@ -4,31 +4,45 @@ import android.Manifest;
 import android.content.Context;
 import android.content.pm.PackageManager;
 import android.graphics.ImageFormat;
+import android.graphics.Rect;
 import android.graphics.SurfaceTexture;
 import android.hardware.camera2.CameraAccessException;
 import android.hardware.camera2.CameraCaptureSession;
 import android.hardware.camera2.CameraCharacteristics;
 import android.hardware.camera2.CameraDevice;
 import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.CaptureFailure;
 import android.hardware.camera2.CaptureRequest;
-import android.hardware.camera2.params.StreamConfigurationMap;
+import android.hardware.camera2.TotalCaptureResult;
+import android.hardware.camera2.params.OutputConfiguration;
 import android.media.Image;
 import android.media.ImageReader;
 import android.os.Build;
 import android.os.Handler;
 import android.os.HandlerThread;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.RequiresApi;
 import android.support.v4.content.ContextCompat;
 import android.text.TextUtils;
 import android.util.Log;
+import android.util.Range;
+import android.util.LongSparseArray;
 import android.util.Size;
 import android.util.SparseArray;
 import android.view.Surface;
 import android.view.TextureView;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public final class Cam2Lib {
 
@@ -57,17 +71,72 @@ public final class Cam2Lib {
         }
     }
 
+    /**
+     * Defines what happens to the streamed frames when the consumer is slower than the camera.
+     */
+    public enum Backpressure {
+        /**
+         * Only the most recent frame is kept, older undelivered frames are dropped.
+         */
+        KEEP_LATEST,
+
+        /**
+         * Frames are queued up to the stream depth, the oldest undelivered frame is dropped
+         * when the queue is full.
+         */
+        BOUNDED_QUEUE,
+
+        /**
+         * Every acquired frame is delivered in order. When the consumer holds the whole stream
+         * depth, frames are left in the reader and the camera drops them for this stream only.
+         */
+        BLOCK
+    }
+
+    /**
+     * State of the camera session
+     */
+    public enum State {
+        /**
+         * No camera is open
+         */
+        CLOSED,
+
+        /**
+         * The camera is being opened or the session configured
+         */
+        OPENING,
+
+        /**
+         * The session is configured and the preview can run
+         */
+        READY,
+
+        /**
+         * The preview is stopped but the camera and its session are kept open, so that
+         * {@link #resume()} only needs to restart the preview
+         */
+        SUSPENDED
+    }
+
     private Context mContext;
     private Cam2LibCallback mCallback;
+    private Executor mCallbackExecutor = Cam2LibExecutors.direct();
+    private Executor mImageExecutor;
     private boolean mEnableDebugLogging;
 
-    private SparseArray<String> mCameraMap;
+    private volatile SparseArray<String> mCameraMap;
+    private volatile int mCameraMapGeneration;
     private Camera mWhichCamera;
 
     private CameraManager mCameraManager;
+    private Cam2LibCameraCache mCameraCache;
     private CameraDevice mCameraDevice;
     private String mCurrentCameraToUse;
     private ImageReader mImageReader;
+    private Map<String, ImageReader> mImageReaders = new HashMap<>();
+    private CameraDevice mClosingCameraDevice;
+    private SurfaceTexture mPreviewSurfaceTexture;
     private Handler mCameraStateHandler;
     private HandlerThread mCameraHandlerThread;
     private TextureView mCameraTextureView;
@@ -76,208 +145,1504 @@ public final class Cam2Lib {
     private CaptureRequest.Builder mImageCaptureReader;
     private CameraCharacteristics mCameraCharacter;
     private int mOpenedCameraForType;
+    private FrameStreamer mFrameStreamer;
+    private ZslCapture mZsl;
+    private Cam2LibSizeSelector mFrameSizeSelector;
+    private Cam2LibSizeSelector mStillSizeSelector = Cam2LibSizeSelectors.largest();
+    private Cam2LibSizeSelector mPreviewSizeSelector;
+    private Cam2LibSizeSelector mThumbnailSizeSelector;
+
+    private Cam2LibBurstCallback mBurstCallback;
+    private Cam2LibFrameListener mStillFrameListener;
+    private AtomicInteger mHeldStillImages = new AtomicInteger();
+    private volatile boolean mStillImagesStarved;
+    private int mBurstDepth = 1;
+    //Taken by the caller of captureBurst and by the camera thread for continuous captures
+    private final AtomicInteger mNextBurstIndex = new AtomicInteger();
+    private boolean mContinuousCapture;
+    private LongSparseArray<Integer> mBurstIndices = new LongSparseArray<>();
+    private Surface mPreviewSurface;
+    private Size mPreviewSize;
+    private OutputConfiguration mDeferredPreviewConfig;
+    private boolean mPreviewAttached;
+    private boolean mPreviewRunning;
+    private boolean mReconfiguring;
+    //Range asked for by the app, the one applied depends on the camera in use
+    private volatile Range<Integer> mRequestedFpsRange;
+    private volatile Range<Integer> mFpsRange;
+    private volatile float mZoom = 1f;
+    private volatile Rect mRequestedCropRegion;
+    private volatile Rect mCropRegion;
+    private volatile int mDeviceOrientation;
+    private volatile State mState = State.CLOSED;
+    private volatile boolean mPreviewTextureDetached;
+    private Cam2LibStartupTimings mStartupTimings = new Cam2LibStartupTimings();
+
+    private volatile Cam2LibMetrics mMetrics;
+    private Cam2LibMetrics.Listener mMetricsListener;
+    private long mMetricsReportInterval;
 
     public Cam2Lib(@NonNull Context context, @NonNull Cam2LibCallback callback) {
         this.mContext = context;
         this.mCallback = callback;
         this.mCameraManager = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
+        this.mCameraCache = Cam2LibCameraCache.getInstance(context);
         this.mWhichCamera = Camera.BACK;
 
+        setCamera();
+    }
+
+    /**
+     * Check whether front camera is supported or not.
+     * @return Is front camera supported
+     */
+    public boolean hasFrontCamera() {
+        refreshCameraMap();
+        return mCameraMap != null && !TextUtils.isEmpty(mCameraMap.get(CameraCharacteristics.LENS_FACING_FRONT));
+    }
+
+    /**
+     * Check whether back camera is supported or not.
+     * @return Is back camera supported
+     */
+    public boolean hasBackCamera() {
+        refreshCameraMap();
+        return mCameraMap != null && !TextUtils.isEmpty(mCameraMap.get(CameraCharacteristics.LENS_FACING_BACK));
+    }
+
+    /**
+     * Specifies which camera to use. The default is back camera.
+     * @param whichCamera Camera identifier
+     */
+    public void setCameraToUse(Camera whichCamera) {
+        this.mWhichCamera = whichCamera;
+        setCamera();
+    }
+
+    /**
+     * Switch to another camera while the camera is open. The camera thread, the image readers
+     * of the cameras used before and the preview surface are reused, and the new camera is
+     * opened without waiting for the current one to finish closing.
+     * {@link Cam2LibCallback#onReady()} is called again once the new camera is ready.
+     * @param whichCamera Camera identifier
+     */
+    public void switchCamera(@NonNull final Camera whichCamera) {
+
+        if(mCameraStateHandler == null || mCameraDevice == null) {
+            setCameraToUse(whichCamera);
+            return;
+        }
+
+        mCameraStateHandler.post(new Runnable() {
+            @Override
+            public void run() {
+
+                if(mWhichCamera == whichCamera || mCameraDevice == null) {
+                    return;
+                }
+
+                mWhichCamera = whichCamera;
+                if(mState != State.SUSPENDED) {
+                    mState = State.OPENING;
+                }
+                mClosingCameraDevice = mCameraDevice;
+                mCameraDevice = null;
+                mCaptureSession = null;
+                mPreviewAttached = false;
+                mReconfiguring = false;
+                mDeferredPreviewConfig = null;
+
+                //Closing the device closes its session as well
+                mClosingCameraDevice.close();
+
+                setCamera();
+                try {
+                    mStartupTimings.start();
+                    mPreviewSize = choosePreviewSize(mCameraTextureView);
+                    if(mPreviewSurfaceTexture != null) {
+                        mPreviewSurfaceTexture.setDefaultBufferSize(mPreviewSize.getWidth(), mPreviewSize.getHeight());
+                    }
+                    mCameraManager.openCamera(mCurrentCameraToUse, mStateCallback, mCameraStateHandler);
+                } catch (Exception ex) {
+                    notifyError(ex);
+                }
+            }
+        });
+    }
+
+    /**
+     * Number of still images which can be held at a time. Needs to be at least the size of the
+     * bursts captured using {@link #captureBurst(int)}. Needs to be called before
+     * {@link #open(TextureView, int)}. The default is 1.
+     * @param depth Number of images in the still image queue
+     */
+    public void setBurstDepth(int depth) {
+        mBurstDepth = Math.max(1, depth);
+        setCamera();
+    }
+
+    /**
+     * Callback which receives the images captured as part of a burst along with their index
+     * in the burst sequence and the sensor timestamp. When not set, burst images are delivered
+     * to {@link Cam2LibCallback#onImage(Image)}.
+     * @param callback Burst image callback
+     */
+    public void setBurstCallback(Cam2LibBurstCallback callback) {
+        mBurstCallback = callback;
+    }
+
+    /**
+     * Executors on which the callbacks are called. By default everything runs on the camera
+     * thread, so slow callbacks delay the camera and the preview. Needs to be called before
+     * {@link #open(TextureView, int)}.
+     * @param callbackExecutor Runs {@link Cam2LibCallback#onReady()}, {@link Cam2LibCallback#onComplete()},
+     *                         {@link Cam2LibCallback#onError(Throwable)} and the metrics listener,
+     *                         for example {@link Cam2LibExecutors#mainThread()}
+     * @param imageExecutor Runs the still image, burst and streamed frame callbacks, for example
+     *                      {@link Cam2LibExecutors#newImagePool(int)}. Null keeps the still images
+     *                      on the camera thread and the streamed frames on their own thread.
+     *                      That saves a thread hop per image, but while
+     *                      {@link Cam2LibCallback#onImage(Image)} runs the camera thread handles no
+     *                      capture results, state changes or preview restarts, so the callback
+     *                      needs to be short, and any longer work like decoding or saving needs an
+     *                      executor.
+     */
+    public void setCallbackExecutors(@NonNull Executor callbackExecutor, @Nullable Executor imageExecutor) {
+        mCallbackExecutor = callbackExecutor;
+        mImageExecutor = imageExecutor;
+        if(mFrameStreamer != null) {
+            mFrameStreamer.setDeliveryExecutor(imageExecutor);
+        }
+    }
+
+    /**
+     * Listener which receives the still images as reference counted frames instead of
+     * {@link Cam2LibCallback#onImage(Image)}, so that they can be processed on another thread
+     * without copying. Retained frames count towards the burst depth, once all of it is retained
+     * the next image waits with the camera until a frame is released.
+     * @param listener Still frame listener, null to use {@link Cam2LibCallback#onImage(Image)}
+     */
+    public void setStillFrameListener(@Nullable Cam2LibFrameListener listener) {
+        mStillFrameListener = listener;
+    }
+
+    /**
+     * Number of still frames which have not been released yet
+     * @return Held still frames
+     */
+    public int getHeldStillFrameCount() {
+        return mHeldStillImages.get();
+    }
+
+    /**
+     * Selects the size of the still images from the JPEG sizes supported by the camera. The
+     * default is the largest size. Needs to be called before {@link #open(TextureView, int)}.
+     * @param selector Size selector, see {@link Cam2LibSizeSelectors}
+     */
+    public void setStillSizeSelector(@NonNull Cam2LibSizeSelector selector) {
+        mStillSizeSelector = selector;
+        setCamera();
+    }
+
+    /**
+     * Orientation of the device, used to capture still images which are upright. Apps locked to
+     * one orientation can pass the degrees from an {@link android.view.OrientationEventListener},
+     * others can pass {@link Cam2LibOrientation#getDeviceDegrees(int)} of the display rotation.
+     * The default is 0, the natural orientation of the device.
+     * @param degrees Clockwise rotation of the device from its natural orientation
+     */
+    public void setDeviceOrientation(int degrees) {
+        mDeviceOrientation = degrees;
+    }
+
+    /**
+     * Clockwise rotation of the still images, as per the sensor orientation, the orientation of
+     * the device and the lens facing, see {@link Cam2LibOrientation#getJpegOrientation(int, int, boolean)}.
+     * The camera applies it to the JPEG or records it in the EXIF.
+     * @return 0, 90, 180 or 270
+     */
+    public int getJpegOrientation() {
+
+        if(mCameraCharacter == null) {
+            return 0;
+        }
+
+        Integer sensorOrientation = mCameraCharacter.get(CameraCharacteristics.SENSOR_ORIENTATION);
+        Integer facing = mCameraCharacter.get(CameraCharacteristics.LENS_FACING);
+        return Cam2LibOrientation.getJpegOrientation(sensorOrientation == null ? 0 : sensorOrientation,
+                mDeviceOrientation, facing != null && facing == CameraCharacteristics.LENS_FACING_FRONT);
+    }
+
+    /**
+     * Selects the size of the thumbnail embedded in the EXIF of the still images from the sizes
+     * supported by the camera, see {@link Cam2LibExif#getThumbnail()}. By default the camera
+     * decides. Needs to be called before {@link #open(TextureView, int)}.
+     * @param selector Size selector, see {@link Cam2LibSizeSelectors}, null for the default
+     */
+    public void setThumbnailSizeSelector(@Nullable Cam2LibSizeSelector selector) {
+        mThumbnailSizeSelector = selector;
+    }
+
+    /**
+     * Selects the size of the preview from the sizes supported for a SurfaceTexture. The default
+     * is the size closest to the TextureView. Needs to be called before {@link #open(TextureView, int)}.
+     * @param selector Size selector, see {@link Cam2LibSizeSelectors}, null for the default
+     */
+    public void setPreviewSizeSelector(Cam2LibSizeSelector selector) {
+        mPreviewSizeSelector = selector;
+    }
+
+    /**
+     * Frame rate ranges supported by the auto exposure of the current camera
+     * @return Supported ranges, empty if unknown
+     */
+    @NonNull
+    public Range<Integer>[] getSupportedFpsRanges() {
+        Range<Integer>[] ranges = mCameraCharacter == null ? null :
+                mCameraCharacter.get(CameraCharacteristics.CONTROL_AE_AVAILABLE_TARGET_FPS_RANGES);
+        if(ranges == null) {
+            //Generic arrays cannot be created, an empty one cannot hold a range of another type
+            @SuppressWarnings("unchecked")
+            Range<Integer>[] empty = (Range<Integer>[]) new Range<?>[0];
+            return empty;
+        }
+        return ranges.clone();
+    }
+
+    /**
+     * Set the frame rate range of the preview, the supported range closest to the one given is
+     * used. A fixed range like 30-30 gives a steady frame rate, a wide one like 15-30 lets the
+     * exposure get longer in low light. Applies to the running preview as well.
+     * @param minFps Minimum frames per second
+     * @param maxFps Maximum frames per second
+     * @return Range which is used, null if the camera does not report any range
+     */
+    @Nullable
+    public Range<Integer> setPreviewFpsRange(int minFps, int maxFps) {
+
+        //Kept to choose again when the camera changes
+        Range<Integer> requestedFpsRange = new Range<>(Math.min(minFps, maxFps), Math.max(minFps, maxFps));
+        mRequestedFpsRange = requestedFpsRange;
+        final Range<Integer> fpsRange = chooseFpsRange(getSupportedFpsRanges(), requestedFpsRange.getLower(),
+                requestedFpsRange.getUpper());
+        mFpsRange = fpsRange;
+        debugLog("Preview frame rate range " + fpsRange, null);
+
+        //The request builder is used by the camera thread, it is only changed there
+        Handler handler = mCameraStateHandler;
+        if(handler != null && fpsRange != null) {
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if(mCaptureRequestBuilder == null) {
+                        return;
+                    }
+
+                    mCaptureRequestBuilder.set(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE, fpsRange);
+                    if(mPreviewRunning && !mContinuousCapture) {
+                        startPreview();
+                    }
+                }
+            });
+        }
+        return fpsRange;
+    }
+
+    /**
+     * Area of the sensor which the crop regions refer to
+     * @return Active array of the current camera, null if unknown
+     */
+    @Nullable
+    public Rect getActiveArraySize() {
+        Rect activeArray = mCameraCharacter == null ? null :
+                mCameraCharacter.get(CameraCharacteristics.SENSOR_INFO_ACTIVE_ARRAY_SIZE);
+        return activeArray == null ? null : new Rect(activeArray);
+    }
+
+    /**
+     * Largest zoom the current camera can crop to
+     * @return Maximum zoom, 1 if the camera cannot zoom
+     */
+    public float getMaxZoom() {
+        Float maxZoom = mCameraCharacter == null ? null :
+                mCameraCharacter.get(CameraCharacteristics.SCALER_AVAILABLE_MAX_DIGITAL_ZOOM);
+        return maxZoom == null ? 1f : Math.max(1f, maxZoom);
+    }
+
+    /**
+     * Zoom into the centre of the sensor. The camera crops before scaling to the outputs, so the
+     * preview, the streamed frames and the still images all hold only the zoomed area at their
+     * full size. Applies to the running preview as well, and is kept across camera switches.
+     * @param zoom Zoom from 1 to {@link #getMaxZoom()}
+     * @return Zoom which is used
+     */
+    public float setZoom(float zoom) {
+        mZoom = Math.max(1f, Math.min(getMaxZoom(), zoom));
+        mRequestedCropRegion = null;
+        applyCropRegion();
+        return mZoom;
+    }
+
+    /**
+     * Zoom which is used, 1 when {@link #setCropRegion(Rect)} was used
+     */
+    public float getZoom() {
+        return mZoom;
+    }
+
+    /**
+     * Crop to a region of the sensor, like {@link #setZoom(float)} but for an area which need not
+     * be centred. The region is grown to the largest zoom and moved inside the active array if
+     * needed. When its aspect ratio differs from an output, the camera crops it further for that
+     * output.
+     * @param region Region in the coordinates of {@link #getActiveArraySize()}, null for the
+     *               whole sensor
+     */
+    public void setCropRegion(@Nullable Rect region) {
+        mZoom = 1f;
+        mRequestedCropRegion = region == null ? null : new Rect(region);
+        applyCropRegion();
+    }
+
+    /**
+     * Region of the sensor which the requests crop to
+     * @return Crop region, null when not cropping
+     */
+    @Nullable
+    public Rect getCropRegion() {
+        return mCropRegion == null ? null : new Rect(mCropRegion);
+    }
+
+    /**
+     * Selects the size of the streamed frames from the YUV_420_888 sizes supported by the camera,
+     * instead of the closest to the size given to
+     * {@link #enableFrameStreaming(int, int, int, Backpressure, Cam2LibFrameCallback)}.
+     * Needs to be called after enabling the streaming and before {@link #open(TextureView, int)}.
+     * @param selector Size selector, see {@link Cam2LibSizeSelectors}
+     */
+    public void setFrameSizeSelector(@NonNull Cam2LibSizeSelector selector) {
+        mFrameSizeSelector = selector;
+    }
+
+    /**
+     * Enable streaming of YUV_420_888 frames from the preview. Needs to be called before
+     * {@link #open(TextureView, int)} as the stream is part of the capture session.
+     * @param width Desired width of the frames, closest supported size is used
+     * @param height Desired height of the frames, closest supported size is used
+     * @param depth Number of frames which can be held at a time, minimum is 2
+     * @param policy What to do when the consumer cannot keep up with the camera
+     * @param callback Receives the frames on a dedicated thread
+     */
+    public void enableFrameStreaming(int width, int height, int depth, @NonNull Backpressure policy,
+                                     @NonNull final Cam2LibFrameCallback callback) {
+        enableSharedFrameStreaming(width, height, depth, policy, new Cam2LibFrameListener() {
+            @Override
+            public void onFrame(Cam2LibFrame frame) {
+                callback.onFrame(frame.getImage());
+            }
+        });
+    }
+
+    /**
+     * Enable streaming of YUV_420_888 frames as reference counted frames, which can be retained
+     * and processed on other threads. Retained frames count towards the depth, once the whole
+     * depth is retained no new frames are acquired until one is released.
+     * @param width Desired width of the frames, closest supported size is used
+     * @param height Desired height of the frames, closest supported size is used
+     * @param depth Number of frames which can be held at a time, minimum is 2
+     * @param policy What to do when the consumer cannot keep up with the camera
+     * @param listener Receives the frames on a dedicated thread
+     */
+    public void enableSharedFrameStreaming(int width, int height, int depth, @NonNull Backpressure policy,
+                                           @NonNull Cam2LibFrameListener listener) {
+        disableFrameStreaming();
+        mFrameSizeSelector = Cam2LibSizeSelectors.closestTo(width, height);
+        mFrameStreamer = new FrameStreamer(policy, depth, listener);
+        mFrameStreamer.setTrackLeaks(mEnableDebugLogging);
+        mFrameStreamer.setDeliveryExecutor(mImageExecutor);
+    }
+
+    /**
+     * Keep the most recent full resolution frames in a ring buffer, so that
+     * {@link #captureZeroShutterLag()} can use the frame from the moment it is called. The
+     * preview then uses the zero shutter lag template. Each frame held is a full resolution
+     * buffer, allocated once when the camera is opened. Needs to be called before
+     * {@link #open(TextureView, int)}.
+     * @param depth Number of frames kept, 3 to 5 covers the usual shutter lag
+     */
+    public void enableZeroShutterLag(int depth) {
+        disableZeroShutterLag();
+        mZsl = new ZslCapture(depth);
+    }
+
+    /**
+     * Stop keeping frames for {@link #captureZeroShutterLag()}. Takes effect on the next
+     * {@link #open(TextureView, int)}.
+     */
+    public void disableZeroShutterLag() {
+        if(mZsl != null) {
+            mZsl.stop();
+            mZsl = null;
+        }
+    }
+
+    /**
+     * Disable streaming of frames. Takes effect on the next {@link #open(TextureView, int)}.
+     */
+    public void disableFrameStreaming() {
+        if(mFrameStreamer != null) {
+            mFrameStreamer.stop();
+            mFrameStreamer = null;
+        }
+    }
+
+    /**
+     * Debug logs from the library to be logged or not
+     * @param enable Enable debug logs from library
+     */
+    public void enableDebugLogs(boolean enable) {
+        mEnableDebugLogging = enable;
+        if(mFrameStreamer != null) {
+            mFrameStreamer.setTrackLeaks(enable);
+        }
+    }
+
+    /**
+     * Record the latencies and counters of the capture pipeline. Nothing is recorded while the
+     * metrics are disabled, which is the default.
+     * @param traceSections Whether to add systrace sections around the image callbacks
+     * @param listener Receives a snapshot of the metrics periodically on the callback executor, can be null
+     * @param reportIntervalMs Interval at which the listener is called
+     */
+    public void enableMetrics(boolean traceSections, @Nullable Cam2LibMetrics.Listener listener, long reportIntervalMs) {
+        mMetrics = new Cam2LibMetrics(traceSections);
+        mMetricsListener = listener;
+        mMetricsReportInterval = reportIntervalMs;
+
+        if(mFrameStreamer != null) {
+            mFrameStreamer.setMetrics(mMetrics);
+        }
+        scheduleMetricsReport();
+    }
+
+    /**
+     * Stop recording the metrics
+     */
+    public void disableMetrics() {
+        mMetrics = null;
+        mMetricsListener = null;
+        if(mFrameStreamer != null) {
+            mFrameStreamer.setMetrics(null);
+        }
+        if(mCameraStateHandler != null) {
+            mCameraStateHandler.removeCallbacks(mMetricsReport);
+        }
+    }
+
+    /**
+     * Metrics of the capture pipeline
+     * @return Metrics or null when they are disabled
+     */
+    @Nullable
+    public Cam2LibMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * Open the camera to start using it
+     * @param cameraSurface Surface on which camera view to be drawn
+     * @param forType Can be CameraDevice.TEMPLATE_PREVIEW
+     */
+    public void open(@NonNull TextureView cameraSurface, int forType) {
+
+        //Do we have the permission to use the camera hardware
+        if(ContextCompat.checkSelfPermission(mContext, Manifest.permission.CAMERA) != PackageManager.PERMISSION_GRANTED) {
+            notifyError(new RuntimeException("Require camera permission to open"));
+            return;
+        }
+
         try {
-            mCameraMap = getCameraList();
-            setCamera();
+            mStartupTimings.start();
+            mState = State.OPENING;
+            mOpenedCameraForType = forType;
+            mCameraTextureView = cameraSurface;
+            mCameraDevice = null;
+            mCaptureSession = null;
+            mPreviewSurface = null;
+            mPreviewSurfaceTexture = null;
+            mPreviewTextureDetached = false;
+            mPreviewAttached = false;
+            mDeferredPreviewConfig = null;
+
+            Handler handler = startCameraHandlerThread();
+            mImageReader.setOnImageAvailableListener(onImageAvailable, handler);
+            scheduleMetricsReport();
+            mPreviewSize = choosePreviewSize(cameraSurface);
+
+            //The device is opened while the view is still being laid out
+            cameraSurface.setSurfaceTextureListener(surfaceTextureListener);
+            if(cameraSurface.isAvailable()) {
+                handler.post(new SurfaceReady(cameraSurface.getSurfaceTexture()));
+            }
+
+            mCameraManager.openCamera(mCurrentCameraToUse, mStateCallback, handler);
+        } catch (Exception ex) {
+            notifyError(ex);
+        }
+    }
+
+    /**
+     * Time taken by the phases of the last {@link #open(TextureView, int)} call, useful to
+     * measure the time to first frame.
+     * @return Startup timings
+     */
+    public Cam2LibStartupTimings getStartupTimings() {
+        return mStartupTimings;
+    }
+
+    /**
+     * Start the preview from the camera. If the session is not ready yet or is suspended, the
+     * preview starts once it is.
+     */
+    public void startPreview() {
+        mPreviewRunning = true;
+        if(mCaptureSession == null || !mPreviewAttached || mState == State.SUSPENDED) {
+            return;
+        }
+
+        try {
+            mCaptureSession.setRepeatingRequest(mCaptureRequestBuilder.build(), mPreviewCaptureCallback, mCameraStateHandler);
         } catch (CameraAccessException e) {
-            Log.d(Cam2Lib.class.getName(), "Could not retrieve camera list because, " + e.getMessage(), e);
-            mCallback.onError(e);
+            notifyError(e);
+        }
+    }
+
+    /**
+     * Get the image {@link android.media.Image} by capturing it from the camera. Can use
+     * {@link Cam2LibConverter} to get the desired format.
+     */
+    public void getImage() {
+        mImageCaptureReader.set(CaptureRequest.JPEG_ORIENTATION, getJpegOrientation());
+        try {
+            Cam2LibMetrics metrics = mMetrics;
+            if(metrics == null) {
+                mCaptureSession.capture(mImageCaptureReader.build(), null, mCameraStateHandler);
+            } else {
+                long submittedAt = Cam2LibMetrics.now();
+                metrics.onCaptureSubmitted(mCaptureSession.capture(mImageCaptureReader.build(),
+                        metrics.mStillCaptureCallback, mCameraStateHandler), submittedAt);
+            }
+        } catch (CameraAccessException e) {
+            notifyError(e);
+        }
+    }
+
+    /**
+     * Capture the frame closest to the time of the call from the zero shutter lag ring buffer,
+     * see {@link #enableZeroShutterLag(int)}. When the camera supports reprocessing the frame is
+     * encoded to JPEG by the camera, otherwise the YUV_420_888 frame itself is delivered. Falls
+     * back to {@link #getImage()} when the ring is not enabled or empty. Needs the session to be
+     * ready, see {@link Cam2LibCallback#onReady()}, else the capture is reported as an error.
+     */
+    public void captureZeroShutterLag() {
+
+        //Also called on every motion event by Cam2LibMotionDetector, which can be before open or after close
+        Handler handler = mCameraStateHandler;
+        if(handler == null || !isSessionReady()) {
+            notifyError(new IllegalStateException("Session is not ready, the zero shutter lag capture is not taken."));
+            return;
+        }
+
+        if(mZsl == null) {
+            getImage();
+            return;
+        }
+
+        final long triggeredAt = SystemClock.elapsedRealtimeNanos();
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                //The session can close before this runs
+                if(!isSessionReady()) {
+                    notifyError(new IllegalStateException("Session closed, the zero shutter lag capture is not taken."));
+                    return;
+                }
+                captureFromRing(triggeredAt);
+            }
+        });
+    }
+
+    /**
+     * Capture a burst of still images submitted together, so that the camera pipelines them
+     * instead of waiting for each capture to complete. Needs the session to be ready, see
+     * {@link Cam2LibCallback#onReady()}, else the burst is reported as an error.
+     * @param count Number of images to capture, should not exceed the burst depth
+     */
+    public void captureBurst(int count) {
+
+        if(!isSessionReady()) {
+            notifyError(new IllegalStateException("Session is not ready, the burst is not captured."));
+            return;
+        }
+
+        mImageCaptureReader.set(CaptureRequest.JPEG_ORIENTATION, getJpegOrientation());
+
+        List<CaptureRequest> requests = new ArrayList<>(count);
+        for (int index = 0; index < count; index++) {
+            mImageCaptureReader.setTag(mNextBurstIndex.getAndIncrement());
+            requests.add(mImageCaptureReader.build());
+        }
+        mImageCaptureReader.setTag(null);
+
+        try {
+            long submittedAt = Cam2LibMetrics.now();
+            int sequenceId = mCaptureSession.captureBurst(requests, mBurstCaptureCallback, mCameraStateHandler);
+
+            Cam2LibMetrics metrics = mMetrics;
+            if(metrics != null) {
+                metrics.onCaptureSubmitted(sequenceId, submittedAt);
+            }
+        } catch (CameraAccessException e) {
+            notifyError(e);
+        }
+    }
+
+    /**
+     * Start capturing still images back to back, as fast as the sensor allows, until
+     * {@link #stopContinuousCapture()} is called. The preview, the streamed frames and the zero
+     * shutter lag ring continue during the capture. Needs the session to be ready, see
+     * {@link Cam2LibCallback#onReady()}.
+     */
+    public void startContinuousCapture() {
+
+        if(!isSessionReady()) {
+            debugLog("Session is not ready, continuous capture is not started.", null);
+            return;
+        }
+
+        //The still request replaces the repeating preview request, so it feeds the same outputs
+        List<Surface> targets = new ArrayList<>(3);
+        targets.add(mPreviewSurface);
+        if(mFrameStreamer != null && mFrameStreamer.getSurface() != null) {
+            targets.add(mFrameStreamer.getSurface());
+        }
+        if(mZsl != null && mZsl.getSurface() != null) {
+            targets.add(mZsl.getSurface());
+        }
+
+        mImageCaptureReader.set(CaptureRequest.JPEG_ORIENTATION, getJpegOrientation());
+        for (Surface target : targets) {
+            mImageCaptureReader.addTarget(target);
+        }
+        CaptureRequest request = mImageCaptureReader.build();
+        for (Surface target : targets) {
+            mImageCaptureReader.removeTarget(target);
+        }
+
+        try {
+            mContinuousCapture = true;
+            mCaptureSession.setRepeatingBurst(Collections.singletonList(request), mContinuousCaptureCallback,
+                    mCameraStateHandler);
+        } catch (CameraAccessException e) {
+            mContinuousCapture = false;
+            notifyError(e);
+        }
+    }
+
+    /**
+     * Stop the capture started using {@link #startContinuousCapture()}. The preview goes back to
+     * the state it was in, running or stopped.
+     */
+    public void stopContinuousCapture() {
+
+        if(!mContinuousCapture) {
+            return;
+        }
+
+        mContinuousCapture = false;
+        if(mPreviewRunning) {
+            startPreview();
+        } else if(mCaptureSession != null) {
+            try {
+                mCaptureSession.stopRepeating();
+            } catch (CameraAccessException e) {
+                notifyError(e);
+            }
+        }
+    }
+
+    /**
+     * Stop the preview from the camera
+     */
+    public void stopPreview() {
+        mPreviewRunning = false;
+        if(mCaptureSession == null || mState == State.SUSPENDED) {
+            return;
+        }
+
+        try {
+            mCaptureSession.stopRepeating();
+        } catch (CameraAccessException e) {
+            notifyError(e);
+        }
+    }
+
+    /**
+     * Current state of the camera session
+     * @return State
+     */
+    @NonNull
+    public State getState() {
+        return mState;
+    }
+
+    /**
+     * Stop the preview but keep the camera and its session open, for example when the activity
+     * is paused, so that {@link #resume()} shows the preview again within a frame. If not resumed
+     * within the idle timeout, the camera is released and resuming opens it again.
+     * @param idleTimeoutMs Time to keep the camera open, 0 to release it right away
+     */
+    public void suspend(final long idleTimeoutMs) {
+
+        final Handler handler = mCameraStateHandler;
+        if(mState == State.CLOSED || mState == State.SUSPENDED || handler == null) {
+            return;
+        }
+
+        mState = State.SUSPENDED;
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if(mCaptureSession != null && mPreviewAttached && mPreviewRunning) {
+                        mCaptureSession.stopRepeating();
+                    }
+                } catch (CameraAccessException | IllegalStateException ex) {
+                    debugLog("Could not stop the preview on suspend", ex);
+                }
+                handler.postDelayed(mIdleRelease, idleTimeoutMs);
+            }
+        });
+    }
+
+    /**
+     * Continue after {@link #suspend(long)}. The preview restarts right away if the camera is
+     * still open, otherwise the camera is opened again and {@link Cam2LibCallback#onReady()}
+     * is called once more. Needs to be called on the main thread.
+     */
+    public void resume() {
+
+        if(mState != State.SUSPENDED) {
+            return;
+        }
+
+        //The view gets a new texture when it comes back, the session still renders into the old one
+        if(mPreviewTextureDetached && mPreviewSurfaceTexture != null &&
+                mCameraTextureView.getSurfaceTexture() != mPreviewSurfaceTexture) {
+            mCameraTextureView.setSurfaceTexture(mPreviewSurfaceTexture);
+            mPreviewTextureDetached = false;
+        }
+
+        Handler handler = mCameraStateHandler;
+        if(handler != null) {
+            handler.removeCallbacks(mIdleRelease);
+        }
+        if(handler == null || !handler.post(mResume)) {
+            reopen();
+        }
+    }
+
+    private final Runnable mResume = new Runnable() {
+        @Override
+        public void run() {
+
+            //Released while the resume was on its way
+            if(mState == State.CLOSED) {
+                Cam2LibExecutors.mainThread().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        reopen();
+                    }
+                });
+                return;
+            }
+
+            mState = mPreviewAttached ? State.READY : State.OPENING;
+            if(mPreviewRunning) {
+                startPreview();
+            }
+        }
+    };
+
+    private final Runnable mIdleRelease = new Runnable() {
+        @Override
+        public void run() {
+            if(mState == State.SUSPENDED) {
+                debugLog("Camera released after being suspended", null);
+                releaseCamera();
+            }
+        }
+    };
+
+    private void reopen() {
+
+        if(mState != State.CLOSED || mContext == null) {
+            return;
+        }
+
+        setCamera();
+        open(mCameraTextureView, mOpenedCameraForType);
+    }
+
+    /**
+     * Close and perform the cleanup.
+     */
+    public void close() {
+        Handler handler = mCameraStateHandler;
+        if(handler != null) {
+            handler.removeCallbacks(mIdleRelease);
+        }
+        releaseCamera();
+        notifyComplete();
+        mCallback = null;
+        mContext = null;
+    }
+
+    private void releaseCamera() {
+
+        mState = State.CLOSED;
+        if(mCaptureSession != null) {
+            mCaptureSession.close();
+            mCaptureSession = null;
+        }
+        if(mCameraDevice != null) {
+            mCameraDevice.close();
+            mCameraDevice = null;
+        }
+        for (ImageReader imageReader : mImageReaders.values()) {
+            imageReader.close();
+        }
+        mImageReaders.clear();
+        mImageReader = null;
+        if(mFrameStreamer != null) {
+            debugLog("Frames dropped while streaming: " + mFrameStreamer.getDroppedFrameCount(), null);
+            mFrameStreamer.stop();
+        }
+        if(mZsl != null) {
+            mZsl.stop();
+        }
+
+        //A texture the view let go of is only kept for the session, release it along with the session
+        if(mPreviewTextureDetached && mPreviewSurfaceTexture != null) {
+            mPreviewSurface.release();
+            mPreviewSurfaceTexture.release();
+        }
+        mPreviewTextureDetached = false;
+        mPreviewAttached = false;
+        stopCameraHandlerThread();
+    }
+
+    private CameraDevice.StateCallback mStateCallback = new CameraDevice.StateCallback() {
+        @Override
+        public void onOpened(@NonNull CameraDevice cameraDevice) {
+            debugLog("Camera device has been received.", null);
+            mStartupTimings.markDeviceOpened();
+            mCameraDevice = cameraDevice;
+
+            try {
+                prepareRequests();
+
+                if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                    createDeferredSession();
+                } else if(mPreviewSurface != null) {
+                    createSession();
+                }
+            } catch (CameraAccessException cax) {
+                notifyError(cax);
+            }
+        }
+
+        @Override
+        public void onDisconnected(@NonNull CameraDevice cameraDevice) {
+            if(cameraDevice == mClosingCameraDevice) {
+                return;
+            }
+            notifyError(new Exception("Camera got disconnected"));
+        }
+
+        @Override
+        public void onError(@NonNull CameraDevice cameraDevice, int i) {
+
+            //Errors from the camera switched away from are of no interest
+            if(cameraDevice == mClosingCameraDevice) {
+                return;
+            }
+
+            switch (i) {
+                case CameraDevice.StateCallback.ERROR_CAMERA_DEVICE:
+                case CameraDevice.StateCallback.ERROR_CAMERA_SERVICE:
+                    notifyError(new Exception("An error occurred while connecting to camera."));
+                    break;
+                case CameraDevice.StateCallback.ERROR_CAMERA_DISABLED:
+                    notifyError(new Exception("Could not access camera as it is disabled."));
+                    break;
+                case CameraDevice.StateCallback.ERROR_CAMERA_IN_USE:
+                    notifyError(new Exception("Camera already in use."));
+                    break;
+                case CameraDevice.StateCallback.ERROR_MAX_CAMERAS_IN_USE:
+                    notifyError(new Exception("Max cameras are in use."));
+                    break;
+            }
+        }
+    };
+
+    /**
+     * Build the requests which do not depend on the preview surface, while the surface might
+     * still be getting ready.
+     */
+    private void prepareRequests() throws CameraAccessException {
+
+        mCaptureRequestBuilder = mCameraDevice.createCaptureRequest(mZsl == null ? mOpenedCameraForType :
+                CameraDevice.TEMPLATE_ZERO_SHUTTER_LAG);
+        Range<Integer> requestedFpsRange = mRequestedFpsRange;
+        if(requestedFpsRange != null) {
+            //The range chosen might not be supported by the camera switched to, so choose again from what was asked for
+            mFpsRange = chooseFpsRange(getSupportedFpsRanges(), requestedFpsRange.getLower(), requestedFpsRange.getUpper());
+            if(mFpsRange != null) {
+                mCaptureRequestBuilder.set(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE, mFpsRange);
+            }
+        }
+        Surface frameSurface = startFrameStreamer();
+        if(frameSurface != null) {
+            mCaptureRequestBuilder.addTarget(frameSurface);
+        }
+        Surface zslSurface = startZsl();
+        if(zslSurface != null) {
+            mCaptureRequestBuilder.addTarget(zslSurface);
+        }
+
+        mImageCaptureReader = mCameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_STILL_CAPTURE);
+        mImageCaptureReader.addTarget(mImageReader.getSurface());
+        applyThumbnailSize(mImageCaptureReader);
+
+        //The region set for the previous camera is fitted to the sensor of this one
+        mCropRegion = computeCropRegion();
+        if(mCropRegion != null) {
+            mCaptureRequestBuilder.set(CaptureRequest.SCALER_CROP_REGION, mCropRegion);
+            mImageCaptureReader.set(CaptureRequest.SCALER_CROP_REGION, mCropRegion);
+        }
+    }
+
+    /**
+     * Set the crop region on both requests on the camera thread, the repeating request picks it
+     * up within a few frames
+     */
+    private void applyCropRegion() {
+
+        Handler handler = mCameraStateHandler;
+        if(handler == null) {
+            //Applied by prepareRequests once the camera opens
+            return;
+        }
+
+        handler.post(mApplyCropRegion);
+    }
+
+    private final Runnable mApplyCropRegion = new Runnable() {
+        @Override
+        public void run() {
+            setCropRegionOnRequests();
+        }
+    };
+
+    private void setCropRegionOnRequests() {
+
+        if(mCaptureRequestBuilder == null || mImageCaptureReader == null) {
+            return;
+        }
+
+        Rect activeArray = getActiveArraySize();
+        if(activeArray == null) {
+            return;
+        }
+
+        //The requests keep the last region, so going back to the whole sensor needs it set explicitly
+        mCropRegion = computeCropRegion();
+        Rect region = mCropRegion != null ? mCropRegion : new Rect(0, 0, activeArray.width(), activeArray.height());
+
+        mCaptureRequestBuilder.set(CaptureRequest.SCALER_CROP_REGION, region);
+        mImageCaptureReader.set(CaptureRequest.SCALER_CROP_REGION, region);
+
+        if(mContinuousCapture) {
+            startContinuousCapture();
+        } else if(mPreviewRunning) {
+            startPreview();
+        }
+    }
+
+    private Rect computeCropRegion() {
+
+        Rect activeArray = getActiveArraySize();
+        if(activeArray == null || (mZoom <= 1f && mRequestedCropRegion == null)) {
+            return null;
+        }
+
+        int width = activeArray.width();
+        int height = activeArray.height();
+        if(mRequestedCropRegion == null) {
+            int cropWidth = Math.round(width / mZoom);
+            int cropHeight = Math.round(height / mZoom);
+            int left = (width - cropWidth) / 2;
+            int top = (height - cropHeight) / 2;
+            return new Rect(left, top, left + cropWidth, top + cropHeight);
+        }
+
+        float maxZoom = getMaxZoom();
+        int cropWidth = Math.max((int) Math.ceil(width / maxZoom), Math.min(width, mRequestedCropRegion.width()));
+        int cropHeight = Math.max((int) Math.ceil(height / maxZoom), Math.min(height, mRequestedCropRegion.height()));
+        int left = Math.max(0, Math.min(width - cropWidth, mRequestedCropRegion.centerX() - cropWidth / 2));
+        int top = Math.max(0, Math.min(height - cropHeight, mRequestedCropRegion.centerY() - cropHeight / 2));
+        return new Rect(left, top, left + cropWidth, top + cropHeight);
+    }
+
+    private void applyThumbnailSize(CaptureRequest.Builder builder) {
+
+        if(mThumbnailSizeSelector == null) {
+            return;
+        }
+
+        //Always contains 0x0, which leaves the thumbnail out
+        Size[] sizes = mCameraCharacter.get(CameraCharacteristics.JPEG_AVAILABLE_THUMBNAIL_SIZES);
+        if(sizes != null && sizes.length != 0) {
+            builder.set(CaptureRequest.JPEG_THUMBNAIL_SIZE, mThumbnailSizeSelector.select(sizes));
+        }
+    }
+
+    private void createSession() throws CameraAccessException {
+
+        List<Surface> outputs = new ArrayList<>(Arrays.asList(mPreviewSurface, mImageReader.getSurface()));
+        if(mFrameStreamer != null && mFrameStreamer.getSurface() != null) {
+            outputs.add(mFrameStreamer.getSurface());
+        }
+        if(mZsl != null && mZsl.getSurface() != null) {
+            outputs.add(mZsl.getSurface());
+        }
+
+        mCaptureRequestBuilder.addTarget(mPreviewSurface);
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.M && isZslReprocessing()) {
+            mCameraDevice.createReprocessableCaptureSession(mZsl.getInputConfiguration(), outputs,
+                    mSessionStateCallback, mCameraStateHandler);
+        } else {
+            mCameraDevice.createCaptureSession(outputs, mSessionStateCallback, mCameraStateHandler);
+        }
+    }
+
+    /**
+     * Configure the session with a deferred preview output, so that it does not have to wait
+     * for the TextureView. The surface is attached once available.
+     */
+    @RequiresApi(api = Build.VERSION_CODES.O)
+    private void createDeferredSession() throws CameraAccessException {
+
+        mDeferredPreviewConfig = new OutputConfiguration(mPreviewSize, SurfaceTexture.class);
+
+        List<OutputConfiguration> outputs = new ArrayList<>();
+        outputs.add(mDeferredPreviewConfig);
+        outputs.add(new OutputConfiguration(mImageReader.getSurface()));
+        if(mFrameStreamer != null && mFrameStreamer.getSurface() != null) {
+            outputs.add(new OutputConfiguration(mFrameStreamer.getSurface()));
+        }
+        if(mZsl != null && mZsl.getSurface() != null) {
+            outputs.add(new OutputConfiguration(mZsl.getSurface()));
+        }
+
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.M && isZslReprocessing()) {
+            mCameraDevice.createReprocessableCaptureSessionByConfigurations(mZsl.getInputConfiguration(), outputs,
+                    mSessionStateCallback, mCameraStateHandler);
+        } else {
+            mCameraDevice.createCaptureSessionByOutputConfigurations(outputs, mSessionStateCallback, mCameraStateHandler);
+        }
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.O)
+    private void attachDeferredSurface() {
+
+        if(mCaptureSession == null || mPreviewSurface == null || mPreviewAttached) {
+            return;
+        }
+
+        try {
+            mDeferredPreviewConfig.addSurface(mPreviewSurface);
+            mCaptureSession.finalizeOutputConfigurations(Collections.singletonList(mDeferredPreviewConfig));
+            mCaptureRequestBuilder.addTarget(mPreviewSurface);
+            onPreviewAttached();
+        } catch (CameraAccessException cax) {
+            notifyError(cax);
+        }
+    }
+
+    private boolean isSessionReady() {
+        return mCaptureSession != null && mPreviewAttached && mState == State.READY;
+    }
+
+    private void onPreviewAttached() {
+        mPreviewAttached = true;
+        if(mState != State.SUSPENDED) {
+            mState = State.READY;
+        }
+        debugLog("Camera is ready, " + mStartupTimings, null);
+        if(mPreviewRunning) {
+            startPreview();
+        }
+        notifyReady();
+    }
+
+    private CameraCaptureSession.StateCallback mSessionStateCallback = new CameraCaptureSession.StateCallback() {
+        @Override
+        public void onConfigured(@NonNull CameraCaptureSession session) {
+            mCaptureSession = session;
+            if(mZsl != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                mZsl.onSessionConfigured(session);
+            }
+
+            if(mReconfiguring) {
+                //Session was recreated for a new preview size, carry on with the repeating request which was active
+                mReconfiguring = false;
+                mPreviewAttached = true;
+                if(mContinuousCapture) {
+                    startContinuousCapture();
+                } else if(mPreviewRunning) {
+                    startPreview();
+                }
+                return;
+            }
+
+            mStartupTimings.markSessionConfigured();
+
+            if(mDeferredPreviewConfig != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                attachDeferredSurface();
+            } else {
+                onPreviewAttached();
+            }
+        }
+
+        @Override
+        public void onConfigureFailed(@NonNull CameraCaptureSession session) {
+            notifyError(new Exception("Could not establish session with camera"));
+        }
+    };
+
+    /**
+     * Runs on the camera thread once the surface of the TextureView is available
+     */
+    private class SurfaceReady implements Runnable {
+
+        private final SurfaceTexture mSurfaceTexture;
+
+        SurfaceReady(SurfaceTexture surfaceTexture) {
+            this.mSurfaceTexture = surfaceTexture;
+        }
+
+        @Override
+        public void run() {
+
+            if(mPreviewSurface != null) {
+                return;
+            }
+
+            mStartupTimings.markSurfaceReady();
+            mPreviewSurfaceTexture = mSurfaceTexture;
+            mSurfaceTexture.setDefaultBufferSize(mPreviewSize.getWidth(), mPreviewSize.getHeight());
+            mPreviewSurface = new Surface(mSurfaceTexture);
+
+            if(mCameraDevice == null) {
+                return;
+            }
+
+            if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                attachDeferredSurface();
+            } else {
+                try {
+                    createSession();
+                } catch (CameraAccessException cax) {
+                    notifyError(cax);
+                }
+            }
         }
     }
 
     /**
-     * Check whether front camera is supported or not.
-     * @return Is front camera supported
+     * Runs on the camera thread when the size of the TextureView changes
      */
-    public boolean hasFrontCamera() {
-        return mCameraMap != null && !mCameraMap.get(CameraCharacteristics.LENS_FACING_FRONT).isEmpty();
-    }
+    private class SurfaceResized implements Runnable {
 
-    /**
-     * Check whether back camera is supported or not.
-     * @return Is back camera supported
-     */
-    public boolean hasBackCamera() {
-        return mCameraMap != null && !mCameraMap.get(CameraCharacteristics.LENS_FACING_BACK).isEmpty();
-    }
+        private final int mWidth;
+        private final int mHeight;
 
-    /**
-     * Specifies which camera to use. The default is back camera.
-     * @param whichCamera Camera identifier
-     */
-    public void setCameraToUse(Camera whichCamera) {
-        this.mWhichCamera = whichCamera;
-        setCamera();
-    }
+        SurfaceResized(int width, int height) {
+            this.mWidth = width;
+            this.mHeight = height;
+        }
 
-    /**
-     * Debug logs from the library to be logged or not
-     * @param enable Enable debug logs from library
-     */
-    public void enableDebugLogs(boolean enable) {
-        mEnableDebugLogging = enable;
+        @Override
+        public void run() {
+
+            //A selector of the app does not depend on the view, and a new session is only needed once attached
+            if(mPreviewSizeSelector != null || !mPreviewAttached || mCameraDevice == null || mPreviewSurfaceTexture == null) {
+                return;
+            }
+
+            try {
+                Size size = choosePreviewSize(mWidth, mHeight);
+                if(size.equals(mPreviewSize)) {
+                    return;
+                }
+
+                debugLog("Preview resized to " + size.getWidth() + "x" + size.getHeight(), null);
+                mPreviewSize = size;
+                mPreviewSurfaceTexture.setDefaultBufferSize(size.getWidth(), size.getHeight());
+
+                //Outputs are fixed once configured, a new buffer size needs a new session
+                mPreviewAttached = false;
+                mReconfiguring = true;
+                mDeferredPreviewConfig = null;
+                createSession();
+            } catch (CameraAccessException cax) {
+                mReconfiguring = false;
+                notifyError(cax);
+            }
+        }
     }
 
+    private CameraCaptureSession.CaptureCallback mPreviewCaptureCallback = new CameraCaptureSession.CaptureCallback() {
+        @Override
+        public void onCaptureCompleted(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request,
+                                       @NonNull TotalCaptureResult result) {
+            if(mStartupTimings.markFirstFrame()) {
+                debugLog("First preview frame, " + mStartupTimings, null);
+            }
+
+            ZslCapture zsl = mZsl;
+            if(zsl != null) {
+                zsl.onResult(result);
+            }
+
+            Cam2LibMetrics metrics = mMetrics;
+            if(metrics != null) {
+                metrics.onPreviewCompleted(result);
+            }
+        }
+
+        @Override
+        public void onCaptureFailed(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request,
+                                    @NonNull CaptureFailure failure) {
+            Cam2LibMetrics metrics = mMetrics;
+            if(metrics != null) {
+                metrics.onCaptureFailed();
+            }
+        }
+
+        @Override
+        public void onCaptureBufferLost(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request,
+                                        @NonNull Surface target, long frameNumber) {
+            Cam2LibMetrics metrics = mMetrics;
+            if(metrics != null) {
+                metrics.onBufferLost();
+            }
+        }
+    };
+
     /**
-     * Open the camera to start using it
-     * @param cameraSurface Surface on which camera view to be drawn
-     * @param forType Can be CameraDevice.TEMPLATE_PREVIEW
+     * The continuous capture request stands in for the preview request, so its results go to
+     * the preview as well, for the zero shutter lag ring and the preview metrics
      */
-    public void open(@NonNull TextureView cameraSurface, int forType) {
+    private CameraCaptureSession.CaptureCallback mContinuousCaptureCallback = new CameraCaptureSession.CaptureCallback() {
+        @Override
+        public void onCaptureStarted(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request,
+                                     long timestamp, long frameNumber) {
+            mBurstCaptureCallback.onCaptureStarted(session, request, timestamp, frameNumber);
+        }
 
-        //Do we have the permission to use the camera hardware
-        if(ContextCompat.checkSelfPermission(mContext, Manifest.permission.CAMERA) != PackageManager.PERMISSION_GRANTED) {
-            mCallback.onError(new RuntimeException("Require camera permission to open"));
-            return;
+        @Override
+        public void onCaptureCompleted(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request,
+                                       @NonNull TotalCaptureResult result) {
+            mPreviewCaptureCallback.onCaptureCompleted(session, request, result);
+            mBurstCaptureCallback.onCaptureCompleted(session, request, result);
         }
 
-        try {
-            mOpenedCameraForType = forType;
-            mCameraTextureView = cameraSurface;
-            mCameraManager.openCamera(mCurrentCameraToUse, mStateCallback, startCameraHandlerThread());
-        } catch (Exception ex) {
-            mCallback.onError(ex);
+        @Override
+        public void onCaptureFailed(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request,
+                                    @NonNull CaptureFailure failure) {
+            mBurstCaptureCallback.onCaptureFailed(session, request, failure);
+        }
+
+        @Override
+        public void onCaptureBufferLost(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request,
+                                        @NonNull Surface target, long frameNumber) {
+            mBurstCaptureCallback.onCaptureBufferLost(session, request, target, frameNumber);
         }
+    };
+
+    private Size choosePreviewSize(TextureView textureView) throws CameraAccessException {
+        return choosePreviewSize(textureView.getWidth(), textureView.getHeight());
     }
 
-    /**
-     * Start the preview from the camera
-     */
-    public void startPreview() {
-        try {
-            mCaptureSession.setRepeatingRequest(mCaptureRequestBuilder.build(), null, mCameraStateHandler);
-        } catch (CameraAccessException e) {
-            mCallback.onError(e);
+    private Size choosePreviewSize(int viewWidth, int viewHeight) throws CameraAccessException {
+
+        //Camera sizes are in landscape while the view might be in portrait
+        int width = Math.max(viewWidth, viewHeight);
+        int height = Math.min(viewWidth, viewHeight);
+        if(width <= 0 || height <= 0) {
+            width = 1920;
+            height = 1080;
+        }
+
+        Size[] sizes = mCameraCache.getOutputSizes(mCurrentCameraToUse, SurfaceTexture.class);
+        if(sizes.length == 0) {
+            return new Size(width, height);
         }
+
+        Cam2LibSizeSelector selector = mPreviewSizeSelector != null ? mPreviewSizeSelector :
+                Cam2LibSizeSelectors.closestTo(width, height);
+        return selector.select(sizes);
     }
 
     /**
-     * Get the image {@link android.media.Image} by capturing it from the camera. Can use
-     * {@link Cam2LibConverter} to get the desired format.
+     * Supported range closest to the one asked for, preferring the higher minimum on a tie so
+     * that the frame rate stays steady
      */
-    public void getImage() {
-        mImageCaptureReader.set(CaptureRequest.JPEG_ORIENTATION, mCameraCharacter.get(CameraCharacteristics.SENSOR_ORIENTATION));
-        try {
-            mCaptureSession.capture(mImageCaptureReader.build(), null, mCameraStateHandler);
-        } catch (CameraAccessException e) {
-            mCallback.onError(e);
+    private static Range<Integer> chooseFpsRange(Range<Integer>[] ranges, int minFps, int maxFps) {
+
+        Range<Integer> chosen = null;
+        int chosenDistance = Integer.MAX_VALUE;
+        for (Range<Integer> range : ranges) {
+            int distance = Math.abs(range.getLower() - minFps) + Math.abs(range.getUpper() - maxFps);
+            if(distance < chosenDistance || (distance == chosenDistance && range.getLower() > chosen.getLower())) {
+                chosen = range;
+                chosenDistance = distance;
+            }
         }
+        return chosen;
     }
 
-    /**
-     * Stop the preview from the camera
-     */
-    public void stopPreview() {
+    private Surface startZsl() {
+
+        if(mZsl == null) {
+            return null;
+        }
+
+        int format = mZsl.configure(mCameraCharacter);
+        Size[] sizes;
         try {
-            mCaptureSession.stopRepeating();
+            sizes = mCameraCache.getOutputSizes(mCurrentCameraToUse, format);
         } catch (CameraAccessException e) {
-            mCallback.onError(e);
+            notifyError(e);
+            return null;
+        }
+
+        if(sizes.length == 0) {
+            mZsl.stop();
+            return null;
         }
+
+        //Largest output is the full resolution, which is what the camera accepts back as input
+        Size size = Cam2LibSizeSelectors.largest().select(sizes);
+        debugLog("Zero shutter lag frames of size " + size.getWidth() + "x" + size.getHeight() +
+                (mZsl.isReprocessing() ? " with reprocessing" : ""), null);
+
+        mZsl.start(size, mCameraStateHandler);
+        return mZsl.getSurface();
     }
 
-    /**
-     * Close and perform the cleanup.
-     */
-    public void close() {
-        mCameraDevice.close();
-        mImageReader.close();
-        mCaptureSession.close();
-        stopCameraHandlerThread();
-        mCallback.onComplete();
-        mCallback = null;
-        mContext = null;
+    private boolean isZslReprocessing() {
+        return mZsl != null && mZsl.getSurface() != null && mZsl.isReprocessing();
     }
 
-    private CameraDevice.StateCallback mStateCallback = new CameraDevice.StateCallback() {
-        @Override
-        public void onOpened(@NonNull CameraDevice cameraDevice) {
-            debugLog("Camera device has been received.", null);
-            mCameraDevice = cameraDevice;
+    private void captureFromRing(long triggeredAt) {
 
-            if(mCameraTextureView.isAvailable()) {
-                setup();
-            } else {
-                mCameraTextureView.setSurfaceTextureListener(surfaceTextureListener);
-            }
+        ZslCapture zsl = mZsl;
+        ZslCapture.Frame frame = zsl == null ? null : zsl.take(triggeredAt);
+        if(frame == null) {
+            debugLog("Zero shutter lag ring is empty, capturing a new image.", null);
+            getImage();
+            return;
         }
 
-        @Override
-        public void onDisconnected(@NonNull CameraDevice cameraDevice) {
-            mCallback.onError(new Exception("Camera got disconnected"));
+        if(Build.VERSION.SDK_INT < Build.VERSION_CODES.M || !isZslReprocessing()) {
+            //Without reprocessing the full resolution YUV frame itself is the capture
+            dispatchStillFrame(new Cam2LibFrame(frame.image, frame.owner, mEnableDebugLogging), null);
+            return;
         }
 
-        @Override
-        public void onError(@NonNull CameraDevice cameraDevice, int i) {
+        if(frame.result == null || !mCaptureSession.isReprocessable()) {
+            zsl.discard(frame);
+            getImage();
+            return;
+        }
 
-            switch (i) {
-                case CameraDevice.StateCallback.ERROR_CAMERA_DEVICE:
-                case CameraDevice.StateCallback.ERROR_CAMERA_SERVICE:
-                    mCallback.onError(new Exception("An error occurred while connecting to camera."));
-                    break;
-                case CameraDevice.StateCallback.ERROR_CAMERA_DISABLED:
-                    mCallback.onError(new Exception("Could not access camera as it is disabled."));
-                    break;
-                case CameraDevice.StateCallback.ERROR_CAMERA_IN_USE:
-                    mCallback.onError(new Exception("Camera already in use."));
-                    break;
-                case CameraDevice.StateCallback.ERROR_MAX_CAMERAS_IN_USE:
-                    mCallback.onError(new Exception("Max cameras are in use."));
-                    break;
-            }
+        try {
+            CaptureRequest.Builder builder = mCameraDevice.createReprocessCaptureRequest(frame.result);
+            builder.addTarget(mImageReader.getSurface());
+            builder.set(CaptureRequest.JPEG_ORIENTATION, getJpegOrientation());
+            applyThumbnailSize(builder);
+
+            //The JPEG encoded from the frame arrives like any other still image
+            zsl.queueInput(frame);
+            Cam2LibMetrics metrics = mMetrics;
+            mCaptureSession.capture(builder.build(), metrics == null ? null : metrics.mStillCaptureCallback, mCameraStateHandler);
+        } catch (CameraAccessException | IllegalStateException e) {
+            notifyError(e);
         }
-    };
+    }
 
-    private void setup() {
+    private Surface startFrameStreamer() {
 
-        Surface cameraSurface = new Surface(mCameraTextureView.getSurfaceTexture());
+        if(mFrameStreamer == null) {
+            return null;
+        }
 
+        Size[] sizes;
         try {
-            mCaptureRequestBuilder = mCameraDevice.createCaptureRequest(mOpenedCameraForType);
-            mCaptureRequestBuilder.addTarget(cameraSurface);
-
-            mImageCaptureReader = mCameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_STILL_CAPTURE);
-            mImageCaptureReader.addTarget(mImageReader.getSurface());
-
-            mCameraDevice.createCaptureSession(Arrays.asList(cameraSurface, mImageReader.getSurface()), new CameraCaptureSession.StateCallback() {
-                @Override
-                public void onConfigured(@NonNull CameraCaptureSession session) {
-                    mCaptureSession = session;
-                    mCallback.onReady();
-                }
+            sizes = mCameraCache.getOutputSizes(mCurrentCameraToUse, ImageFormat.YUV_420_888);
+        } catch (CameraAccessException e) {
+            notifyError(e);
+            return null;
+        }
 
-                @Override
-                public void onConfigureFailed(@NonNull CameraCaptureSession session) {
-                    mCallback.onError(new Exception("Could not establish session with camera"));
-                }
+        if(sizes.length == 0) {
+            return null;
+        }
 
-            }, mCameraStateHandler);
+        Size frameSize = mFrameSizeSelector.select(sizes);
+        debugLog("Streaming frames of size " + frameSize.getWidth() + "x" + frameSize.getHeight(), null);
 
-        } catch (CameraAccessException cax) {
-            mCallback.onError(cax);
-        }
+        mFrameStreamer.setMetrics(mMetrics);
+        mFrameStreamer.start(frameSize, mCameraStateHandler);
+        return mFrameStreamer.getSurface();
     }
 
     private TextureView.SurfaceTextureListener surfaceTextureListener = new TextureView.SurfaceTextureListener() {
         @Override
         public void onSurfaceTextureAvailable(SurfaceTexture surfaceTexture, int i, int i1) {
-            setup();
+            mCameraStateHandler.post(new SurfaceReady(surfaceTexture));
         }
 
         @Override
         public void onSurfaceTextureSizeChanged(SurfaceTexture surfaceTexture, int i, int i1) {
-            //
+            if(mCameraStateHandler != null) {
+                mCameraStateHandler.post(new SurfaceResized(i, i1));
+            }
         }
 
         @Override
         public boolean onSurfaceTextureDestroyed(SurfaceTexture surfaceTexture) {
-            return false;
+
+            //Keep the texture the session renders into, it is given back to the view on resume
+            if(surfaceTexture == mPreviewSurfaceTexture && mState != State.CLOSED) {
+                mPreviewTextureDetached = true;
+                return false;
+            }
+            return true;
         }
 
         @Override
@@ -315,12 +1680,12 @@ public final class Cam2Lib {
     private SparseArray<String> getCameraList() throws CameraAccessException {
 
         SparseArray<String> cameraMap = new SparseArray<>();
-        String[] camerasAvailable = mCameraManager.getCameraIdList();
+        String[] camerasAvailable = mCameraCache.getCameraIdList();
 
         CameraCharacteristics cameraCharacteristics;
         for (String id : camerasAvailable) {
 
-            cameraCharacteristics = mCameraManager.getCameraCharacteristics(id);
+            cameraCharacteristics = mCameraCache.getCharacteristics(id);
             Integer characteristic = cameraCharacteristics.get(CameraCharacteristics.LENS_FACING);
 
             if (characteristic == null) {
@@ -347,8 +1712,28 @@ public final class Cam2Lib {
         return cameraMap;
     }
 
+    /**
+     * Build the map of cameras again when cameras were connected or disconnected since it was built
+     */
+    private void refreshCameraMap() {
+
+        int generation = mCameraCache.getGeneration();
+        if(mCameraMap != null && generation == mCameraMapGeneration) {
+            return;
+        }
+
+        try {
+            mCameraMap = getCameraList();
+            mCameraMapGeneration = generation;
+        } catch (CameraAccessException e) {
+            Log.d(Cam2Lib.class.getName(), "Could not retrieve camera list because, " + e.getMessage(), e);
+            notifyError(e);
+        }
+    }
+
     private void setCamera() {
 
+        refreshCameraMap();
         if(mCameraMap == null) {
             Log.e(Cam2Lib.class.getName(), "Could not set camera to " + mWhichCamera + " as camera list is absent.");
             return;
@@ -363,31 +1748,261 @@ public final class Cam2Lib {
         }
 
         try {
-            mCameraCharacter = mCameraManager.getCameraCharacteristics(mCurrentCameraToUse);
-            StreamConfigurationMap map = mCameraCharacter.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
-            if(map != null) {
-                Size mPreviewSize = Collections.max(Arrays.asList(map.getOutputSizes(ImageFormat.JPEG)), new BiggestFinder());
-                mImageReader = ImageReader.newInstance(mPreviewSize.getWidth(), mPreviewSize.getHeight(), ImageFormat.JPEG, 1);
+            mCameraCharacter = mCameraCache.getCharacteristics(mCurrentCameraToUse);
+            Size[] sizes = mCameraCache.getOutputSizes(mCurrentCameraToUse, ImageFormat.JPEG);
+            if(sizes.length != 0) {
+                //Readers are kept per camera, so switching back and forth does not allocate
+                Size stillSize = mStillSizeSelector.select(sizes);
+                mImageReader = mImageReaders.get(mCurrentCameraToUse);
+                if(mImageReader == null || mImageReader.getMaxImages() != mBurstDepth ||
+                        mImageReader.getWidth() != stillSize.getWidth() || mImageReader.getHeight() != stillSize.getHeight()) {
+                    if(mImageReader != null) {
+                        mImageReader.close();
+                    }
+                    mImageReader = ImageReader.newInstance(stillSize.getWidth(), stillSize.getHeight(), ImageFormat.JPEG, mBurstDepth);
+                    mImageReaders.put(mCurrentCameraToUse, mImageReader);
+                }
                 mImageReader.setOnImageAvailableListener(onImageAvailable, mCameraStateHandler);
             }
         } catch (CameraAccessException e) {
-            mCallback.onError(e);
+            notifyError(e);
         }
     }
 
     private ImageReader.OnImageAvailableListener onImageAvailable = new ImageReader.OnImageAvailableListener() {
         @Override
         public void onImageAvailable(ImageReader imageReader) {
-            Image image = imageReader.acquireLatestImage();
-            mCallback.onImage(image);
-            image.close();
+
+            Image image;
+            while (canAcquireStillImage(imageReader) && (image = imageReader.acquireNextImage()) != null) {
+
+                final Integer sequenceIndex = mBurstIndices.get(image.getTimestamp());
+                if(sequenceIndex != null) {
+                    mBurstIndices.remove(image.getTimestamp());
+                }
+
+                Cam2LibMetrics metrics = mMetrics;
+                if(metrics != null) {
+                    metrics.onImageAvailable(image.getTimestamp());
+                }
+
+                //Images leave the camera thread as frames, which hold their slot until released
+                mHeldStillImages.incrementAndGet();
+                dispatchStillFrame(new Cam2LibFrame(image, mStillFrameOwner, mEnableDebugLogging), sequenceIndex);
+            }
+        }
+    };
+
+    private void dispatchStillFrame(final Cam2LibFrame frame, final Integer sequenceIndex) {
+
+        Executor executor = mImageExecutor;
+        if(executor == null) {
+            deliverStillFrame(frame, sequenceIndex);
+            return;
+        }
+
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    deliverStillFrame(frame, sequenceIndex);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            debugLog("Image executor rejected the image, it is dropped.", ex);
+            frame.release();
+        }
+    }
+
+    private boolean canAcquireStillImage(ImageReader imageReader) {
+
+        if(mHeldStillImages.get() < imageReader.getMaxImages()) {
+            return true;
+        }
+
+        //Acquiring now would throw, continue once a frame is released
+        if(!mStillImagesStarved) {
+            mStillImagesStarved = true;
+            debugLog("All still images are held, waiting for a frame to be released.", null);
+
+            Cam2LibMetrics metrics = mMetrics;
+            if(metrics != null) {
+                metrics.onHeldLimitReached();
+            }
+        }
+        return false;
+    }
+
+    private void deliverStillFrame(Cam2LibFrame frame, Integer sequenceIndex) {
+
+        Cam2LibMetrics metrics = mMetrics;
+        long startedAt = 0;
+        if(metrics != null) {
+            metrics.beginSection("Cam2Lib#onImage");
+            startedAt = Cam2LibMetrics.now();
+        }
+
+        Cam2LibBurstCallback burstCallback = mBurstCallback;
+        Cam2LibFrameListener frameListener = mStillFrameListener;
+        Cam2LibCallback callback = mCallback;
+        try {
+            if(sequenceIndex != null && burstCallback != null) {
+                burstCallback.onBurstImage(frame.getImage(), sequenceIndex, frame.getTimestamp());
+            } else if(frameListener != null) {
+                frameListener.onFrame(frame);
+            } else if(callback != null) {
+                callback.onImage(frame.getImage());
+            }
+        } finally {
+            if(metrics != null) {
+                metrics.onImageCallback(startedAt);
+                metrics.endSection();
+            }
+            frame.release();
+        }
+    }
+
+    private Cam2LibFrame.Owner mStillFrameOwner = new Cam2LibFrame.Owner() {
+        @Override
+        public void onFrameReleased(@NonNull Cam2LibFrame frame) {
+            mHeldStillImages.decrementAndGet();
+
+            final ImageReader imageReader = mImageReader;
+            if(mStillImagesStarved && imageReader != null && mCameraStateHandler != null) {
+                mStillImagesStarved = false;
+                mCameraStateHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onImageAvailable.onImageAvailable(imageReader);
+                    }
+                });
+            }
+        }
+    };
+
+    /**
+     * Shutter notifications arrive before the image buffers, so the sensor timestamp of every
+     * burst request is known by the time its image is available.
+     */
+    private CameraCaptureSession.CaptureCallback mBurstCaptureCallback = new CameraCaptureSession.CaptureCallback() {
+        @Override
+        public void onCaptureStarted(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request,
+                                     long timestamp, long frameNumber) {
+
+            Object tag = request.getTag();
+            int sequenceIndex = tag instanceof Integer ? (Integer) tag : mNextBurstIndex.getAndIncrement();
+            mBurstIndices.put(timestamp, sequenceIndex);
+
+            //Drop the oldest entries of captures whose images never arrived
+            while (mBurstIndices.size() > 2 * mBurstDepth + 1) {
+                mBurstIndices.removeAt(0);
+            }
+        }
+
+        @Override
+        public void onCaptureCompleted(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request,
+                                       @NonNull TotalCaptureResult result) {
+            Cam2LibMetrics metrics = mMetrics;
+            if(metrics != null) {
+                metrics.onCaptureCompleted(result);
+            }
+        }
+
+        @Override
+        public void onCaptureFailed(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request,
+                                    @NonNull CaptureFailure failure) {
+            Cam2LibMetrics metrics = mMetrics;
+            if(metrics != null) {
+                metrics.onCaptureFailed();
+            }
+        }
+
+        @Override
+        public void onCaptureBufferLost(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request,
+                                        @NonNull Surface target, long frameNumber) {
+            Cam2LibMetrics metrics = mMetrics;
+            if(metrics != null) {
+                metrics.onBufferLost();
+            }
         }
     };
 
-    private class BiggestFinder implements Comparator<Size> {
+    private void scheduleMetricsReport() {
+
+        if(mCameraStateHandler == null || mMetricsListener == null || mMetricsReportInterval <= 0) {
+            return;
+        }
+
+        mCameraStateHandler.removeCallbacks(mMetricsReport);
+        mCameraStateHandler.postDelayed(mMetricsReport, mMetricsReportInterval);
+    }
+
+    private Runnable mMetricsReport = new Runnable() {
         @Override
-        public int compare(Size s1, Size s2) {
-            return Long.signum((s1.getHeight() * s1.getWidth()) - (s2.getWidth() * s2.getHeight()));
+        public void run() {
+            Cam2LibMetrics metrics = mMetrics;
+            Cam2LibMetrics.Listener listener = mMetricsListener;
+            if(metrics == null || listener == null) {
+                return;
+            }
+
+            final Cam2LibMetrics.Listener target = listener;
+            final Cam2LibMetrics.Snapshot snapshot = metrics.snapshot();
+            dispatch(new Runnable() {
+                @Override
+                public void run() {
+                    target.onMetrics(snapshot);
+                }
+            });
+            mCameraStateHandler.postDelayed(this, mMetricsReportInterval);
+        }
+    };
+
+    private void notifyReady() {
+        final Cam2LibCallback callback = mCallback;
+        if(callback == null) {
+            return;
+        }
+        dispatch(new Runnable() {
+            @Override
+            public void run() {
+                callback.onReady();
+            }
+        });
+    }
+
+    private void notifyComplete() {
+        final Cam2LibCallback callback = mCallback;
+        if(callback == null) {
+            return;
+        }
+        dispatch(new Runnable() {
+            @Override
+            public void run() {
+                callback.onComplete();
+            }
+        });
+    }
+
+    private void notifyError(final Throwable throwable) {
+        final Cam2LibCallback callback = mCallback;
+        if(callback == null) {
+            Log.d(Cam2Lib.class.getName(), "Error after close, " + throwable.getMessage(), throwable);
+            return;
+        }
+        dispatch(new Runnable() {
+            @Override
+            public void run() {
+                callback.onError(throwable);
+            }
+        });
+    }
+
+    private void dispatch(Runnable runnable) {
+        try {
+            mCallbackExecutor.execute(runnable);
+        } catch (RejectedExecutionException ex) {
+            Log.d(Cam2Lib.class.getName(), "Callback executor rejected the callback.", ex);
         }
     }
 
@@ -0,0 +1,7 @@
+package com.wwdablu.soumya.cam2lib;
+
+import android.media.Image;
+
+public interface Cam2LibBurstCallback {
+    void onBurstImage(Image image, int sequenceIndex, long timestamp);
+}
@@ -0,0 +1,211 @@
+package com.wwdablu.soumya.cam2lib;
+
+import android.content.Context;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.support.annotation.NonNull;
+import android.util.Log;
+import android.util.Size;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Process wide cache of the camera ids, their characteristics and output sizes. Each of these is
+ * a binder call to the camera service, while the values never change for a connected camera.
+ * All the {@link Cam2Lib} instances read from this cache.
+ */
+public final class Cam2LibCameraCache {
+
+    private static volatile Cam2LibCameraCache sInstance;
+
+    private final CameraManager mCameraManager;
+    private final ConcurrentHashMap<String, CameraCharacteristics> mCharacteristics = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Size[]> mOutputSizes = new ConcurrentHashMap<>();
+    private final AtomicInteger mGeneration = new AtomicInteger();
+    private volatile String[] mCameraIds;
+
+    private Cam2LibCameraCache(@NonNull Context context) {
+        this.mCameraManager = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
+
+        //Checking whether a camera was removed queries the camera service, which is kept off the main thread
+        HandlerThread callbackThread = new HandlerThread(Cam2LibCameraCache.class.getName());
+        callbackThread.start();
+        this.mCameraManager.registerAvailabilityCallback(mAvailabilityCallback, new Handler(callbackThread.getLooper()));
+    }
+
+    static Cam2LibCameraCache getInstance(@NonNull Context context) {
+
+        if(sInstance == null) {
+            synchronized (Cam2LibCameraCache.class) {
+                if(sInstance == null) {
+                    sInstance = new Cam2LibCameraCache(context.getApplicationContext());
+                }
+            }
+        }
+
+        return sInstance;
+    }
+
+    /**
+     * Populate the cache on a background thread, so that creating a {@link Cam2Lib} later does
+     * not have to query the camera service. Can be called as early as application start.
+     * @param context Context
+     */
+    public static void warmUp(@NonNull Context context) {
+
+        final Cam2LibCameraCache cache = getInstance(context);
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (String id : cache.getCameraIdList()) {
+                        cache.getCharacteristics(id);
+                    }
+                } catch (CameraAccessException e) {
+                    Log.d(Cam2LibCameraCache.class.getName(), "Could not warm up camera cache because, " + e.getMessage(), e);
+                }
+            }
+        }, Cam2LibCameraCache.class.getName());
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Forget everything cached, the next access queries the camera service again. Removed and
+     * added cameras are picked up without this.
+     * @param context Context
+     */
+    public static void invalidate(@NonNull Context context) {
+        getInstance(context).invalidate();
+    }
+
+    void invalidate() {
+        mCameraIds = null;
+        mCharacteristics.clear();
+        mOutputSizes.clear();
+        mGeneration.incrementAndGet();
+    }
+
+    /**
+     * Changes every time the list of cameras changes, so that the lists built from it can be
+     * built again
+     */
+    int getGeneration() {
+        return mGeneration.get();
+    }
+
+    /**
+     * Ids of the connected cameras, the array is a copy
+     */
+    String[] getCameraIdList() throws CameraAccessException {
+
+        String[] cameraIds = mCameraIds;
+        if(cameraIds == null) {
+            cameraIds = mCameraManager.getCameraIdList();
+            mCameraIds = cameraIds;
+        }
+
+        return cameraIds.clone();
+    }
+
+    CameraCharacteristics getCharacteristics(@NonNull String cameraId) throws CameraAccessException {
+
+        CameraCharacteristics characteristics = mCharacteristics.get(cameraId);
+        if(characteristics == null) {
+            characteristics = mCameraManager.getCameraCharacteristics(cameraId);
+            mCharacteristics.put(cameraId, characteristics);
+        }
+
+        return characteristics;
+    }
+
+    /**
+     * Output sizes of the camera for the format
+     * @return Supported sizes, empty if the format is not supported. The array is a copy which
+     * the caller can sort.
+     */
+    Size[] getOutputSizes(@NonNull String cameraId, int format) throws CameraAccessException {
+
+        String key = cameraId + ':' + format;
+        Size[] sizes = mOutputSizes.get(key);
+        if(sizes == null) {
+            StreamConfigurationMap map = getCharacteristics(cameraId).get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+            sizes = map == null ? null : map.getOutputSizes(format);
+            sizes = sizes == null ? new Size[0] : sizes;
+            mOutputSizes.put(key, sizes);
+        }
+
+        return sizes.clone();
+    }
+
+    /**
+     * Output sizes of the camera for the surface class, like SurfaceTexture
+     * @return Supported sizes, empty if the class is not supported. The array is a copy which
+     * the caller can sort.
+     */
+    Size[] getOutputSizes(@NonNull String cameraId, @NonNull Class<?> klass) throws CameraAccessException {
+
+        String key = cameraId + ':' + klass.getName();
+        Size[] sizes = mOutputSizes.get(key);
+        if(sizes == null) {
+            StreamConfigurationMap map = getCharacteristics(cameraId).get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+            sizes = map == null ? null : map.getOutputSizes(klass);
+            sizes = sizes == null ? new Size[0] : sizes;
+            mOutputSizes.put(key, sizes);
+        }
+
+        return sizes.clone();
+    }
+
+    private final CameraManager.AvailabilityCallback mAvailabilityCallback = new CameraManager.AvailabilityCallback() {
+        @Override
+        public void onCameraAvailable(@NonNull String cameraId) {
+
+            //Cameras going in and out of use are reported as well, only a new id changes the list
+            String[] cameraIds = mCameraIds;
+            if(cameraIds != null && !Arrays.asList(cameraIds).contains(cameraId)) {
+                mCameraIds = null;
+                mGeneration.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void onCameraUnavailable(@NonNull String cameraId) {
+
+            String[] cameraIds = mCameraIds;
+            if(cameraIds == null || !Arrays.asList(cameraIds).contains(cameraId)) {
+                return;
+            }
+
+            //Reported both for a camera going into use and for one being disconnected, this runs on
+            //the thread of the cache so the query does not hold up the main thread or the open
+            try {
+                if(!Arrays.asList(mCameraManager.getCameraIdList()).contains(cameraId)) {
+                    remove(cameraId);
+                }
+            } catch (CameraAccessException e) {
+                invalidate();
+            }
+        }
+    };
+
+    private void remove(String cameraId) {
+
+        mCameraIds = null;
+        mCharacteristics.remove(cameraId);
+
+        String prefix = cameraId + ':';
+        for (String key : mOutputSizes.keySet()) {
+            if(key.startsWith(prefix)) {
+                mOutputSizes.remove(key);
+            }
+        }
+        mGeneration.incrementAndGet();
+    }
+}
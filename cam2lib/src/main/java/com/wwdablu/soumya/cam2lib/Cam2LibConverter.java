@@ -9,6 +9,48 @@ import java.nio.ByteBuffer;
 
 public final class Cam2LibConverter {
 
+    /**
+     * How the decoded image is to be matched to a target size
+     */
+    public enum ScaleMode {
+        /**
+         * The whole image fits inside the target, it can be smaller in one dimension
+         */
+        FIT,
+
+        /**
+         * The image covers the whole target, it can be larger in one dimension
+         */
+        FILL
+    }
+
+    private static final long DEFAULT_BUFFER_POOL_BYTES = 64L * 1024 * 1024;
+    private static final int DEFAULT_BITMAPS_PER_SIZE = 2;
+
+    private final ByteArrayPool mBufferPool;
+    private final BitmapPool mBitmapPool;
+    private final BitmapFactory.Options mOptions;
+
+    /**
+     * Create a converter which reuses its buffers and bitmaps across conversions. Use
+     * {@link #toBitmap(Image, boolean)} instead for a one off conversion.
+     */
+    public Cam2LibConverter() {
+        this(DEFAULT_BUFFER_POOL_BYTES, DEFAULT_BITMAPS_PER_SIZE);
+    }
+
+    /**
+     * Create a converter which reuses its buffers and bitmaps across conversions.
+     * @param maxPooledBufferBytes Maximum bytes held by the pool of JPEG buffers
+     * @param maxBitmapsPerSize Maximum bitmaps of one size and config held by the pool
+     */
+    public Cam2LibConverter(long maxPooledBufferBytes, int maxBitmapsPerSize) {
+        this.mBufferPool = new ByteArrayPool(maxPooledBufferBytes);
+        this.mBitmapPool = new BitmapPool(maxBitmapsPerSize);
+        this.mOptions = new BitmapFactory.Options();
+        this.mOptions.inTempStorage = new byte[16 * 1024];
+    }
+
     public static Bitmap toBitmap(@NonNull Image image, boolean displayScaled) {
         ByteBuffer buffer = image.getPlanes()[0].getBuffer();
         byte[] bytes = new byte[buffer.remaining()];
@@ -23,4 +65,221 @@ public final class Cam2LibConverter {
         }
         return BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
     }
+
+    /**
+     * Decode the JPEG image for display at a target size. Only the header is read first to pick
+     * the largest power of two sub sampling which keeps the image at least as large as needed, so
+     * the full resolution is never decoded. As JPEG has no alpha, it is decoded as RGB_565.
+     * @param image JPEG image received in {@link Cam2LibCallback#onImage(Image)}
+     * @param targetWidth Width of the view the image is displayed in
+     * @param targetHeight Height of the view the image is displayed in
+     * @param mode How the image is matched to the target size
+     * @param exact Whether to finish with a scale to exactly match the target size
+     * @return Decoded bitmap or null if the data could not be decoded
+     */
+    public static Bitmap toBitmap(@NonNull Image image, int targetWidth, int targetHeight,
+                                  @NonNull ScaleMode mode, boolean exact) {
+        ByteBuffer buffer = image.getPlanes()[0].getBuffer();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, targetWidth, targetHeight, mode);
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        Bitmap bitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+
+        if(!exact || bitmap == null) {
+            return bitmap;
+        }
+
+        Bitmap scaled = scaleExact(bitmap, targetWidth, targetHeight, mode);
+        if(scaled != bitmap) {
+            bitmap.recycle();
+        }
+        return scaled;
+    }
+
+    /**
+     * Decode the JPEG image into a bitmap using pooled buffers. The bitmap returned can be given
+     * back using {@link #recycle(Bitmap)} once it is no longer displayed, so that the next decode
+     * of the same size reuses it.
+     * @param image JPEG image received in {@link Cam2LibCallback#onImage(Image)}
+     * @param displayScaled Whether the bitmap is to be scaled as per display density
+     * @return Decoded bitmap or null if the data could not be decoded
+     */
+    public synchronized Bitmap decode(@NonNull Image image, boolean displayScaled) {
+        return decodePooled(image, displayScaled, 0, 0, ScaleMode.FIT, Bitmap.Config.ARGB_8888);
+    }
+
+    /**
+     * Decode the JPEG image for display at a target size using pooled buffers. See
+     * {@link #toBitmap(Image, int, int, ScaleMode, boolean)} for how the size is chosen. Unless
+     * an exact scale is requested, the bitmap can be given back using {@link #recycle(Bitmap)}.
+     * @param image JPEG image received in {@link Cam2LibCallback#onImage(Image)}
+     * @param targetWidth Width of the view the image is displayed in
+     * @param targetHeight Height of the view the image is displayed in
+     * @param mode How the image is matched to the target size
+     * @param exact Whether to finish with a scale to exactly match the target size
+     * @return Decoded bitmap or null if the data could not be decoded
+     */
+    public synchronized Bitmap decode(@NonNull Image image, int targetWidth, int targetHeight,
+                                      @NonNull ScaleMode mode, boolean exact) {
+        Bitmap bitmap = decodePooled(image, false, targetWidth, targetHeight, mode, Bitmap.Config.RGB_565);
+        if(!exact || bitmap == null) {
+            return bitmap;
+        }
+
+        Bitmap scaled = scaleExact(bitmap, targetWidth, targetHeight, mode);
+        if(scaled != bitmap) {
+            mBitmapPool.release(bitmap);
+        }
+        return scaled;
+    }
+
+    /**
+     * Give back a bitmap returned by {@link #decode(Image, boolean)} for reuse. The caller must
+     * not use the bitmap after this call.
+     * @param bitmap Bitmap which is no longer used
+     */
+    public synchronized void recycle(@NonNull Bitmap bitmap) {
+        mBitmapPool.release(bitmap);
+    }
+
+    /**
+     * Release all the pooled buffers and bitmaps
+     */
+    public synchronized void clear() {
+        mBufferPool.clear();
+        mBitmapPool.clear();
+    }
+
+    public long getBufferPoolHits() {
+        return mBufferPool.getHitCount();
+    }
+
+    public long getBufferPoolMisses() {
+        return mBufferPool.getMissCount();
+    }
+
+    public long getBitmapPoolHits() {
+        return mBitmapPool.getHitCount();
+    }
+
+    public long getBitmapPoolMisses() {
+        return mBitmapPool.getMissCount();
+    }
+
+    private Bitmap decodePooled(Image image, boolean displayScaled, int targetWidth, int targetHeight,
+                                ScaleMode mode, Bitmap.Config config) {
+
+        ByteBuffer buffer = image.getPlanes()[0].getBuffer();
+        int length = buffer.remaining();
+        byte[] bytes = copyPooled(buffer, mBufferPool);
+
+        try {
+            mOptions.inJustDecodeBounds = true;
+            mOptions.inBitmap = null;
+            mOptions.inSampleSize = 1;
+            BitmapFactory.decodeByteArray(bytes, 0, length, mOptions);
+
+            if(targetWidth > 0 && targetHeight > 0) {
+                //Bounds with the sample size applied give the size of the bitmap to reuse
+                mOptions.inSampleSize = calculateInSampleSize(mOptions.outWidth, mOptions.outHeight,
+                        targetWidth, targetHeight, mode);
+                BitmapFactory.decodeByteArray(bytes, 0, length, mOptions);
+            }
+
+            mOptions.inJustDecodeBounds = false;
+            mOptions.inMutable = true;
+            mOptions.inPreferredConfig = config;
+            mOptions.inScaled = displayScaled;
+            mOptions.inDensity = 0;
+            mOptions.inTargetDensity = 0;
+            mOptions.inBitmap = mBitmapPool.acquire(mOptions.outWidth, mOptions.outHeight, config);
+
+            return decodeReusing(bytes, length);
+        } finally {
+            mOptions.inBitmap = null;
+            mBufferPool.release(bytes);
+        }
+    }
+
+    /**
+     * Copy the remaining bytes of the buffer into an array from the pool, which can be longer
+     * than the data. The position of the buffer is left as it was.
+     */
+    static byte[] copyPooled(@NonNull ByteBuffer buffer, @NonNull ByteArrayPool pool) {
+
+        int length = buffer.remaining();
+        byte[] bytes = pool.acquire(length);
+
+        //Leave the buffer as it was, others might read the image after us
+        int position = buffer.position();
+        buffer.get(bytes, 0, length);
+        buffer.position(position);
+        return bytes;
+    }
+
+    private Bitmap decodeReusing(byte[] bytes, int length) {
+
+        Bitmap reused = mOptions.inBitmap;
+        try {
+            return BitmapFactory.decodeByteArray(bytes, 0, length, mOptions);
+        } catch (IllegalArgumentException ex) {
+            //The pooled bitmap could not be reused, decode into a new one
+            mOptions.inBitmap = null;
+            if(reused != null) {
+                reused.recycle();
+            }
+            return BitmapFactory.decodeByteArray(bytes, 0, length, mOptions);
+        }
+    }
+
+    /**
+     * Largest power of two sub sampling which keeps the image at least as large as required by
+     * the target size and mode
+     */
+    static int calculateInSampleSize(int width, int height, int targetWidth, int targetHeight, @NonNull ScaleMode mode) {
+
+        int sampleSize = 1;
+        if(width <= 0 || height <= 0 || targetWidth <= 0 || targetHeight <= 0) {
+            return sampleSize;
+        }
+
+        if(mode == ScaleMode.FIT) {
+            while ((long) width >= 2L * sampleSize * targetWidth || (long) height >= 2L * sampleSize * targetHeight) {
+                sampleSize *= 2;
+            }
+        } else {
+            while ((long) width >= 2L * sampleSize * targetWidth && (long) height >= 2L * sampleSize * targetHeight) {
+                sampleSize *= 2;
+            }
+        }
+
+        return sampleSize;
+    }
+
+    private static Bitmap scaleExact(Bitmap bitmap, int targetWidth, int targetHeight, ScaleMode mode) {
+
+        if(bitmap == null) {
+            return null;
+        }
+
+        float widthScale = (float) targetWidth / bitmap.getWidth();
+        float heightScale = (float) targetHeight / bitmap.getHeight();
+        float scale = mode == ScaleMode.FIT ? Math.min(widthScale, heightScale) : Math.max(widthScale, heightScale);
+
+        int width = Math.max(1, Math.round(bitmap.getWidth() * scale));
+        int height = Math.max(1, Math.round(bitmap.getHeight() * scale));
+        if(width == bitmap.getWidth() && height == bitmap.getHeight()) {
+            return bitmap;
+        }
+
+        //The source is left to the caller, which gives it back to the pool or recycles it
+        return Bitmap.createScaledBitmap(bitmap, width, height, true);
+    }
 }
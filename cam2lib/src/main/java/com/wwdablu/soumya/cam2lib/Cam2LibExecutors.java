@@ -0,0 +1,100 @@
+package com.wwdablu.soumya.cam2lib;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors to be used with {@link Cam2Lib#setCallbackExecutors(Executor, Executor)}
+ */
+public final class Cam2LibExecutors {
+
+    private static volatile Executor sMainThread;
+
+    private Cam2LibExecutors() {
+    }
+
+    /**
+     * Runs the callbacks on the main thread
+     * @return Main thread executor
+     */
+    @NonNull
+    public static Executor mainThread() {
+
+        if(sMainThread == null) {
+            synchronized (Cam2LibExecutors.class) {
+                if(sMainThread == null) {
+                    final Handler handler = new Handler(Looper.getMainLooper());
+                    sMainThread = new Executor() {
+                        @Override
+                        public void execute(@NonNull Runnable runnable) {
+                            if(Looper.myLooper() == Looper.getMainLooper()) {
+                                runnable.run();
+                            } else {
+                                handler.post(runnable);
+                            }
+                        }
+                    };
+                }
+            }
+        }
+
+        return sMainThread;
+    }
+
+    /**
+     * Runs the callbacks on the thread which raised them, which is the camera thread. Work done in
+     * the callbacks then delays the camera.
+     * @return Direct executor
+     */
+    @NonNull
+    public static Executor direct() {
+        return DIRECT;
+    }
+
+    /**
+     * Pool of background threads for processing images. The threads time out when idle. Images
+     * can be delivered concurrently and out of order when more than one thread is used.
+     * @param threads Maximum number of threads
+     * @return Executor to be shut down by the caller once no longer used
+     */
+    @NonNull
+    public static ExecutorService newImagePool(int threads) {
+
+        final int count = Math.max(1, threads);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(count, count, 5, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+            private final AtomicInteger mNext = new AtomicInteger();
+
+            @Override
+            public Thread newThread(@NonNull final Runnable runnable) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, "Cam2LibImage-" + mNext.incrementAndGet());
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(@NonNull Runnable runnable) {
+            runnable.run();
+        }
+    };
+}
@@ -0,0 +1,420 @@
+package com.wwdablu.soumya.cam2lib;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.media.Image;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * EXIF metadata of a JPEG, read without decoding the image. Only the segments ahead of the EXIF
+ * segment are walked, so the cost does not depend on the size of the image. The embedded
+ * thumbnail is handed out as a view of the data, to be decoded on its own.
+ */
+public final class Cam2LibExif {
+
+    /**
+     * Orientation when the image has none, or no EXIF
+     */
+    public static final int ORIENTATION_UNDEFINED = 0;
+    public static final int ORIENTATION_NORMAL = 1;
+    public static final int ORIENTATION_FLIP_HORIZONTAL = 2;
+    public static final int ORIENTATION_ROTATE_180 = 3;
+    public static final int ORIENTATION_FLIP_VERTICAL = 4;
+    public static final int ORIENTATION_TRANSPOSE = 5;
+    public static final int ORIENTATION_ROTATE_90 = 6;
+    public static final int ORIENTATION_TRANSVERSE = 7;
+    public static final int ORIENTATION_ROTATE_270 = 8;
+
+    private static final int MARKER_SOI = 0xD8;
+    private static final int MARKER_APP1 = 0xE1;
+    private static final int MARKER_SOS = 0xDA;
+    private static final int MARKER_EOI = 0xD9;
+
+    private static final int TAG_MAKE = 0x010F;
+    private static final int TAG_MODEL = 0x0110;
+    private static final int TAG_ORIENTATION = 0x0112;
+    private static final int TAG_DATE_TIME = 0x0132;
+    private static final int TAG_EXIF_IFD = 0x8769;
+    private static final int TAG_DATE_TIME_ORIGINAL = 0x9003;
+    private static final int TAG_PIXEL_X_DIMENSION = 0xA002;
+    private static final int TAG_PIXEL_Y_DIMENSION = 0xA003;
+    private static final int TAG_THUMBNAIL_OFFSET = 0x0201;
+    private static final int TAG_THUMBNAIL_LENGTH = 0x0202;
+
+    private static final int TYPE_ASCII = 2;
+    private static final int TYPE_SHORT = 3;
+    private static final int TYPE_LONG = 4;
+
+    private static final int MAX_IFD_ENTRIES = 512;
+
+    private int mOrientation = ORIENTATION_UNDEFINED;
+    private String mDateTime;
+    private String mDateTimeOriginal;
+    private String mMake;
+    private String mModel;
+    private int mWidth;
+    private int mHeight;
+    private ByteBuffer mThumbnail;
+
+    private Cam2LibExif() {
+        //
+    }
+
+    /**
+     * Read the EXIF of a JPEG image received in {@link Cam2LibCallback#onImage(Image)}. The
+     * thumbnail refers to the memory of the image, so it is only valid until the image is closed.
+     * @return EXIF or null if the image has none
+     */
+    @Nullable
+    public static Cam2LibExif read(@NonNull Image image) {
+        return read(image.getPlanes()[0].getBuffer());
+    }
+
+    /**
+     * Read the EXIF of the JPEG data between the position and the limit of the buffer. The
+     * position of the buffer is left as it was and the thumbnail refers to its memory.
+     * @return EXIF or null if the data has none
+     */
+    @Nullable
+    public static Cam2LibExif read(@NonNull ByteBuffer jpeg) {
+
+        ByteBuffer buffer = jpeg.slice().order(ByteOrder.BIG_ENDIAN);
+        if(buffer.remaining() < 4 || (buffer.get(0) & 0xFF) != 0xFF || (buffer.get(1) & 0xFF) != MARKER_SOI) {
+            return null;
+        }
+
+        int offset = 2;
+        while (offset + 4 <= buffer.limit()) {
+
+            int marker = nextMarker(buffer.get(offset) & 0xFF, buffer.get(offset + 1) & 0xFF);
+            if(marker < 0) {
+                return null;
+            }
+
+            int length = buffer.getShort(offset + 2) & 0xFFFF;
+            if(length < 2 || offset + 2 + length > buffer.limit()) {
+                return null;
+            }
+
+            if(marker == MARKER_APP1 && isExif(buffer, offset + 4, length - 2)) {
+                buffer.position(offset + 4);
+                buffer.limit(offset + 2 + length);
+                return parse(buffer.slice());
+            }
+
+            offset += 2 + length;
+        }
+        return null;
+    }
+
+    /**
+     * Read the EXIF of a JPEG file, like the ones written by {@link Cam2LibJpegWriter}. Only the
+     * segments up to the EXIF are read from the channel, starting from its current position,
+     * which is not changed. The thumbnail is copied along with the EXIF segment.
+     * @return EXIF or null if the file has none
+     */
+    @Nullable
+    public static Cam2LibExif read(@NonNull FileChannel channel) throws IOException {
+
+        long start = channel.position();
+        ByteBuffer header = ByteBuffer.allocate(4);
+        readFully(channel, header, start);
+        if((header.get(0) & 0xFF) != 0xFF || (header.get(1) & 0xFF) != MARKER_SOI) {
+            return null;
+        }
+
+        long offset = start + 2;
+        while (true) {
+
+            header.clear();
+            readFully(channel, header, offset);
+            int marker = nextMarker(header.get(0) & 0xFF, header.get(1) & 0xFF);
+            int length = header.getShort(2) & 0xFFFF;
+            if(marker < 0 || length < 2) {
+                return null;
+            }
+
+            if(marker == MARKER_APP1) {
+                ByteBuffer segment = ByteBuffer.allocate(length - 2);
+                readFully(channel, segment, offset + 4);
+                if(isExif(segment, 0, segment.capacity())) {
+                    return parse(segment);
+                }
+            }
+
+            offset += 2 + length;
+        }
+    }
+
+    /**
+     * Orientation as per EXIF, one of the ORIENTATION constants
+     */
+    public int getOrientation() {
+        return mOrientation;
+    }
+
+    /**
+     * Clockwise rotation which displays the image upright, ignoring any mirroring
+     * @return 0, 90, 180 or 270
+     */
+    public int getRotationDegrees() {
+        switch (mOrientation) {
+            case ORIENTATION_ROTATE_90:
+            case ORIENTATION_TRANSPOSE:
+                return 90;
+            case ORIENTATION_ROTATE_180:
+            case ORIENTATION_FLIP_VERTICAL:
+                return 180;
+            case ORIENTATION_ROTATE_270:
+            case ORIENTATION_TRANSVERSE:
+                return 270;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Whether the image is to be mirrored, after the rotation, to be displayed as captured
+     */
+    public boolean isMirrored() {
+        return mOrientation == ORIENTATION_FLIP_HORIZONTAL || mOrientation == ORIENTATION_FLIP_VERTICAL ||
+                mOrientation == ORIENTATION_TRANSPOSE || mOrientation == ORIENTATION_TRANSVERSE;
+    }
+
+    /**
+     * Time of the capture as yyyy:MM:dd HH:mm:ss, falling back to the time of the last change
+     * @return Date and time or null if absent
+     */
+    @Nullable
+    public String getDateTime() {
+        return mDateTimeOriginal != null ? mDateTimeOriginal : mDateTime;
+    }
+
+    @Nullable
+    public String getMake() {
+        return mMake;
+    }
+
+    @Nullable
+    public String getModel() {
+        return mModel;
+    }
+
+    /**
+     * Width of the image as per EXIF
+     * @return Width or 0 if absent
+     */
+    public int getWidth() {
+        return mWidth;
+    }
+
+    /**
+     * Height of the image as per EXIF
+     * @return Height or 0 if absent
+     */
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public boolean hasThumbnail() {
+        return mThumbnail != null;
+    }
+
+    /**
+     * JPEG data of the embedded thumbnail. The camera only embeds one when
+     * {@link android.hardware.camera2.CaptureRequest#JPEG_THUMBNAIL_SIZE} is set, see
+     * {@link Cam2Lib#setThumbnailSizeSelector(Cam2LibSizeSelector)}.
+     * @return Read only view of the thumbnail data or null if absent
+     */
+    @Nullable
+    public ByteBuffer getThumbnail() {
+        return mThumbnail == null ? null : mThumbnail.asReadOnlyBuffer();
+    }
+
+    /**
+     * Decode the embedded thumbnail. The thumbnail is not rotated, see {@link #getRotationDegrees()}.
+     * @return Thumbnail or null if absent or it could not be decoded
+     */
+    @Nullable
+    public Bitmap decodeThumbnail() {
+
+        if(mThumbnail == null) {
+            return null;
+        }
+
+        byte[] bytes = new byte[mThumbnail.remaining()];
+        mThumbnail.duplicate().get(bytes);
+        return BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Markers can be preceded by any number of 0xFF fill bytes, which is not expected of a
+     * camera, so only a single one is accepted
+     * @return Marker or -1 if there is none or the image data has been reached
+     */
+    private static int nextMarker(int prefix, int marker) {
+        if(prefix != 0xFF || marker == MARKER_SOS || marker == MARKER_EOI) {
+            return -1;
+        }
+        return marker;
+    }
+
+    private static boolean isExif(ByteBuffer buffer, int offset, int length) {
+        return length >= 14 && buffer.get(offset) == 'E' && buffer.get(offset + 1) == 'x' &&
+                buffer.get(offset + 2) == 'i' && buffer.get(offset + 3) == 'f' &&
+                buffer.get(offset + 4) == 0 && buffer.get(offset + 5) == 0;
+    }
+
+    /**
+     * @param segment Payload of the APP1 segment, starting at the EXIF identifier
+     */
+    private static Cam2LibExif parse(ByteBuffer segment) {
+
+        segment.position(6);
+        ByteBuffer tiff = segment.slice();
+        Cam2LibExif exif = new Cam2LibExif();
+
+        if(tiff.get(0) == 'I' && tiff.get(1) == 'I') {
+            tiff.order(ByteOrder.LITTLE_ENDIAN);
+        } else if(tiff.get(0) == 'M' && tiff.get(1) == 'M') {
+            tiff.order(ByteOrder.BIG_ENDIAN);
+        } else {
+            return exif;
+        }
+
+        if(tiff.getShort(2) != 42) {
+            return exif;
+        }
+
+        //Offsets are from the start of the TIFF header, anything out of range ends the parsing
+        try {
+            int nextIfd = exif.readIfd(tiff, tiff.getInt(4), false);
+            if(nextIfd > 0) {
+                exif.readIfd(tiff, nextIfd, true);
+            }
+        } catch (IndexOutOfBoundsException | IllegalArgumentException ex) {
+            //Keep what has been read so far
+        }
+        return exif;
+    }
+
+    /**
+     * @return Offset of the next IFD, 0 if none
+     */
+    private int readIfd(ByteBuffer tiff, int offset, boolean thumbnailIfd) {
+
+        int count = tiff.getShort(offset) & 0xFFFF;
+        if(count > MAX_IFD_ENTRIES) {
+            return 0;
+        }
+
+        int thumbnailOffset = -1;
+        int thumbnailLength = -1;
+
+        for (int index = 0; index < count; index++) {
+
+            int entry = offset + 2 + index * 12;
+            int tag = tiff.getShort(entry) & 0xFFFF;
+
+            if(thumbnailIfd) {
+                if(tag == TAG_THUMBNAIL_OFFSET) {
+                    thumbnailOffset = readInt(tiff, entry);
+                } else if(tag == TAG_THUMBNAIL_LENGTH) {
+                    thumbnailLength = readInt(tiff, entry);
+                }
+                continue;
+            }
+
+            switch (tag) {
+                case TAG_ORIENTATION:
+                    mOrientation = readInt(tiff, entry);
+                    break;
+                case TAG_DATE_TIME:
+                    mDateTime = readString(tiff, entry);
+                    break;
+                case TAG_DATE_TIME_ORIGINAL:
+                    mDateTimeOriginal = readString(tiff, entry);
+                    break;
+                case TAG_MAKE:
+                    mMake = readString(tiff, entry);
+                    break;
+                case TAG_MODEL:
+                    mModel = readString(tiff, entry);
+                    break;
+                case TAG_PIXEL_X_DIMENSION:
+                    mWidth = readInt(tiff, entry);
+                    break;
+                case TAG_PIXEL_Y_DIMENSION:
+                    mHeight = readInt(tiff, entry);
+                    break;
+                case TAG_EXIF_IFD:
+                    int exifIfd = readInt(tiff, entry);
+                    if(exifIfd > offset) {
+                        readIfd(tiff, exifIfd, false);
+                    }
+                    break;
+            }
+        }
+
+        if(thumbnailOffset > 0 && thumbnailLength > 0 && thumbnailOffset <= tiff.limit() - thumbnailLength) {
+            ByteBuffer thumbnail = tiff.duplicate();
+            thumbnail.position(thumbnailOffset);
+            thumbnail.limit(thumbnailOffset + thumbnailLength);
+            mThumbnail = thumbnail.slice();
+        }
+
+        int nextIfd = tiff.getInt(offset + 2 + count * 12);
+        return nextIfd > offset ? nextIfd : 0;
+    }
+
+    private static int readInt(ByteBuffer tiff, int entry) {
+        int type = tiff.getShort(entry + 2) & 0xFFFF;
+        if(type == TYPE_SHORT) {
+            return tiff.getShort(entry + 8) & 0xFFFF;
+        }
+        return type == TYPE_LONG ? tiff.getInt(entry + 8) : 0;
+    }
+
+    private static String readString(ByteBuffer tiff, int entry) {
+
+        if((tiff.getShort(entry + 2) & 0xFFFF) != TYPE_ASCII) {
+            return null;
+        }
+
+        //Values of up to 4 bytes are stored in the entry itself
+        int count = tiff.getInt(entry + 4);
+        int offset = count <= 4 ? entry + 8 : tiff.getInt(entry + 8);
+        if(count <= 0 || count > tiff.limit() || offset < 0 || offset > tiff.limit() - count) {
+            return null;
+        }
+
+        byte[] bytes = new byte[count];
+        ByteBuffer value = tiff.duplicate();
+        value.position(offset);
+        value.get(bytes);
+
+        int length = 0;
+        while (length < count && bytes[length] != 0) {
+            length++;
+        }
+        return length == 0 ? null : new String(bytes, 0, length, StandardCharsets.US_ASCII);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if(read < 0) {
+                throw new EOFException("JPEG ended before the EXIF segment");
+            }
+        }
+        buffer.flip();
+    }
+}
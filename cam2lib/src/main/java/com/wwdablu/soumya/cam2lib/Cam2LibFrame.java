@@ -0,0 +1,109 @@
+package com.wwdablu.soumya.cam2lib;
+
+import android.media.Image;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reference counted {@link Image}, so that it can be handed to other threads without copying.
+ * The frame starts with a single reference held by the library for the duration of the callback.
+ * Call {@link #retain()} to keep it beyond the callback and {@link #release()} once done. The
+ * image goes back to the camera when the last reference is released.
+ */
+public final class Cam2LibFrame {
+
+    interface Owner {
+        void onFrameReleased(@NonNull Cam2LibFrame frame);
+    }
+
+    private final Image mImage;
+    private final Owner mOwner;
+    private final AtomicInteger mReferences = new AtomicInteger(1);
+    private final Throwable mAcquiredAt;
+
+    Cam2LibFrame(@NonNull Image image, @NonNull Owner owner, boolean trackLeaks) {
+        this.mImage = image;
+        this.mOwner = owner;
+        this.mAcquiredAt = trackLeaks ? new Throwable("Frame acquired here") : null;
+    }
+
+    /**
+     * The image of the frame, valid until the last reference is released
+     * @return Image
+     */
+    @NonNull
+    public Image getImage() {
+        if(mReferences.get() <= 0) {
+            throw new IllegalStateException("Frame has already been released");
+        }
+        return mImage;
+    }
+
+    /**
+     * The image without the reference check, for the owner once the frame is released
+     */
+    Image peekImage() {
+        return mImage;
+    }
+
+    public int getWidth() {
+        return getImage().getWidth();
+    }
+
+    public int getHeight() {
+        return getImage().getHeight();
+    }
+
+    public int getFormat() {
+        return getImage().getFormat();
+    }
+
+    public long getTimestamp() {
+        return getImage().getTimestamp();
+    }
+
+    /**
+     * Add a reference to the frame
+     * @return This frame
+     */
+    @NonNull
+    public Cam2LibFrame retain() {
+        int references;
+        do {
+            references = mReferences.get();
+            if(references <= 0) {
+                throw new IllegalStateException("Cannot retain a released frame");
+            }
+        } while (!mReferences.compareAndSet(references, references + 1));
+        return this;
+    }
+
+    /**
+     * Remove a reference from the frame. The image is closed when no reference is left.
+     */
+    public void release() {
+        int references = mReferences.decrementAndGet();
+        if(references == 0) {
+            mImage.close();
+            mOwner.onFrameReleased(this);
+        } else if(references < 0) {
+            mReferences.set(0);
+            throw new IllegalStateException("Frame released more times than retained");
+        }
+    }
+
+    @Override
+    protected void finalize() throws Throwable {
+        try {
+            if(mAcquiredAt != null && mReferences.get() > 0) {
+                Log.e(Cam2LibFrame.class.getName(), "Frame was never released, the camera can run out of buffers.", mAcquiredAt);
+                mReferences.set(1);
+                release();
+            }
+        } finally {
+            super.finalize();
+        }
+    }
+}
@@ -0,0 +1,5 @@
+package com.wwdablu.soumya.cam2lib;
+
+public interface Cam2LibFrameListener {
+    void onFrame(Cam2LibFrame frame);
+}
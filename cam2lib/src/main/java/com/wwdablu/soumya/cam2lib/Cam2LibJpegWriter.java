@@ -0,0 +1,347 @@
+package com.wwdablu.soumya.cam2lib;
+
+import android.graphics.ImageFormat;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Writes JPEG frames to disk on a background thread. The encoded bytes are written straight from
+ * the buffer of the image through a {@link FileChannel}, so nothing is copied or decoded. Frames
+ * are retained until written, which keeps their slot in the reader, and the queue is bounded so
+ * that a slow disk applies backpressure instead of holding an unbounded number of frames.
+ * Writes are synced in batches and every capture is reported once its batch is synced.
+ */
+public final class Cam2LibJpegWriter {
+
+    public interface Listener {
+        /**
+         * The capture is written and synced to the storage
+         * @param timestamp Sensor timestamp of the capture
+         * @param bytes Bytes written
+         */
+        void onSaved(long timestamp, long bytes);
+
+        /**
+         * The capture could not be written
+         * @param timestamp Sensor timestamp of the capture
+         * @param error Reason
+         */
+        void onFailed(long timestamp, @NonNull Throwable error);
+    }
+
+    private static final int DEFAULT_QUEUE_CAPACITY = 8;
+    private static final int DEFAULT_SYNC_BATCH = 4;
+
+    private static final Job STOP = new Job();
+
+    private final BlockingQueue<Job> mQueue;
+    private final int mSyncBatch;
+    private final Thread mWriterThread;
+    private final List<Job> mUnsynced = new ArrayList<>();
+
+    private boolean mClosed;
+
+    /**
+     * Create a writer which queues up to 8 captures and syncs after every 4 writes, or earlier
+     * when the queue runs empty
+     */
+    public Cam2LibJpegWriter() {
+        this(DEFAULT_QUEUE_CAPACITY, DEFAULT_SYNC_BATCH);
+    }
+
+    /**
+     * Create a writer
+     * @param queueCapacity Maximum captures waiting to be written
+     * @param syncBatch Maximum captures written before the storage is synced. Sync also happens
+     *                  whenever the queue runs empty.
+     */
+    public Cam2LibJpegWriter(int queueCapacity, int syncBatch) {
+        this.mQueue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        this.mSyncBatch = Math.max(1, syncBatch);
+        this.mWriterThread = new Thread(mWriter, Cam2LibJpegWriter.class.getName());
+        this.mWriterThread.start();
+    }
+
+    /**
+     * Queue the frame to be written to a new file. The frame is retained until written.
+     * @param frame JPEG frame, see {@link Cam2Lib#setStillFrameListener(Cam2LibFrameListener)}
+     * @param file File to write to, replaced if it exists
+     * @param listener Notified on the writer thread once the capture is saved, can be null
+     * @return False if the queue is full or the writer is closed, the frame is not retained then
+     */
+    public boolean save(@NonNull Cam2LibFrame frame, @NonNull File file, @Nullable Listener listener) {
+        return enqueue(frame, file, null, listener);
+    }
+
+    /**
+     * Queue the frame to be written at the current position of the channel, for example to
+     * append several captures to one file. The channel is not closed by the writer.
+     * @param frame JPEG frame, see {@link Cam2Lib#setStillFrameListener(Cam2LibFrameListener)}
+     * @param channel Channel to write to, must only be written by this writer until saved
+     * @param listener Notified on the writer thread once the capture is saved, can be null
+     * @return False if the queue is full or the writer is closed, the frame is not retained then
+     */
+    public boolean save(@NonNull Cam2LibFrame frame, @NonNull FileChannel channel, @Nullable Listener listener) {
+        return enqueue(frame, null, channel, listener);
+    }
+
+    /**
+     * Queue JPEG bytes which are not held by a frame, written from the position of the buffer
+     * without changing it
+     */
+    boolean save(@NonNull ByteBuffer jpeg, long timestamp, @Nullable File file, @Nullable FileChannel channel,
+                 @Nullable Listener listener) {
+        synchronized (this) {
+            return !mClosed && mQueue.offer(new Job(null, jpeg.duplicate(), timestamp, file, channel, listener));
+        }
+    }
+
+    /**
+     * Number of captures waiting to be written
+     * @return Queued captures
+     */
+    public int getQueuedCount() {
+        return mQueue.size();
+    }
+
+    /**
+     * Stop accepting captures, write the ones already queued and stop the writer thread.
+     * @throws InterruptedException When interrupted while waiting for the writer
+     */
+    public void close() throws InterruptedException {
+        synchronized (this) {
+            if(mClosed) {
+                return;
+            }
+            mClosed = true;
+        }
+
+        //Interrupting would close the channels being written, so stop with a marker instead. It is
+        //queued outside the lock, waiting for room must not block save.
+        mQueue.put(STOP);
+        mWriterThread.join();
+    }
+
+    private synchronized boolean enqueue(Cam2LibFrame frame, File file, FileChannel channel, Listener listener) {
+
+        if(mClosed) {
+            return false;
+        }
+
+        if(frame.getFormat() != ImageFormat.JPEG) {
+            throw new IllegalArgumentException("Only JPEG frames can be saved");
+        }
+
+        //A duplicate shares the data, it only keeps the position of the image buffer untouched
+        frame.retain();
+        ByteBuffer jpeg = frame.getImage().getPlanes()[0].getBuffer().duplicate();
+        if(!mQueue.offer(new Job(frame, jpeg, frame.getTimestamp(), file, channel, listener))) {
+            frame.release();
+            return false;
+        }
+        return true;
+    }
+
+    private final Runnable mWriter = new Runnable() {
+        @Override
+        public void run() {
+
+            try {
+                writeQueued();
+            } finally {
+                //Also reached when the thread dies, no capture is accepted or kept waiting after that
+                synchronized (Cam2LibJpegWriter.this) {
+                    mClosed = true;
+                }
+                releaseQueued();
+            }
+        }
+    };
+
+    private void writeQueued() {
+
+        while (true) {
+
+            Job job;
+            try {
+                //Sync as soon as the queue runs dry, so a single capture is not left waiting
+                job = mUnsynced.isEmpty() ? mQueue.take() : mQueue.poll();
+            } catch (InterruptedException ex) {
+                job = STOP;
+            }
+
+            if(job == null) {
+                sync();
+                continue;
+            }
+
+            if(job == STOP) {
+                sync();
+                return;
+            }
+
+            write(job);
+            if(mUnsynced.size() >= mSyncBatch) {
+                sync();
+            }
+        }
+    }
+
+    private void releaseQueued() {
+
+        Job job;
+        while ((job = mQueue.poll()) != null) {
+            if(job.frame != null) {
+                job.frame.release();
+            }
+            if(job != STOP) {
+                notifyFailed(job, new IllegalStateException("Writer stopped before the capture was written"));
+            }
+        }
+
+        for (Job unsynced : mUnsynced) {
+            closeQuietly(unsynced);
+            notifyFailed(unsynced, new IllegalStateException("Writer stopped before the capture was synced"));
+        }
+        mUnsynced.clear();
+    }
+
+    private void write(Job job) {
+
+        try {
+            ByteBuffer buffer = job.jpeg;
+            job.bytes = buffer.remaining();
+
+            FileChannel channel = job.channel;
+            if(channel == null) {
+                job.stream = new FileOutputStream(job.file);
+                channel = job.stream.getChannel();
+                job.channel = channel;
+            }
+
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            mUnsynced.add(job);
+        } catch (IOException | RuntimeException ex) {
+            closeQuietly(job);
+            notifyFailed(job, ex);
+        } finally {
+            if(job.frame != null) {
+                job.frame.release();
+            }
+        }
+    }
+
+    private void sync() {
+
+        if(mUnsynced.isEmpty()) {
+            return;
+        }
+
+        //Captures appended to the same channel are synced once
+        List<FileChannel> synced = new ArrayList<>(mUnsynced.size());
+        for (Job job : mUnsynced) {
+
+            try {
+                if(!synced.contains(job.channel)) {
+                    job.channel.force(false);
+                    synced.add(job.channel);
+                }
+                if(job.stream != null) {
+                    job.stream.close();
+                }
+            } catch (IOException | RuntimeException ex) {
+                closeQuietly(job);
+                notifyFailed(job, ex);
+                continue;
+            }
+            notifySaved(job);
+        }
+        mUnsynced.clear();
+    }
+
+    private void notifySaved(Job job) {
+        if(job.listener == null) {
+            return;
+        }
+
+        //A listener which throws must not stop the writer thread, the other captures would never be written
+        try {
+            job.listener.onSaved(job.timestamp, job.bytes);
+        } catch (RuntimeException ex) {
+            debugLog("Listener failed for a saved capture, " + ex.getMessage(), ex);
+        }
+    }
+
+    private void notifyFailed(Job job, Throwable error) {
+        if(job.listener != null) {
+            try {
+                job.listener.onFailed(job.timestamp, error);
+            } catch (RuntimeException ex) {
+                debugLog("Listener failed for a failed capture, " + ex.getMessage(), ex);
+            }
+        }
+        debugLog("Could not save capture because, " + error.getMessage(), error);
+    }
+
+    private static void debugLog(String message, Throwable error) {
+        try {
+            Log.d(Cam2LibJpegWriter.class.getName(), message, error);
+        } catch (RuntimeException ignored) {
+            //Logging is not available off the device
+        }
+    }
+
+    private static void closeQuietly(Job job) {
+        if(job.stream == null) {
+            return;
+        }
+
+        try {
+            job.stream.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static final class Job {
+
+        final Cam2LibFrame frame;
+        final ByteBuffer jpeg;
+        final File file;
+        final Listener listener;
+        final long timestamp;
+
+        FileChannel channel;
+        FileOutputStream stream;
+        long bytes;
+
+        Job() {
+            this.frame = null;
+            this.jpeg = null;
+            this.file = null;
+            this.listener = null;
+            this.timestamp = 0;
+        }
+
+        Job(Cam2LibFrame frame, ByteBuffer jpeg, long timestamp, File file, FileChannel channel, Listener listener) {
+            this.frame = frame;
+            this.jpeg = jpeg;
+            this.file = file;
+            this.channel = channel;
+            this.listener = listener;
+            this.timestamp = timestamp;
+        }
+    }
+}
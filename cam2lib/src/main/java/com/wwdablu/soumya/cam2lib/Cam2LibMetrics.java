@@ -0,0 +1,340 @@
+package com.wwdablu.soumya.cam2lib;
+
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CaptureFailure;
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.CaptureResult;
+import android.hardware.camera2.TotalCaptureResult;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.support.annotation.NonNull;
+import android.view.Surface;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latencies and counters of the capture pipeline. Enabled using
+ * {@link Cam2Lib#enableMetrics(boolean, Listener, long)}, nothing is recorded otherwise.
+ */
+public final class Cam2LibMetrics {
+
+    public interface Listener {
+        void onMetrics(@NonNull Snapshot snapshot);
+    }
+
+    private static final int RING_SIZE = 16;
+
+    private final boolean mTraceSections;
+
+    private final LatencyHistogram mCaptureLatency = new LatencyHistogram();
+    private final LatencyHistogram mResultToImageLatency = new LatencyHistogram();
+    private final LatencyHistogram mImageCallbackDuration = new LatencyHistogram();
+    private final LatencyHistogram mFrameCallbackDuration = new LatencyHistogram();
+    private final LatencyHistogram mPreviewInterval = new LatencyHistogram();
+
+    private final AtomicLong mFailedCaptures = new AtomicLong();
+    private final AtomicLong mLostBuffers = new AtomicLong();
+    private final AtomicLong mDroppedFrames = new AtomicLong();
+    private final AtomicLong mHeldLimitReached = new AtomicLong();
+
+    private volatile long mLastPreviewTimestamp;
+
+    //Submitted sequences and completed results, used to match the stages of a still capture
+    private final int[] mSubmittedSequences = new int[RING_SIZE];
+    private final long[] mSubmittedAt = new long[RING_SIZE];
+    private int mSubmittedNext;
+    private final long[] mResultTimestamps = new long[RING_SIZE];
+    private final long[] mResultsAt = new long[RING_SIZE];
+    private int mResultNext;
+
+    Cam2LibMetrics(boolean traceSections) {
+        this.mTraceSections = traceSections;
+    }
+
+    /**
+     * Take a snapshot of the metrics recorded so far
+     * @return Snapshot
+     */
+    @NonNull
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    /**
+     * Clear everything recorded so far
+     */
+    public void reset() {
+        mCaptureLatency.reset();
+        mResultToImageLatency.reset();
+        mImageCallbackDuration.reset();
+        mFrameCallbackDuration.reset();
+        mPreviewInterval.reset();
+        mFailedCaptures.set(0);
+        mLostBuffers.set(0);
+        mDroppedFrames.set(0);
+        mHeldLimitReached.set(0);
+        mLastPreviewTimestamp = 0;
+    }
+
+    static long now() {
+        return SystemClock.elapsedRealtimeNanos();
+    }
+
+    void beginSection(String name) {
+        if(mTraceSections) {
+            Trace.beginSection(name);
+        }
+    }
+
+    void endSection() {
+        if(mTraceSections) {
+            Trace.endSection();
+        }
+    }
+
+    synchronized void onCaptureSubmitted(int sequenceId, long submittedAt) {
+        mSubmittedSequences[mSubmittedNext] = sequenceId;
+        mSubmittedAt[mSubmittedNext] = submittedAt;
+        mSubmittedNext = (mSubmittedNext + 1) % RING_SIZE;
+    }
+
+    synchronized void onCaptureCompleted(@NonNull TotalCaptureResult result) {
+
+        long completedAt = now();
+        for (int index = 0; index < RING_SIZE; index++) {
+            if(mSubmittedAt[index] != 0 && mSubmittedSequences[index] == result.getSequenceId()) {
+                mCaptureLatency.recordNanos(completedAt - mSubmittedAt[index]);
+                mSubmittedAt[index] = 0;
+                break;
+            }
+        }
+
+        Long timestamp = result.get(CaptureResult.SENSOR_TIMESTAMP);
+        if(timestamp != null) {
+            mResultTimestamps[mResultNext] = timestamp;
+            mResultsAt[mResultNext] = completedAt;
+            mResultNext = (mResultNext + 1) % RING_SIZE;
+        }
+    }
+
+    synchronized void onImageAvailable(long timestamp) {
+
+        long availableAt = now();
+        for (int index = 0; index < RING_SIZE; index++) {
+            if(mResultsAt[index] != 0 && mResultTimestamps[index] == timestamp) {
+                mResultToImageLatency.recordNanos(availableAt - mResultsAt[index]);
+                mResultsAt[index] = 0;
+                break;
+            }
+        }
+    }
+
+    void onImageCallback(long startedAt) {
+        mImageCallbackDuration.recordNanos(now() - startedAt);
+    }
+
+    void onFrameCallback(long startedAt) {
+        mFrameCallbackDuration.recordNanos(now() - startedAt);
+    }
+
+    void onFrameDropped() {
+        mDroppedFrames.incrementAndGet();
+    }
+
+    void onHeldLimitReached() {
+        mHeldLimitReached.incrementAndGet();
+    }
+
+    void onPreviewCompleted(@NonNull TotalCaptureResult result) {
+
+        Long timestamp = result.get(CaptureResult.SENSOR_TIMESTAMP);
+        if(timestamp == null) {
+            return;
+        }
+
+        long last = mLastPreviewTimestamp;
+        mLastPreviewTimestamp = timestamp;
+        if(last != 0 && timestamp > last) {
+            mPreviewInterval.recordNanos(timestamp - last);
+        }
+    }
+
+    void onCaptureFailed() {
+        mFailedCaptures.incrementAndGet();
+    }
+
+    void onBufferLost() {
+        mLostBuffers.incrementAndGet();
+    }
+
+    /**
+     * Capture callback which only records into the metrics, used for the still captures
+     */
+    final CameraCaptureSession.CaptureCallback mStillCaptureCallback = new CameraCaptureSession.CaptureCallback() {
+        @Override
+        public void onCaptureCompleted(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request,
+                                       @NonNull TotalCaptureResult result) {
+            Cam2LibMetrics.this.onCaptureCompleted(result);
+        }
+
+        @Override
+        public void onCaptureFailed(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request,
+                                    @NonNull CaptureFailure failure) {
+            Cam2LibMetrics.this.onCaptureFailed();
+        }
+
+        @Override
+        public void onCaptureBufferLost(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request,
+                                        @NonNull Surface target, long frameNumber) {
+            Cam2LibMetrics.this.onBufferLost();
+        }
+    };
+
+    /**
+     * Percentiles of a latency in milliseconds
+     */
+    public static final class Latency {
+
+        private final long mCount;
+        private final double mP50, mP90, mP99, mMax;
+
+        Latency(LatencyHistogram histogram) {
+            this.mCount = histogram.getCount();
+            this.mP50 = histogram.getPercentileMicros(50) / 1000d;
+            this.mP90 = histogram.getPercentileMicros(90) / 1000d;
+            this.mP99 = histogram.getPercentileMicros(99) / 1000d;
+            this.mMax = histogram.getMaxMicros() / 1000d;
+        }
+
+        public long getCount() {
+            return mCount;
+        }
+
+        public double getP50Ms() {
+            return mP50;
+        }
+
+        public double getP90Ms() {
+            return mP90;
+        }
+
+        public double getP99Ms() {
+            return mP99;
+        }
+
+        public double getMaxMs() {
+            return mMax;
+        }
+
+        @Override
+        public String toString() {
+            return "n=" + mCount + " p50=" + mP50 + "ms p90=" + mP90 + "ms p99=" + mP99 + "ms max=" + mMax + "ms";
+        }
+    }
+
+    /**
+     * Metrics at the time the snapshot was taken
+     */
+    public static final class Snapshot {
+
+        private final Latency mCaptureLatency;
+        private final Latency mResultToImageLatency;
+        private final Latency mImageCallbackDuration;
+        private final Latency mFrameCallbackDuration;
+        private final double mPreviewFps;
+        private final double mPreviewJitterMs;
+        private final long mFailedCaptures;
+        private final long mLostBuffers;
+        private final long mDroppedFrames;
+        private final long mHeldLimitReached;
+
+        Snapshot(Cam2LibMetrics metrics) {
+            this.mCaptureLatency = new Latency(metrics.mCaptureLatency);
+            this.mResultToImageLatency = new Latency(metrics.mResultToImageLatency);
+            this.mImageCallbackDuration = new Latency(metrics.mImageCallbackDuration);
+            this.mFrameCallbackDuration = new Latency(metrics.mFrameCallbackDuration);
+
+            double meanInterval = metrics.mPreviewInterval.getMeanMicros();
+            this.mPreviewFps = meanInterval == 0 ? 0 : 1_000_000d / meanInterval;
+            this.mPreviewJitterMs = metrics.mPreviewInterval.getStdDevMicros() / 1000d;
+
+            this.mFailedCaptures = metrics.mFailedCaptures.get();
+            this.mLostBuffers = metrics.mLostBuffers.get();
+            this.mDroppedFrames = metrics.mDroppedFrames.get();
+            this.mHeldLimitReached = metrics.mHeldLimitReached.get();
+        }
+
+        /**
+         * @return Time from submitting a still capture until its result is completed
+         */
+        public Latency getCaptureLatency() {
+            return mCaptureLatency;
+        }
+
+        /**
+         * @return Time from the result of a still capture until its image is available
+         */
+        public Latency getResultToImageLatency() {
+            return mResultToImageLatency;
+        }
+
+        /**
+         * @return Time spent in the image callbacks
+         */
+        public Latency getImageCallbackDuration() {
+            return mImageCallbackDuration;
+        }
+
+        /**
+         * @return Time spent in the frame streaming callback
+         */
+        public Latency getFrameCallbackDuration() {
+            return mFrameCallbackDuration;
+        }
+
+        /**
+         * @return Preview frames per second as per the sensor timestamps
+         */
+        public double getPreviewFps() {
+            return mPreviewFps;
+        }
+
+        /**
+         * @return Standard deviation of the preview frame interval
+         */
+        public double getPreviewJitterMs() {
+            return mPreviewJitterMs;
+        }
+
+        public long getFailedCaptures() {
+            return mFailedCaptures;
+        }
+
+        public long getLostBuffers() {
+            return mLostBuffers;
+        }
+
+        /**
+         * @return Streamed frames dropped because the consumer could not keep up
+         */
+        public long getDroppedFrames() {
+            return mDroppedFrames;
+        }
+
+        /**
+         * @return Times frames were left with the camera because all the images of a reader were
+         * retained by the consumer
+         */
+        public long getHeldLimitReached() {
+            return mHeldLimitReached;
+        }
+
+        @Override
+        public String toString() {
+            return "capture[" + mCaptureLatency + "], resultToImage[" + mResultToImageLatency +
+                    "], imageCallback[" + mImageCallbackDuration + "], frameCallback[" + mFrameCallbackDuration +
+                    "], previewFps=" + mPreviewFps + ", jitter=" + mPreviewJitterMs + "ms, failed=" +
+                    mFailedCaptures + ", lost=" + mLostBuffers + ", dropped=" + mDroppedFrames + ", heldLimit=" + mHeldLimitReached;
+        }
+    }
+}
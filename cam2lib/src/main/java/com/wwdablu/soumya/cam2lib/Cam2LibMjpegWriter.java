@@ -0,0 +1,424 @@
+package com.wwdablu.soumya.cam2lib;
+
+import android.support.annotation.NonNull;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Appends JPEG images as the frames of a Motion-JPEG AVI file. The encoded bytes are written
+ * straight from the buffer given, nothing is decoded or encoded again. The index of the frames
+ * is appended to a file next to the video instead of being held in memory, and moved to the end
+ * of the video when it is closed, so that long recordings run in constant memory. The headers
+ * are updated every few frames, and a file left behind by an interrupted recording can be
+ * completed using {@link #recover(File)}.
+ * <p>
+ * The writer is not thread safe, all the calls need to come from one thread at a time.
+ */
+public final class Cam2LibMjpegWriter implements Closeable {
+
+    private static final int DEFAULT_HEADER_INTERVAL = 16;
+
+    //The largest size the 32 bit RIFF fields can describe
+    private static final long MAX_RIFF_SIZE = 0xFFFFFFFFL;
+
+    private static final int AVIF_HASINDEX = 0x10;
+    private static final int AVIIF_KEYFRAME = 0x10;
+
+    private static final int RIFF_SIZE = 4;
+    private static final int AVIH_MICROS_PER_FRAME = 32;
+    private static final int AVIH_MAX_BYTES_PER_SEC = 36;
+    private static final int AVIH_FLAGS = 44;
+    private static final int AVIH_TOTAL_FRAMES = 48;
+    private static final int AVIH_SUGGESTED_BUFFER = 60;
+    private static final int STRH = 100;
+    private static final int STRH_LENGTH = 140;
+    private static final int STRH_SUGGESTED_BUFFER = 144;
+    private static final int MOVI_SIZE = 216;
+    //Index offsets are relative to the 'movi' type of the list
+    private static final int MOVI = 220;
+    private static final int HEADER_SIZE = 224;
+
+    private static final int CHUNK_HEADER_SIZE = 8;
+    private static final int INDEX_ENTRY_SIZE = 16;
+    private static final int INDEX_BUFFER_ENTRIES = 64;
+
+    private final File mFile;
+    private final File mIndexFile;
+    private final RandomAccessFile mRandomAccessFile;
+    private final FileChannel mChannel;
+    private final RandomAccessFile mIndexRandomAccessFile;
+    private final FileChannel mIndexChannel;
+    private final int mHeaderInterval;
+
+    private final ByteBuffer mChunkHeader = ByteBuffer.allocate(CHUNK_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private final ByteBuffer mPadding = ByteBuffer.allocate(1);
+    private final ByteBuffer[] mChunk = new ByteBuffer[3];
+    private final ByteBuffer mIndex = ByteBuffer.allocate(INDEX_ENTRY_SIZE * INDEX_BUFFER_ENTRIES)
+            .order(ByteOrder.LITTLE_ENDIAN);
+    private final ByteBuffer mField = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+
+    private long mMoviEnd;
+    private int mFrameCount;
+    private int mLargestFrame;
+    private boolean mClosed;
+
+    /**
+     * Create a new video, replacing the file if it exists
+     * @param file File to write to, the index is kept in a file of the same name ending with
+     *             .idx until the video is closed
+     * @param width Width of the frames
+     * @param height Height of the frames
+     * @param framesPerSecond Rate at which the frames are played back
+     * @return Writer
+     * @throws IOException When the file could not be created
+     */
+    @NonNull
+    public static Cam2LibMjpegWriter create(@NonNull File file, int width, int height,
+                                            int framesPerSecond) throws IOException {
+        return create(file, width, height, framesPerSecond, DEFAULT_HEADER_INTERVAL);
+    }
+
+    /**
+     * Create a new video, replacing the file if it exists
+     * @param file File to write to
+     * @param width Width of the frames
+     * @param height Height of the frames
+     * @param framesPerSecond Rate at which the frames are played back
+     * @param headerInterval Number of frames after which the headers are updated and the file
+     *                       synced, which bounds the frames lost when the recording is interrupted
+     * @return Writer
+     * @throws IOException When the file could not be created
+     */
+    @NonNull
+    public static Cam2LibMjpegWriter create(@NonNull File file, int width, int height, int framesPerSecond,
+                                            int headerInterval) throws IOException {
+
+        Cam2LibMjpegWriter writer = new Cam2LibMjpegWriter(file, headerInterval);
+        try {
+            writer.mChannel.truncate(0);
+            writer.mIndexChannel.truncate(0);
+            writeFully(writer.mChannel, header(width, height, Math.max(1, framesPerSecond)), 0);
+            writer.mMoviEnd = HEADER_SIZE;
+            writer.mChannel.force(true);
+        } catch (IOException ex) {
+            writer.closeFiles();
+            throw ex;
+        }
+        return writer;
+    }
+
+    /**
+     * Complete a video which was not closed, like when the app was stopped during a recording.
+     * The frames are found by walking the file, a frame which was only partly written is dropped
+     * along with anything after it, and the index is built again.
+     * @param file Video written by this class
+     * @return Number of frames in the video
+     * @throws IOException When the file could not be read or is not a video written by this class
+     */
+    public static int recover(@NonNull File file) throws IOException {
+
+        Cam2LibMjpegWriter writer = new Cam2LibMjpegWriter(file, DEFAULT_HEADER_INTERVAL);
+        try {
+            writer.scan();
+        } catch (IOException ex) {
+            writer.closeFiles();
+            throw ex;
+        }
+
+        writer.close();
+        return writer.mFrameCount;
+    }
+
+    private Cam2LibMjpegWriter(File file, int headerInterval) throws IOException {
+
+        this.mFile = file;
+        this.mIndexFile = new File(file.getPath() + ".idx");
+        this.mHeaderInterval = Math.max(1, headerInterval);
+        this.mChunk[0] = mChunkHeader;
+
+        this.mRandomAccessFile = new RandomAccessFile(file, "rw");
+        this.mChannel = mRandomAccessFile.getChannel();
+        try {
+            this.mIndexRandomAccessFile = new RandomAccessFile(mIndexFile, "rw");
+        } catch (IOException ex) {
+            mRandomAccessFile.close();
+            throw ex;
+        }
+        this.mIndexChannel = mIndexRandomAccessFile.getChannel();
+    }
+
+    /**
+     * Append a frame. The buffer is read from its position to its limit, which are left
+     * unchanged.
+     * @param jpeg Encoded image, like the plane of a JPEG {@link android.media.Image}
+     * @throws IOException When the frame could not be written, or the file would grow larger
+     *                     than an AVI can describe, in which case a new file is to be started
+     */
+    public void append(@NonNull ByteBuffer jpeg) throws IOException {
+
+        if(mClosed) {
+            throw new IOException("Writer is closed");
+        }
+
+        int size = jpeg.remaining();
+        int padded = size + (size & 1);
+        long indexSize = CHUNK_HEADER_SIZE + (long) (mFrameCount + 1) * INDEX_ENTRY_SIZE;
+        if(mMoviEnd + CHUNK_HEADER_SIZE + padded + indexSize - 8 > MAX_RIFF_SIZE) {
+            throw new IOException("Video is full, frame of " + size + " bytes does not fit");
+        }
+
+        mChunkHeader.clear();
+        mChunkHeader.putInt(fourCc("00dc")).putInt(size).flip();
+        mChunk[1] = jpeg.duplicate();
+        mPadding.clear().limit(padded - size);
+        mChunk[2] = mPadding;
+
+        //A failed write leaves the end where it was, the next frame overwrites the partial one
+        mChannel.position(mMoviEnd);
+        while (mChunkHeader.hasRemaining() || mChunk[1].hasRemaining() || mPadding.hasRemaining()) {
+            mChannel.write(mChunk);
+        }
+        mChunk[1] = null;
+
+        addIndexEntry(mMoviEnd - MOVI, size);
+        mMoviEnd += CHUNK_HEADER_SIZE + padded;
+        mLargestFrame = Math.max(mLargestFrame, size);
+        mFrameCount++;
+
+        if(mFrameCount % mHeaderInterval == 0) {
+            sync();
+        }
+    }
+
+    /**
+     * Number of frames written
+     */
+    public int getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * Size of the video so far, not counting the index added when closed
+     */
+    public long getSize() {
+        return mMoviEnd;
+    }
+
+    /**
+     * Update the headers and sync the frames written so far to the storage
+     * @throws IOException When the file could not be written
+     */
+    public void sync() throws IOException {
+        flushIndex();
+        writeCounts(false);
+        mChannel.force(false);
+    }
+
+    /**
+     * Add the index to the end of the video, update the headers and close the file. The index
+     * file is removed.
+     * @throws IOException When the video could not be completed, it can be retried using
+     *                     {@link #recover(File)}
+     */
+    @Override
+    public void close() throws IOException {
+
+        if(mClosed) {
+            return;
+        }
+        mClosed = true;
+
+        try {
+            flushIndex();
+
+            long indexSize = (long) mFrameCount * INDEX_ENTRY_SIZE;
+            mChunkHeader.clear();
+            mChunkHeader.putInt(fourCc("idx1")).putInt((int) indexSize).flip();
+            writeFully(mChannel, mChunkHeader, mMoviEnd);
+
+            //Copied by the channels, the index is never held in memory
+            long copied = 0;
+            while (copied < indexSize) {
+                mChannel.position(mMoviEnd + CHUNK_HEADER_SIZE + copied);
+                long count = mIndexChannel.transferTo(copied, indexSize - copied, mChannel);
+                if(count <= 0) {
+                    throw new IOException("Index is shorter than the " + mFrameCount + " frames written");
+                }
+                copied += count;
+            }
+
+            mChannel.truncate(mMoviEnd + CHUNK_HEADER_SIZE + indexSize);
+            writeCounts(true);
+            mChannel.force(true);
+        } finally {
+            closeFiles();
+        }
+
+        //Only once the video is complete, so that a failure can still be recovered
+        mIndexFile.delete();
+    }
+
+    /**
+     * Walk the frames of an existing video to find where the last complete one ends
+     */
+    private void scan() throws IOException {
+
+        long length = mChannel.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        if(length < HEADER_SIZE || readFully(mChannel, header, 0) < HEADER_SIZE
+                || header.getInt(0) != fourCc("RIFF") || header.getInt(8) != fourCc("AVI ")
+                || header.getInt(STRH + 12) != fourCc("MJPG") || header.getInt(MOVI) != fourCc("movi")) {
+            throw new IOException(mFile + " is not a video written by " + Cam2LibMjpegWriter.class.getSimpleName());
+        }
+
+        mIndexChannel.truncate(0);
+        long position = HEADER_SIZE;
+        while (position + CHUNK_HEADER_SIZE <= length) {
+
+            mChunkHeader.clear();
+            if(readFully(mChannel, mChunkHeader, position) < CHUNK_HEADER_SIZE
+                    || mChunkHeader.getInt(0) != fourCc("00dc")) {
+                break;
+            }
+
+            long size = mChunkHeader.getInt(4) & 0xFFFFFFFFL;
+            long padded = size + (size & 1);
+            if(position + CHUNK_HEADER_SIZE + padded > length) {
+                break;
+            }
+
+            addIndexEntry(position - MOVI, (int) size);
+            mLargestFrame = (int) Math.max(mLargestFrame, size);
+            mFrameCount++;
+            position += CHUNK_HEADER_SIZE + padded;
+        }
+        mMoviEnd = position;
+    }
+
+    private void addIndexEntry(long offset, int size) throws IOException {
+
+        if(!mIndex.hasRemaining()) {
+            flushIndex();
+        }
+        mIndex.putInt(fourCc("00dc")).putInt(AVIIF_KEYFRAME).putInt((int) offset).putInt(size);
+    }
+
+    private void flushIndex() throws IOException {
+
+        mIndex.flip();
+        long position = (long) (mFrameCount - mIndex.remaining() / INDEX_ENTRY_SIZE) * INDEX_ENTRY_SIZE;
+        writeFully(mIndexChannel, mIndex, position);
+        mIndex.clear();
+    }
+
+    private void writeCounts(boolean indexed) throws IOException {
+
+        long indexSize = indexed ? CHUNK_HEADER_SIZE + (long) mFrameCount * INDEX_ENTRY_SIZE : 0;
+        writeField(RIFF_SIZE, (int) (mMoviEnd + indexSize - 8));
+        writeField(MOVI_SIZE, (int) (mMoviEnd - MOVI));
+        writeField(AVIH_TOTAL_FRAMES, mFrameCount);
+        writeField(STRH_LENGTH, mFrameCount);
+        writeField(AVIH_SUGGESTED_BUFFER, mLargestFrame + CHUNK_HEADER_SIZE);
+        writeField(STRH_SUGGESTED_BUFFER, mLargestFrame + CHUNK_HEADER_SIZE);
+        writeField(AVIH_FLAGS, indexed ? AVIF_HASINDEX : 0);
+
+        mField.clear();
+        readFully(mChannel, mField, AVIH_MICROS_PER_FRAME);
+        long micros = mField.getInt(0) & 0xFFFFFFFFL;
+        writeField(AVIH_MAX_BYTES_PER_SEC, micros == 0 ? 0 :
+                (int) Math.min(Integer.MAX_VALUE, (mLargestFrame + CHUNK_HEADER_SIZE) * 1000000L / micros));
+    }
+
+    private void writeField(int position, int value) throws IOException {
+        mField.clear();
+        mField.putInt(value).flip();
+        writeFully(mChannel, mField, position);
+    }
+
+    private void closeFiles() throws IOException {
+        try {
+            mRandomAccessFile.close();
+        } finally {
+            mIndexRandomAccessFile.close();
+        }
+    }
+
+    /**
+     * RIFF header followed by the header list of a single MJPEG stream, and the start of the
+     * list holding the frames
+     */
+    private static ByteBuffer header(int width, int height, int framesPerSecond) {
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(fourCc("RIFF")).putInt(HEADER_SIZE - 8).putInt(fourCc("AVI "));
+        header.putInt(fourCc("LIST")).putInt(4 + 64 + 8 + 4 + 64 + 48).putInt(fourCc("hdrl"));
+
+        header.putInt(fourCc("avih")).putInt(56);
+        header.putInt(1000000 / framesPerSecond);
+        header.putInt(0);                       //Max bytes per second
+        header.putInt(0);                       //Padding granularity
+        header.putInt(0);                       //Flags
+        header.putInt(0);                       //Total frames
+        header.putInt(0);                       //Initial frames
+        header.putInt(1);                       //Streams
+        header.putInt(0);                       //Suggested buffer size
+        header.putInt(width).putInt(height);
+        header.put(new byte[16]);
+
+        header.putInt(fourCc("LIST")).putInt(4 + 64 + 48).putInt(fourCc("strl"));
+        header.putInt(fourCc("strh")).putInt(56);
+        header.putInt(fourCc("vids")).putInt(fourCc("MJPG"));
+        header.putInt(0);                       //Flags
+        header.putShort((short) 0).putShort((short) 0);
+        header.putInt(0);                       //Initial frames
+        header.putInt(1).putInt(framesPerSecond);
+        header.putInt(0);                       //Start
+        header.putInt(0);                       //Length
+        header.putInt(0);                       //Suggested buffer size
+        header.putInt(-1);                      //Quality
+        header.putInt(0);                       //Sample size
+        header.putShort((short) 0).putShort((short) 0).putShort((short) width).putShort((short) height);
+
+        header.putInt(fourCc("strf")).putInt(40);
+        header.putInt(40).putInt(width).putInt(height);
+        header.putShort((short) 1).putShort((short) 24);
+        header.putInt(fourCc("MJPG"));
+        header.putInt(width * height * 3);
+        header.putInt(0).putInt(0).putInt(0).putInt(0);
+
+        header.putInt(fourCc("LIST")).putInt(4).putInt(fourCc("movi"));
+        header.flip();
+        return header;
+    }
+
+    /**
+     * Four character code as read by a little endian buffer
+     */
+    private static int fourCc(String code) {
+        return code.charAt(0) | code.charAt(1) << 8 | code.charAt(2) << 16 | code.charAt(3) << 24;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static int readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + total);
+            if(read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+}
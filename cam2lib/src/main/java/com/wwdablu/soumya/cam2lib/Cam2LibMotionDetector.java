@@ -0,0 +1,344 @@
+package com.wwdablu.soumya.cam2lib;
+
+import android.graphics.ImageFormat;
+import android.media.Image;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Detects motion in streamed YUV_420_888 frames using only the luma plane. Every frame is
+ * compared against a background which slowly follows the scene, on a grid of sampled pixels. A
+ * block of the grid moves when enough of its samples differ from the background, and a scene
+ * change is reported when most of the blocks do at once, after which the background is relearnt.
+ * The analysis does not allocate, only the events do, at most once per throttle interval.
+ * <p>
+ * Pass it to {@link Cam2Lib#enableFrameStreaming(int, int, int, Cam2Lib.Backpressure, Cam2LibFrameCallback)}
+ * with a low resolution, like 320x240.
+ */
+public final class Cam2LibMotionDetector implements Cam2LibFrameCallback {
+
+    /**
+     * Called on the thread delivering the frames
+     */
+    public interface Listener {
+        void onMotion(@NonNull Event event);
+    }
+
+    /**
+     * Motion found in a frame
+     */
+    public static final class Event {
+
+        private final long mTimestamp;
+        private final float mScore;
+        private final boolean mSceneChange;
+        private final int mColumns;
+        private final int mRows;
+        private final boolean[] mMoving;
+        private final int mLeft, mTop, mRight, mBottom;
+
+        Event(long timestamp, float score, boolean sceneChange, int columns, int rows, boolean[] moving,
+              int left, int top, int right, int bottom) {
+            this.mTimestamp = timestamp;
+            this.mScore = score;
+            this.mSceneChange = sceneChange;
+            this.mColumns = columns;
+            this.mRows = rows;
+            this.mMoving = moving;
+            this.mLeft = left;
+            this.mTop = top;
+            this.mRight = right;
+            this.mBottom = bottom;
+        }
+
+        /**
+         * Timestamp of the frame, as per {@link Image#getTimestamp()}
+         */
+        public long getTimestamp() {
+            return mTimestamp;
+        }
+
+        /**
+         * Fraction of the blocks which moved, from 0 to 1
+         */
+        public float getScore() {
+            return mScore;
+        }
+
+        /**
+         * Whether most of the frame changed at once, like a cut, a light switched on or the
+         * camera being moved
+         */
+        public boolean isSceneChange() {
+            return mSceneChange;
+        }
+
+        public int getBlockColumns() {
+            return mColumns;
+        }
+
+        public int getBlockRows() {
+            return mRows;
+        }
+
+        public boolean isBlockMoving(int column, int row) {
+            return mMoving[row * mColumns + column];
+        }
+
+        /**
+         * Left edge of the area covering the moving blocks, in pixels of the frame
+         */
+        public int getLeft() {
+            return mLeft;
+        }
+
+        public int getTop() {
+            return mTop;
+        }
+
+        /**
+         * Right edge of the area covering the moving blocks, exclusive
+         */
+        public int getRight() {
+            return mRight;
+        }
+
+        /**
+         * Bottom edge of the area covering the moving blocks, exclusive
+         */
+        public int getBottom() {
+            return mBottom;
+        }
+    }
+
+    private static final int DEFAULT_BLOCK_SIZE = 16;
+    private static final int DEFAULT_SAMPLE_STEP = 2;
+    private static final int DEFAULT_PIXEL_THRESHOLD = 24;
+    private static final float DEFAULT_BLOCK_FRACTION = 0.25f;
+    private static final float DEFAULT_SCENE_CHANGE_FRACTION = 0.7f;
+    private static final long DEFAULT_EVENT_INTERVAL_MS = 500;
+
+    //Background in fixed point with 4 fractional bits, it moves by 1/32 of the difference per frame
+    private static final int BACKGROUND_SHIFT = 4;
+    private static final int LEARNING_SHIFT = 5;
+    //Samples of moving blocks are learnt 4 times slower so that a moving object is not absorbed
+    private static final int MOVING_LEARNING_SHIFT = LEARNING_SHIFT + 2;
+
+    private final Listener mListener;
+    private final int mBlockSize;
+    private final int mSampleStep;
+
+    private volatile int mPixelThreshold = DEFAULT_PIXEL_THRESHOLD;
+    private volatile float mBlockFraction = DEFAULT_BLOCK_FRACTION;
+    private volatile float mSceneChangeFraction = DEFAULT_SCENE_CHANGE_FRACTION;
+    private volatile long mEventIntervalNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_EVENT_INTERVAL_MS);
+    private volatile Cam2Lib mAutoCapture;
+
+    private int mWidth;
+    private int mHeight;
+    private int mColumns;
+    private int mRows;
+    private int[] mBackground;
+    private int[] mChanged;
+    private int[] mSamples;
+    private boolean[] mMoving;
+    private boolean mLearnt;
+    private long mLastEventTimestamp;
+    private boolean mEventEmitted;
+
+    public Cam2LibMotionDetector(@NonNull Listener listener) {
+        this(listener, DEFAULT_BLOCK_SIZE, DEFAULT_SAMPLE_STEP);
+    }
+
+    /**
+     * @param listener Receives the motion events
+     * @param blockSize Size of the blocks in pixels of the frame
+     * @param sampleStep Distance between the sampled pixels, 1 to use every pixel
+     */
+    public Cam2LibMotionDetector(@NonNull Listener listener, int blockSize, int sampleStep) {
+        this.mListener = listener;
+        this.mSampleStep = Math.max(1, sampleStep);
+        this.mBlockSize = Math.max(mSampleStep, blockSize);
+    }
+
+    /**
+     * Difference of luma from the background above which a sample has changed. The default is 24.
+     */
+    public void setPixelThreshold(int threshold) {
+        mPixelThreshold = threshold;
+    }
+
+    /**
+     * Fraction of the samples of a block which need to change for the block to move. The
+     * default is 0.25.
+     */
+    public void setBlockFraction(float fraction) {
+        mBlockFraction = fraction;
+    }
+
+    /**
+     * Fraction of the blocks which need to move at once for a scene change. The default is 0.7.
+     */
+    public void setSceneChangeFraction(float fraction) {
+        mSceneChangeFraction = fraction;
+    }
+
+    /**
+     * Minimum time between two events, motion in between is not reported. The default is 500ms.
+     */
+    public void setEventInterval(long intervalMs) {
+        mEventIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, intervalMs));
+    }
+
+    /**
+     * Capture a still image with every event, using {@link Cam2Lib#captureZeroShutterLag()} so
+     * that the frame closest to the motion is used when zero shutter lag is enabled.
+     * @param cam2Lib Camera to capture with, null to stop capturing
+     */
+    public void setAutoCapture(@Nullable Cam2Lib cam2Lib) {
+        mAutoCapture = cam2Lib;
+    }
+
+    /**
+     * Forget the background, it is learnt again from the next frame
+     */
+    public synchronized void reset() {
+        mLearnt = false;
+        mEventEmitted = false;
+    }
+
+    @Override
+    public void onFrame(Image image) {
+
+        if(image.getFormat() != ImageFormat.YUV_420_888) {
+            throw new IllegalArgumentException("Expected YUV_420_888 image but got format " + image.getFormat());
+        }
+
+        Image.Plane luma = image.getPlanes()[0];
+        Event event = analyse(luma.getBuffer(), luma.getRowStride(), luma.getPixelStride(),
+                image.getWidth(), image.getHeight(), image.getTimestamp());
+
+        if(event != null) {
+            mListener.onMotion(event);
+
+            Cam2Lib cam2Lib = mAutoCapture;
+            if(cam2Lib != null) {
+                cam2Lib.captureZeroShutterLag();
+            }
+        }
+    }
+
+    /**
+     * Analyse the luma plane of a frame
+     * @return Event if there was motion and the throttle allows one, else null
+     */
+    synchronized Event analyse(@NonNull ByteBuffer luma, int rowStride, int pixelStride, int width, int height,
+                               long timestamp) {
+
+        prepare(width, height);
+
+        int step = mSampleStep;
+        int blockSize = mBlockSize;
+        int columns = mColumns;
+        int threshold = mPixelThreshold;
+        int[] background = mBackground;
+        int[] changed = mChanged;
+        boolean[] moving = mMoving;
+        boolean learnt = mLearnt;
+
+        Arrays.fill(changed, 0);
+
+        //Samples of the blocks which moved in the last frame adapt slower
+        int sample = 0;
+        for (int y = 0; y < height; y += step) {
+            int rowStart = y * rowStride;
+            int blockRow = (y / blockSize) * columns;
+            for (int x = 0; x < width; x += step, sample++) {
+
+                int value = (luma.get(rowStart + x * pixelStride) & 0xFF) << BACKGROUND_SHIFT;
+                if(!learnt) {
+                    background[sample] = value;
+                    continue;
+                }
+
+                int block = blockRow + x / blockSize;
+                int difference = value - background[sample];
+                if(difference > (threshold << BACKGROUND_SHIFT) || difference < -(threshold << BACKGROUND_SHIFT)) {
+                    changed[block]++;
+                }
+                background[sample] += difference >> (moving[block] ? MOVING_LEARNING_SHIFT : LEARNING_SHIFT);
+            }
+        }
+
+        if(!learnt) {
+            mLearnt = true;
+            return null;
+        }
+
+        int movingBlocks = 0;
+        int left = Integer.MAX_VALUE, top = Integer.MAX_VALUE, right = 0, bottom = 0;
+        for (int block = 0; block < changed.length; block++) {
+
+            moving[block] = changed[block] > 0 && changed[block] >= mBlockFraction * mSamples[block];
+            if(!moving[block]) {
+                continue;
+            }
+
+            movingBlocks++;
+            int column = block % columns;
+            int row = block / columns;
+            left = Math.min(left, column * blockSize);
+            top = Math.min(top, row * blockSize);
+            right = Math.max(right, Math.min(width, (column + 1) * blockSize));
+            bottom = Math.max(bottom, Math.min(height, (row + 1) * blockSize));
+        }
+
+        if(movingBlocks == 0) {
+            return null;
+        }
+
+        float score = (float) movingBlocks / changed.length;
+        boolean sceneChange = score >= mSceneChangeFraction;
+        Event event = null;
+
+        if(!mEventEmitted || timestamp - mLastEventTimestamp >= mEventIntervalNanos) {
+            mEventEmitted = true;
+            mLastEventTimestamp = timestamp;
+            event = new Event(timestamp, score, sceneChange, columns, mRows, moving.clone(), left, top, right, bottom);
+        }
+
+        if(sceneChange) {
+            //The old background no longer applies, take the current frame as the new one
+            mLearnt = false;
+        }
+        return event;
+    }
+
+    private void prepare(int width, int height) {
+
+        if(width == mWidth && height == mHeight && mBackground != null) {
+            return;
+        }
+
+        mWidth = width;
+        mHeight = height;
+        mColumns = (width + mBlockSize - 1) / mBlockSize;
+        mRows = (height + mBlockSize - 1) / mBlockSize;
+        mBackground = new int[((width + mSampleStep - 1) / mSampleStep) * ((height + mSampleStep - 1) / mSampleStep)];
+        mChanged = new int[mColumns * mRows];
+        mMoving = new boolean[mColumns * mRows];
+        mLearnt = false;
+
+        //Edge blocks can hold fewer samples than the others
+        mSamples = new int[mColumns * mRows];
+        for (int y = 0; y < height; y += mSampleStep) {
+            for (int x = 0; x < width; x += mSampleStep) {
+                mSamples[(y / mBlockSize) * mColumns + x / mBlockSize]++;
+            }
+        }
+    }
+}
@@ -0,0 +1,448 @@
+package com.wwdablu.soumya.cam2lib;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraDevice;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.params.OutputConfiguration;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.content.ContextCompat;
+import android.view.Surface;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Opens several cameras at the same time, for example the front and the back camera or two back
+ * cameras. The callbacks of all the devices run on a shared, bounded set of threads instead of a
+ * thread per device. Whether cameras can be open together depends on the hardware, a camera
+ * which cannot be opened is reported through {@link Callback#onError(String, Throwable)}.
+ */
+public final class Cam2LibMultiCamera {
+
+    public interface Callback {
+        /**
+         * The device is open and its repeating request is running
+         * @param device Opened device
+         */
+        void onReady(@NonNull Device device);
+
+        void onError(@NonNull String cameraId, @NonNull Throwable throwable);
+    }
+
+    private Context mContext;
+    private final CameraManager mCameraManager;
+    private final Cam2LibCameraCache mCameraCache;
+
+    private final HandlerThread[] mThreads;
+    private final Handler[] mHandlers;
+    private final int[] mDevicesPerThread;
+    private final List<Device> mDevices = new ArrayList<>();
+
+    /**
+     * @param context Context
+     * @param maxThreads Maximum threads shared by all the devices, devices are spread evenly
+     */
+    public Cam2LibMultiCamera(@NonNull Context context, int maxThreads) {
+        this.mContext = context;
+        this.mCameraManager = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
+        this.mCameraCache = Cam2LibCameraCache.getInstance(context);
+
+        int threads = Math.max(1, maxThreads);
+        this.mThreads = new HandlerThread[threads];
+        this.mHandlers = new Handler[threads];
+        this.mDevicesPerThread = new int[threads];
+    }
+
+    /**
+     * The ids of the cameras which can be opened, including every camera of a lens facing. The
+     * physical cameras behind a logical multi camera cannot be opened on their own and are not
+     * listed, see {@link #getPhysicalCameraIds(String)}.
+     * @return Camera ids
+     * @throws CameraAccessException When the camera service cannot be reached
+     */
+    @NonNull
+    public List<String> getCameraIds() throws CameraAccessException {
+        List<String> cameraIds = new ArrayList<>();
+        Collections.addAll(cameraIds, mCameraCache.getCameraIdList());
+        return cameraIds;
+    }
+
+    /**
+     * Physical cameras behind a logical multi camera. They can be streamed from by passing them
+     * to {@link #open(String, List, List, int, Callback)} along with the logical camera id.
+     * @param cameraId Logical camera id
+     * @return Physical camera ids, empty when the camera is not a logical multi camera
+     * @throws CameraAccessException When the camera service cannot be reached
+     */
+    @NonNull
+    public Set<String> getPhysicalCameraIds(@NonNull String cameraId) throws CameraAccessException {
+
+        if(Build.VERSION.SDK_INT < Build.VERSION_CODES.P) {
+            return Collections.emptySet();
+        }
+
+        Set<String> physicalIds = mCameraCache.getCharacteristics(cameraId).getPhysicalCameraIds();
+        return physicalIds == null ? Collections.<String>emptySet() : physicalIds;
+    }
+
+    /**
+     * Lens facing of the camera
+     * @param cameraId Camera id
+     * @return One of CameraCharacteristics.LENS_FACING_*, null if unknown
+     * @throws CameraAccessException When the camera service cannot be reached
+     */
+    @Nullable
+    public Integer getLensFacing(@NonNull String cameraId) throws CameraAccessException {
+        return mCameraCache.getCharacteristics(cameraId).get(CameraCharacteristics.LENS_FACING);
+    }
+
+    /**
+     * Open the camera and start a repeating request to all the outputs. Every output receives
+     * every frame, so a still ImageReader needs to be passed to
+     * {@link #open(String, List, List, List, int, Callback)} as an output which does not repeat.
+     * @param cameraId Camera id as returned by {@link #getCameraIds()}, a physical camera id is
+     *                 reported as an error
+     * @param outputs Surfaces to stream to
+     * @param template Template of the repeating request, like CameraDevice.TEMPLATE_PREVIEW
+     * @param callback Called on the thread of the device
+     * @return Device which is ready once {@link Callback#onReady(Device)} is called
+     */
+    @NonNull
+    public Device open(@NonNull String cameraId, @NonNull List<Surface> outputs, int template,
+                       @NonNull Callback callback) {
+        return open(cameraId, outputs, null, outputs, template, callback);
+    }
+
+    /**
+     * Open a logical multi camera and stream from its physical cameras to all the outputs, needs
+     * Android P
+     * @param cameraId Logical camera id
+     * @param outputs Surfaces to stream to
+     * @param physicalCameraIds Physical camera of each output, null entries stream the logical camera
+     * @param template Template of the repeating request, like CameraDevice.TEMPLATE_PREVIEW
+     * @param callback Called on the thread of the device
+     * @return Device which is ready once {@link Callback#onReady(Device)} is called
+     */
+    @NonNull
+    public Device open(@NonNull String cameraId, @NonNull List<Surface> outputs,
+                       @Nullable List<String> physicalCameraIds, int template,
+                       @NonNull Callback callback) {
+        return open(cameraId, outputs, physicalCameraIds, outputs, template, callback);
+    }
+
+    /**
+     * Open the camera with outputs which are only captured to with {@link Device#capture(List, int,
+     * CameraCaptureSession.CaptureCallback)}, like a still ImageReader. Such a reader would run
+     * out of images if it received every frame of the repeating request, and stall the stream.
+     * @param cameraId Camera id, or logical camera id when streaming from physical cameras
+     * @param outputs All the surfaces of the session
+     * @param physicalCameraIds Physical camera of each output, null entries stream the logical
+     *                          camera. Can be null, physical cameras need Android P.
+     * @param repeatingOutputs Outputs which the repeating request streams to, the others only
+     *                         receive the single captures
+     * @param template Template of the repeating request, like CameraDevice.TEMPLATE_PREVIEW
+     * @param callback Called on the thread of the device
+     * @return Device which is ready once {@link Callback#onReady(Device)} is called
+     */
+    @NonNull
+    public synchronized Device open(@NonNull String cameraId, @NonNull List<Surface> outputs,
+                                    @Nullable List<String> physicalCameraIds,
+                                    @NonNull List<Surface> repeatingOutputs, int template,
+                                    @NonNull Callback callback) {
+
+        if(mContext == null) {
+            throw new IllegalStateException("Cam2LibMultiCamera is closed");
+        }
+
+        int slot = leastUsedThread();
+        Device device = new Device(cameraId, outputs, physicalCameraIds, repeatingOutputs, template, callback,
+                slot, handlerFor(slot));
+
+        if(!outputs.containsAll(repeatingOutputs)) {
+            callback.onError(cameraId, new IllegalArgumentException("Repeating outputs need to be outputs of the session"));
+            return device;
+        }
+
+        //Do we have the permission to use the camera hardware
+        if(ContextCompat.checkSelfPermission(mContext, Manifest.permission.CAMERA) != PackageManager.PERMISSION_GRANTED) {
+            callback.onError(cameraId, new RuntimeException("Require camera permission to open"));
+            return device;
+        }
+
+        try {
+            if(!getCameraIds().contains(cameraId)) {
+                callback.onError(cameraId, new IllegalArgumentException("Camera " + cameraId +
+                        " cannot be opened, physical cameras are streamed through their logical camera"));
+                return device;
+            }
+        } catch (CameraAccessException ex) {
+            callback.onError(cameraId, ex);
+            return device;
+        }
+
+        mDevices.add(device);
+        mDevicesPerThread[slot]++;
+
+        try {
+            mCameraManager.openCamera(cameraId, device.mStateCallback, device.mHandler);
+        } catch (CameraAccessException | RuntimeException ex) {
+            device.close();
+            callback.onError(cameraId, ex);
+        }
+
+        return device;
+    }
+
+    /**
+     * Close all the devices and stop the threads
+     */
+    public synchronized void close() {
+
+        for (Device device : new ArrayList<>(mDevices)) {
+            device.close();
+        }
+
+        for (int index = 0; index < mThreads.length; index++) {
+            if(mThreads[index] != null) {
+                mThreads[index].quitSafely();
+                mThreads[index] = null;
+                mHandlers[index] = null;
+            }
+        }
+
+        mContext = null;
+    }
+
+    private int leastUsedThread() {
+        int slot = 0;
+        for (int index = 1; index < mDevicesPerThread.length; index++) {
+            if(mDevicesPerThread[index] < mDevicesPerThread[slot]) {
+                slot = index;
+            }
+        }
+        return slot;
+    }
+
+    private Handler handlerFor(int slot) {
+
+        if(mHandlers[slot] == null) {
+            mThreads[slot] = new HandlerThread(Cam2LibMultiCamera.class.getName() + "-" + slot);
+            mThreads[slot].start();
+            mHandlers[slot] = new Handler(mThreads[slot].getLooper());
+        }
+
+        return mHandlers[slot];
+    }
+
+    private synchronized void onDeviceClosed(Device device) {
+        if(mDevices.remove(device)) {
+            mDevicesPerThread[device.mSlot]--;
+        }
+    }
+
+    /**
+     * A camera opened by {@link Cam2LibMultiCamera}
+     */
+    public final class Device {
+
+        private final String mCameraId;
+        private final List<Surface> mOutputs;
+        private final List<String> mPhysicalCameraIds;
+        private final List<Surface> mRepeatingOutputs;
+        private final int mTemplate;
+        private final Callback mCallback;
+        private final int mSlot;
+        private final Handler mHandler;
+
+        private CameraDevice mCameraDevice;
+        private CameraCaptureSession mCaptureSession;
+        private boolean mClosed;
+
+        Device(String cameraId, List<Surface> outputs, List<String> physicalCameraIds, List<Surface> repeatingOutputs,
+               int template, Callback callback, int slot, Handler handler) {
+            this.mCameraId = cameraId;
+            this.mOutputs = new ArrayList<>(outputs);
+            this.mPhysicalCameraIds = physicalCameraIds;
+            this.mRepeatingOutputs = new ArrayList<>(repeatingOutputs);
+            this.mTemplate = template;
+            this.mCallback = callback;
+            this.mSlot = slot;
+            this.mHandler = handler;
+        }
+
+        @NonNull
+        public String getCameraId() {
+            return mCameraId;
+        }
+
+        /**
+         * Session of the device, available once ready
+         * @return Capture session or null
+         */
+        @Nullable
+        public synchronized CameraCaptureSession getCaptureSession() {
+            return mCaptureSession;
+        }
+
+        /**
+         * Capture a single request, for example a still image to an ImageReader surface which
+         * was passed as an output but not as a repeating output, see
+         * {@link Cam2LibMultiCamera#open(String, List, List, List, int, Callback)}
+         * @param targets Surfaces to capture to
+         * @param template Template of the request, like CameraDevice.TEMPLATE_STILL_CAPTURE
+         * @param captureCallback Capture callback, can be null
+         */
+        public synchronized void capture(@NonNull List<Surface> targets, int template,
+                                         @Nullable CameraCaptureSession.CaptureCallback captureCallback) {
+
+            if(mCaptureSession == null) {
+                mCallback.onError(mCameraId, new IllegalStateException("Camera is not ready"));
+                return;
+            }
+
+            try {
+                CaptureRequest.Builder builder = mCameraDevice.createCaptureRequest(template);
+                for (Surface target : targets) {
+                    builder.addTarget(target);
+                }
+                mCaptureSession.capture(builder.build(), captureCallback, mHandler);
+            } catch (CameraAccessException | RuntimeException ex) {
+                mCallback.onError(mCameraId, ex);
+            }
+        }
+
+        /**
+         * Close the device, the thread it used is shared and keeps running
+         */
+        public void close() {
+
+            synchronized (this) {
+                if(mClosed) {
+                    return;
+                }
+
+                mClosed = true;
+                if(mCaptureSession != null) {
+                    mCaptureSession.close();
+                    mCaptureSession = null;
+                }
+                if(mCameraDevice != null) {
+                    mCameraDevice.close();
+                    mCameraDevice = null;
+                }
+            }
+            onDeviceClosed(this);
+        }
+
+        private void createSession() throws CameraAccessException {
+
+            if(mPhysicalCameraIds == null || Build.VERSION.SDK_INT < Build.VERSION_CODES.P) {
+                mCameraDevice.createCaptureSession(mOutputs, mSessionStateCallback, mHandler);
+                return;
+            }
+
+            List<OutputConfiguration> configurations = new ArrayList<>(mOutputs.size());
+            for (int index = 0; index < mOutputs.size(); index++) {
+                OutputConfiguration configuration = new OutputConfiguration(mOutputs.get(index));
+                String physicalCameraId = index < mPhysicalCameraIds.size() ? mPhysicalCameraIds.get(index) : null;
+                if(physicalCameraId != null) {
+                    configuration.setPhysicalCameraId(physicalCameraId);
+                }
+                configurations.add(configuration);
+            }
+            mCameraDevice.createCaptureSessionByOutputConfigurations(configurations, mSessionStateCallback, mHandler);
+        }
+
+        private final CameraDevice.StateCallback mStateCallback = new CameraDevice.StateCallback() {
+            @Override
+            public void onOpened(@NonNull CameraDevice cameraDevice) {
+
+                synchronized (Device.this) {
+                    if(mClosed) {
+                        cameraDevice.close();
+                        return;
+                    }
+
+                    mCameraDevice = cameraDevice;
+                    try {
+                        createSession();
+                    } catch (CameraAccessException | RuntimeException ex) {
+                        mCallback.onError(mCameraId, ex);
+                    }
+                }
+            }
+
+            @Override
+            public void onDisconnected(@NonNull CameraDevice cameraDevice) {
+                close();
+                mCallback.onError(mCameraId, new Exception("Camera got disconnected"));
+            }
+
+            @Override
+            public void onError(@NonNull CameraDevice cameraDevice, int error) {
+                close();
+                switch (error) {
+                    case ERROR_CAMERA_IN_USE:
+                        mCallback.onError(mCameraId, new Exception("Camera already in use."));
+                        break;
+
+                    case ERROR_MAX_CAMERAS_IN_USE:
+                        mCallback.onError(mCameraId, new Exception("Max cameras are in use."));
+                        break;
+
+                    case ERROR_CAMERA_DISABLED:
+                        mCallback.onError(mCameraId, new Exception("Could not access camera as it is disabled."));
+                        break;
+
+                    default:
+                        mCallback.onError(mCameraId, new Exception("An error occurred while connecting to camera."));
+                        break;
+                }
+            }
+        };
+
+        private final CameraCaptureSession.StateCallback mSessionStateCallback = new CameraCaptureSession.StateCallback() {
+            @Override
+            public void onConfigured(@NonNull CameraCaptureSession session) {
+
+                synchronized (Device.this) {
+                    if(mClosed) {
+                        session.close();
+                        return;
+                    }
+
+                    mCaptureSession = session;
+                    try {
+                        CaptureRequest.Builder builder = mCameraDevice.createCaptureRequest(mTemplate);
+                        for (Surface output : mRepeatingOutputs) {
+                            builder.addTarget(output);
+                        }
+                        session.setRepeatingRequest(builder.build(), null, mHandler);
+                    } catch (CameraAccessException | RuntimeException ex) {
+                        mCallback.onError(mCameraId, ex);
+                        return;
+                    }
+                }
+
+                mCallback.onReady(Device.this);
+            }
+
+            @Override
+            public void onConfigureFailed(@NonNull CameraCaptureSession session) {
+                mCallback.onError(mCameraId, new Exception("Could not establish session with camera"));
+            }
+        };
+    }
+}
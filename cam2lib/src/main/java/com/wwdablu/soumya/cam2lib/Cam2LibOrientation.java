@@ -0,0 +1,247 @@
+package com.wwdablu.soumya.cam2lib;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.view.Surface;
+
+/**
+ * Orientation of the captured images and rotation of frames in memory. The rotations write into
+ * an output buffer which can be reused across frames, instead of a rotated copy of a bitmap. They
+ * work on square tiles so that both the reads and the scattered writes stay within the cache.
+ */
+public final class Cam2LibOrientation {
+
+    private static final int TILE = 32;
+
+    private Cam2LibOrientation() {
+        //
+    }
+
+    /**
+     * Clockwise rotation of the content of the display
+     * @param surfaceRotation Display rotation, like {@link Surface#ROTATION_90}
+     * @return 0, 90, 180 or 270
+     */
+    public static int getDisplayDegrees(int surfaceRotation) {
+        switch (surfaceRotation) {
+            case Surface.ROTATION_90:
+                return 90;
+            case Surface.ROTATION_180:
+                return 180;
+            case Surface.ROTATION_270:
+                return 270;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Clockwise rotation of the device for a display rotation, in the convention of
+     * {@link android.view.OrientationEventListener}. The display turns opposite to the device, so
+     * {@link Surface#ROTATION_90} means the device was turned 270 degrees clockwise.
+     * @param surfaceRotation Display rotation, like {@link Surface#ROTATION_90}
+     * @return 0, 90, 180 or 270
+     */
+    public static int getDeviceDegrees(int surfaceRotation) {
+        return (360 - getDisplayDegrees(surfaceRotation)) % 360;
+    }
+
+    /**
+     * Clockwise rotation which makes the image captured by the sensor upright for the device
+     * held at the given orientation.
+     * @param sensorOrientation {@link android.hardware.camera2.CameraCharacteristics#SENSOR_ORIENTATION}
+     * @param deviceDegrees Orientation of the device as per
+     *                      {@link android.view.OrientationEventListener}, or the display degrees
+     *                      when the activity follows the device
+     * @param frontFacing Whether the camera is facing the user, its image is mirrored so the
+     *                    device rotation applies in the opposite direction
+     * @return 0, 90, 180 or 270
+     */
+    public static int getJpegOrientation(int sensorOrientation, int deviceDegrees, boolean frontFacing) {
+
+        //Snap to the closest right angle
+        int device = ((deviceDegrees + 45) / 90 * 90) % 360;
+        if(frontFacing) {
+            device = -device;
+        }
+        return ((sensorOrientation + device) % 360 + 360) % 360;
+    }
+
+    /**
+     * Width of the frame once rotated
+     */
+    public static int getRotatedWidth(int width, int height, int degrees) {
+        return normalize(degrees) % 180 == 0 ? width : height;
+    }
+
+    /**
+     * Height of the frame once rotated
+     */
+    public static int getRotatedHeight(int width, int height, int degrees) {
+        return normalize(degrees) % 180 == 0 ? height : width;
+    }
+
+    /**
+     * Rotate ARGB pixels clockwise, then mirror them horizontally if required
+     * @param argb Pixels, row by row without padding
+     * @param degrees 0, 90, 180 or 270
+     * @param mirror Whether to flip the rotated frame horizontally, like the preview of a front camera
+     * @param output Array to reuse, a new one is allocated if null or too small. Must not be the input.
+     * @return Array holding the rotated pixels, see {@link #getRotatedWidth(int, int, int)}
+     */
+    public static int[] rotateArgb(@NonNull int[] argb, int width, int height, int degrees, boolean mirror,
+                                   @Nullable int[] output) {
+
+        int[] rotated = output != null && output.length >= width * height ? output : new int[width * height];
+        Transform transform = new Transform(width, height, degrees, mirror);
+
+        for (int tileY = 0; tileY < height; tileY += TILE) {
+            int endY = Math.min(height, tileY + TILE);
+            for (int tileX = 0; tileX < width; tileX += TILE) {
+                int endX = Math.min(width, tileX + TILE);
+                for (int y = tileY; y < endY; y++) {
+                    int source = y * width + tileX;
+                    int target = transform.origin + y * transform.stepY + tileX * transform.stepX;
+                    for (int x = tileX; x < endX; x++) {
+                        rotated[target] = argb[source++];
+                        target += transform.stepX;
+                    }
+                }
+            }
+        }
+        return rotated;
+    }
+
+    /**
+     * Rotate an NV21 frame clockwise, then mirror it horizontally if required
+     * @param nv21 Frame as produced by {@link Cam2LibYuvConverter#toNv21(android.media.Image, byte[])}
+     * @param degrees 0, 90, 180 or 270
+     * @param mirror Whether to flip the rotated frame horizontally
+     * @param output Array to reuse, a new one is allocated if null or too small. Must not be the input.
+     * @return Array holding the rotated frame
+     */
+    public static byte[] rotateNv21(@NonNull byte[] nv21, int width, int height, int degrees, boolean mirror,
+                                    @Nullable byte[] output) {
+
+        int size = Cam2LibYuvConverter.yuv420Size(width, height);
+        byte[] rotated = output != null && output.length >= size ? output : new byte[size];
+
+        rotatePlane(nv21, 0, width, height, 1, degrees, mirror, rotated, 0);
+        //The interleaved VU pairs move together
+        rotatePlane(nv21, width * height, (width + 1) / 2, (height + 1) / 2, 2, degrees, mirror, rotated, width * height);
+        return rotated;
+    }
+
+    /**
+     * Rotate an I420 frame clockwise, then mirror it horizontally if required
+     * @param i420 Frame as produced by {@link Cam2LibYuvConverter#toI420(android.media.Image, byte[])}
+     * @param degrees 0, 90, 180 or 270
+     * @param mirror Whether to flip the rotated frame horizontally
+     * @param output Array to reuse, a new one is allocated if null or too small. Must not be the input.
+     * @return Array holding the rotated frame
+     */
+    public static byte[] rotateI420(@NonNull byte[] i420, int width, int height, int degrees, boolean mirror,
+                                    @Nullable byte[] output) {
+
+        int size = Cam2LibYuvConverter.yuv420Size(width, height);
+        byte[] rotated = output != null && output.length >= size ? output : new byte[size];
+
+        int chromaWidth = (width + 1) / 2;
+        int chromaHeight = (height + 1) / 2;
+        int uOffset = width * height;
+        int vOffset = uOffset + chromaWidth * chromaHeight;
+
+        rotatePlane(i420, 0, width, height, 1, degrees, mirror, rotated, 0);
+        rotatePlane(i420, uOffset, chromaWidth, chromaHeight, 1, degrees, mirror, rotated, uOffset);
+        rotatePlane(i420, vOffset, chromaWidth, chromaHeight, 1, degrees, mirror, rotated, vOffset);
+        return rotated;
+    }
+
+    private static void rotatePlane(byte[] source, int sourceOffset, int width, int height, int pixelBytes,
+                                    int degrees, boolean mirror, byte[] target, int targetOffset) {
+
+        Transform transform = new Transform(width, height, degrees, mirror);
+        int rowBytes = width * pixelBytes;
+        int stepX = transform.stepX * pixelBytes;
+
+        for (int tileY = 0; tileY < height; tileY += TILE) {
+            int endY = Math.min(height, tileY + TILE);
+            for (int tileX = 0; tileX < width; tileX += TILE) {
+                int endX = Math.min(width, tileX + TILE);
+                for (int y = tileY; y < endY; y++) {
+                    int from = sourceOffset + y * rowBytes + tileX * pixelBytes;
+                    int to = targetOffset + (transform.origin + y * transform.stepY + tileX * transform.stepX) * pixelBytes;
+
+                    if(pixelBytes == 1) {
+                        for (int x = tileX; x < endX; x++) {
+                            target[to] = source[from++];
+                            to += stepX;
+                        }
+                    } else {
+                        for (int x = tileX; x < endX; x++) {
+                            target[to] = source[from];
+                            target[to + 1] = source[from + 1];
+                            from += 2;
+                            to += stepX;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static int normalize(int degrees) {
+        int normalized = (degrees % 360 + 360) % 360;
+        if(normalized % 90 != 0) {
+            throw new IllegalArgumentException("Rotation must be a multiple of 90 degrees, got " + degrees);
+        }
+        return normalized;
+    }
+
+    /**
+     * Index in the output of the pixel at x, y of the input: origin + x * stepX + y * stepY
+     */
+    private static final class Transform {
+
+        final int origin;
+        final int stepX;
+        final int stepY;
+
+        Transform(int width, int height, int degrees, boolean mirror) {
+
+            int rotation = normalize(degrees);
+            int outWidth = rotation % 180 == 0 ? width : height;
+
+            //Position in the output of the input origin, and the output steps of a move along x and y
+            int originX, originY, xDx, xDy, yDx, yDy;
+            switch (rotation) {
+                case 90:
+                    originX = height - 1; originY = 0;
+                    xDx = 0; xDy = 1; yDx = -1; yDy = 0;
+                    break;
+                case 180:
+                    originX = width - 1; originY = height - 1;
+                    xDx = -1; xDy = 0; yDx = 0; yDy = -1;
+                    break;
+                case 270:
+                    originX = 0; originY = width - 1;
+                    xDx = 0; xDy = -1; yDx = 1; yDy = 0;
+                    break;
+                default:
+                    originX = 0; originY = 0;
+                    xDx = 1; xDy = 0; yDx = 0; yDy = 1;
+                    break;
+            }
+
+            if(mirror) {
+                originX = outWidth - 1 - originX;
+                xDx = -xDx;
+                yDx = -yDx;
+            }
+
+            this.origin = originY * outWidth + originX;
+            this.stepX = xDy * outWidth + xDx;
+            this.stepY = yDy * outWidth + yDx;
+        }
+    }
+}
@@ -0,0 +1,352 @@
+package com.wwdablu.soumya.cam2lib;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.media.Image;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Decodes a full resolution capture one tile at a time for display at any zoom, so the full size
+ * bitmap is never in memory. Only the tiles in view are decoded, at the sub sampling which
+ * matches the scale of the display, and kept in a cache bounded by bytes. Tiles next to the
+ * visible ones are decoded ahead of time in the background so that panning finds them ready.
+ */
+public final class Cam2LibRegionDecoder {
+
+    /**
+     * Called on the decoding thread when a tile requested through
+     * {@link #getTiles(Rect, float, List)} is ready, for example to call View.postInvalidate().
+     */
+    public interface Listener {
+        void onTileReady(@NonNull Tile tile);
+    }
+
+    /**
+     * Part of the image decoded at a sub sampling
+     */
+    public static final class Tile {
+
+        private final Rect mRegion;
+        private final Bitmap mBitmap;
+        private final int mSampleSize;
+
+        Tile(Rect region, Bitmap bitmap, int sampleSize) {
+            this.mRegion = region;
+            this.mBitmap = bitmap;
+            this.mSampleSize = sampleSize;
+        }
+
+        /**
+         * Area of the full resolution image covered by the tile, the bitmap is to be drawn
+         * scaled to it
+         */
+        @NonNull
+        public Rect getRegion() {
+            return mRegion;
+        }
+
+        @NonNull
+        public Bitmap getBitmap() {
+            return mBitmap;
+        }
+
+        public int getSampleSize() {
+            return mSampleSize;
+        }
+    }
+
+    private static final int DEFAULT_TILE_SIZE = 512;
+    private static final int MAX_SAMPLE_SIZE = 64;
+
+    private final BitmapRegionDecoder mDecoder;
+    private final int mTileSize;
+    private final ExecutorService mExecutor;
+    private final LruCache<Long, Tile> mCache;
+    private final Listener mListener;
+
+    private final Object mLock = new Object();
+    private final Set<Long> mPending = new HashSet<>();
+    private final Set<Long> mWanted = new HashSet<>();
+    private boolean mClosed;
+
+    /**
+     * Create a decoder over the JPEG data of a capture. The data is copied, so the image can be
+     * closed once this returns.
+     * @param image JPEG image received in {@link Cam2LibCallback#onImage(Image)}
+     * @param cacheBytes Maximum bytes held by the decoded tiles
+     * @param listener Notified as tiles are decoded
+     */
+    @NonNull
+    public static Cam2LibRegionDecoder newInstance(@NonNull Image image, long cacheBytes,
+                                                   @NonNull Listener listener) throws IOException {
+        ByteBuffer buffer = image.getPlanes()[0].getBuffer().duplicate();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return newInstance(bytes, 0, bytes.length, cacheBytes, listener);
+    }
+
+    /**
+     * Create a decoder over JPEG data
+     * @param jpeg JPEG data, which must not change while the decoder is open
+     * @param cacheBytes Maximum bytes held by the decoded tiles
+     * @param listener Notified as tiles are decoded
+     */
+    @NonNull
+    public static Cam2LibRegionDecoder newInstance(@NonNull byte[] jpeg, int offset, int length, long cacheBytes,
+                                                   @NonNull Listener listener) throws IOException {
+        return new Cam2LibRegionDecoder(BitmapRegionDecoder.newInstance(jpeg, offset, length, false),
+                DEFAULT_TILE_SIZE, cacheBytes, listener);
+    }
+
+    /**
+     * Create a decoder over a JPEG file, like the ones written by {@link Cam2LibJpegWriter}
+     * @param path Path of the file
+     * @param cacheBytes Maximum bytes held by the decoded tiles
+     * @param listener Notified as tiles are decoded
+     */
+    @NonNull
+    public static Cam2LibRegionDecoder newInstance(@NonNull String path, long cacheBytes,
+                                                   @NonNull Listener listener) throws IOException {
+        return new Cam2LibRegionDecoder(BitmapRegionDecoder.newInstance(path, false),
+                DEFAULT_TILE_SIZE, cacheBytes, listener);
+    }
+
+    private Cam2LibRegionDecoder(BitmapRegionDecoder decoder, int tileSize, long cacheBytes, Listener listener) {
+
+        this.mDecoder = decoder;
+        this.mTileSize = tileSize;
+        this.mListener = listener;
+
+        //Region decoding is serialised by the decoder, more threads would only queue up
+        this.mExecutor = Cam2LibExecutors.newImagePool(1);
+        this.mCache = new LruCache<Long, Tile>((int) Math.min(Integer.MAX_VALUE, Math.max(1, cacheBytes))) {
+            @Override
+            protected int sizeOf(Long key, Tile tile) {
+                return tile.getBitmap().getAllocationByteCount();
+            }
+        };
+    }
+
+    public int getWidth() {
+        return mDecoder.getWidth();
+    }
+
+    public int getHeight() {
+        return mDecoder.getHeight();
+    }
+
+    /**
+     * Largest power of two sub sampling which does not show less detail than the display
+     * @param scale Display pixels per image pixel
+     * @return Sub sampling of the tiles for the scale
+     */
+    public static int getSampleSize(float scale) {
+        int sampleSize = 1;
+        while (sampleSize < MAX_SAMPLE_SIZE && scale * sampleSize * 2 <= 1f) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * Decode the whole image at a low resolution, to be drawn below the tiles while they load
+     * @param maxDimension Maximum width and height of the bitmap
+     * @return Bitmap or null if it could not be decoded
+     */
+    @Nullable
+    public Bitmap decodeOverview(int maxDimension) {
+        int sampleSize = 1;
+        while (sampleSize < MAX_SAMPLE_SIZE && Math.max(getWidth(), getHeight()) / sampleSize > maxDimension) {
+            sampleSize *= 2;
+        }
+        return decode(new Rect(0, 0, getWidth(), getHeight()), sampleSize);
+    }
+
+    /**
+     * Get the tiles which cover the visible area at the scale of the display. Tiles which are
+     * not decoded yet are left out and requested, along with their neighbours, the listener is
+     * called as each becomes ready. Requests for tiles which go out of view before they are
+     * decoded are dropped.
+     * @param visible Visible area in the coordinates of the full resolution image
+     * @param scale Display pixels per image pixel
+     * @param tiles List to which the decoded tiles are added, it is cleared first
+     * @return The list of tiles
+     */
+    @NonNull
+    public List<Tile> getTiles(@NonNull Rect visible, float scale, @NonNull List<Tile> tiles) {
+
+        tiles.clear();
+        int sampleSize = getSampleSize(scale);
+        int span = mTileSize * sampleSize;
+
+        int columns = (getWidth() + span - 1) / span;
+        int rows = (getHeight() + span - 1) / span;
+        int firstColumn = clamp(visible.left / span, columns);
+        int lastColumn = clamp((visible.right - 1) / span, columns);
+        int firstRow = clamp(visible.top / span, rows);
+        int lastRow = clamp((visible.bottom - 1) / span, rows);
+
+        synchronized (mLock) {
+
+            if(mClosed) {
+                return tiles;
+            }
+
+            mWanted.clear();
+            for (int row = firstRow; row <= lastRow; row++) {
+                for (int column = firstColumn; column <= lastColumn; column++) {
+                    long key = key(sampleSize, column, row);
+                    Tile tile = mCache.get(key);
+                    if(tile != null) {
+                        tiles.add(tile);
+                    } else {
+                        request(key);
+                    }
+                }
+            }
+
+            //Neighbours are queued after the visible tiles, so they are decoded last
+            for (int row = Math.max(0, firstRow - 1); row <= Math.min(rows - 1, lastRow + 1); row++) {
+                for (int column = Math.max(0, firstColumn - 1); column <= Math.min(columns - 1, lastColumn + 1); column++) {
+                    if(row < firstRow || row > lastRow || column < firstColumn || column > lastColumn) {
+                        long key = key(sampleSize, column, row);
+                        if(mCache.get(key) == null) {
+                            request(key);
+                        }
+                    }
+                }
+            }
+        }
+        return tiles;
+    }
+
+    /**
+     * Drop all the decoded tiles, for example when the app is trimming memory
+     */
+    public void clearCache() {
+        mCache.evictAll();
+    }
+
+    /**
+     * Stop decoding and release the decoder. Tiles handed out remain valid.
+     */
+    public void close() {
+
+        synchronized (mLock) {
+            mClosed = true;
+            mWanted.clear();
+        }
+
+        mExecutor.shutdownNow();
+        mCache.evictAll();
+        synchronized (mDecoder) {
+            mDecoder.recycle();
+        }
+    }
+
+    private void request(long key) {
+
+        mWanted.add(key);
+        if(!mPending.add(key)) {
+            return;
+        }
+
+        try {
+            mExecutor.execute(new DecodeTile(key));
+        } catch (RejectedExecutionException ex) {
+            mPending.remove(key);
+        }
+    }
+
+    private Bitmap decode(Rect region, int sampleSize) {
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize;
+        //JPEG has no alpha, half the memory of ARGB_8888
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+
+        synchronized (mDecoder) {
+            if(mDecoder.isRecycled()) {
+                return null;
+            }
+            return mDecoder.decodeRegion(region, options);
+        }
+    }
+
+    private final class DecodeTile implements Runnable {
+
+        private final long mKey;
+
+        DecodeTile(long key) {
+            this.mKey = key;
+        }
+
+        @Override
+        public void run() {
+
+            synchronized (mLock) {
+                if(mClosed || !mWanted.contains(mKey)) {
+                    mPending.remove(mKey);
+                    return;
+                }
+            }
+
+            int sampleSize = sampleSizeOf(mKey);
+            int span = mTileSize * sampleSize;
+            int left = columnOf(mKey) * span;
+            int top = rowOf(mKey) * span;
+            Rect region = new Rect(left, top, Math.min(getWidth(), left + span), Math.min(getHeight(), top + span));
+
+            Bitmap bitmap = null;
+            try {
+                bitmap = decode(region, sampleSize);
+            } catch (RuntimeException ex) {
+                Log.e(Cam2LibRegionDecoder.class.getName(), "Could not decode tile " + region, ex);
+            }
+
+            Tile tile = bitmap == null ? null : new Tile(region, bitmap, sampleSize);
+            synchronized (mLock) {
+                mPending.remove(mKey);
+                if(tile == null || mClosed) {
+                    return;
+                }
+                mCache.put(mKey, tile);
+            }
+
+            mListener.onTileReady(tile);
+        }
+    }
+
+    private static int clamp(int value, int count) {
+        return Math.max(0, Math.min(count - 1, value));
+    }
+
+    private static long key(int sampleSize, int column, int row) {
+        return ((long) Integer.numberOfTrailingZeros(sampleSize) << 48) | ((long) row << 24) | column;
+    }
+
+    private static int sampleSizeOf(long key) {
+        return 1 << (int) (key >>> 48);
+    }
+
+    private static int rowOf(long key) {
+        return (int) ((key >>> 24) & 0xFFFFFF);
+    }
+
+    private static int columnOf(long key) {
+        return (int) (key & 0xFFFFFF);
+    }
+}
@@ -0,0 +1,8 @@
+package com.wwdablu.soumya.cam2lib;
+
+import android.support.annotation.NonNull;
+import android.util.Size;
+
+public interface Cam2LibSizeSelector {
+    Size select(@NonNull Size[] choices);
+}
@@ -0,0 +1,130 @@
+package com.wwdablu.soumya.cam2lib;
+
+import android.support.annotation.NonNull;
+import android.util.Size;
+
+/**
+ * Built in {@link Cam2LibSizeSelector}s. Sizes reported by the camera are in landscape, so the
+ * targets are to be given in landscape as well.
+ */
+public final class Cam2LibSizeSelectors {
+
+    private static final float ASPECT_RATIO_TOLERANCE = 0.01f;
+
+    private Cam2LibSizeSelectors() {
+        //
+    }
+
+    /**
+     * Selects the size with the most pixels. This is the default for still images.
+     * @return Selector
+     */
+    public static Cam2LibSizeSelector largest() {
+        return new Cam2LibSizeSelector() {
+            @Override
+            public Size select(@NonNull Size[] choices) {
+                Size selected = null;
+                for (Size size : choices) {
+                    if(selected == null || area(size) > area(selected)) {
+                        selected = size;
+                    }
+                }
+                return selected;
+            }
+        };
+    }
+
+    /**
+     * Selects the size closest to the target resolution
+     * @param width Target width
+     * @param height Target height
+     * @return Selector
+     */
+    public static Cam2LibSizeSelector closestTo(final int width, final int height) {
+        return new Cam2LibSizeSelector() {
+            @Override
+            public Size select(@NonNull Size[] choices) {
+                Size selected = null;
+                long selectedDistance = Long.MAX_VALUE;
+                for (Size size : choices) {
+                    long distance = Math.abs((long) size.getWidth() - width) + Math.abs((long) size.getHeight() - height);
+                    if(distance < selectedDistance) {
+                        selected = size;
+                        selectedDistance = distance;
+                    }
+                }
+                return selected;
+            }
+        };
+    }
+
+    /**
+     * Selects the largest size which does not exceed the pixel budget, or the smallest size if
+     * all of them do. Useful to bound the memory used by every image.
+     * @param maxPixels Maximum number of pixels, like 2_000_000 for 2MP
+     * @return Selector
+     */
+    public static Cam2LibSizeSelector maxPixels(final long maxPixels) {
+        return new Cam2LibSizeSelector() {
+            @Override
+            public Size select(@NonNull Size[] choices) {
+                Size selected = null;
+                Size smallest = null;
+                for (Size size : choices) {
+                    if(area(size) <= maxPixels && (selected == null || area(size) > area(selected))) {
+                        selected = size;
+                    }
+                    if(smallest == null || area(size) < area(smallest)) {
+                        smallest = size;
+                    }
+                }
+                return selected != null ? selected : smallest;
+            }
+        };
+    }
+
+    /**
+     * Restricts the choices to the sizes matching the aspect ratio, then lets the next selector
+     * decide. If no size matches, all the sizes are given to the next selector.
+     * @param width Width of the aspect ratio, like 16
+     * @param height Height of the aspect ratio, like 9
+     * @param then Selector which picks among the matching sizes
+     * @return Selector
+     */
+    public static Cam2LibSizeSelector aspectRatio(final int width, final int height, @NonNull final Cam2LibSizeSelector then) {
+        return new Cam2LibSizeSelector() {
+            @Override
+            public Size select(@NonNull Size[] choices) {
+
+                float ratio = (float) width / height;
+                int matching = 0;
+                for (Size size : choices) {
+                    if(matches(size, ratio)) {
+                        matching++;
+                    }
+                }
+
+                if(matching == 0) {
+                    return then.select(choices);
+                }
+
+                Size[] filtered = new Size[matching];
+                int index = 0;
+                for (Size size : choices) {
+                    if(matches(size, ratio)) {
+                        filtered[index++] = size;
+                    }
+                }
+                return then.select(filtered);
+            }
+        };
+    }
+
+    private static boolean matches(Size size, float ratio) {
+        return Math.abs((float) size.getWidth() / size.getHeight() - ratio) <= ratio * ASPECT_RATIO_TOLERANCE;
+    }
+
+    private static long area(Size size) {
+        return (long) size.getWidth() * size.getHeight();
+    }
+}
@@ -0,0 +1,82 @@
+package com.wwdablu.soumya.cam2lib;
+
+import android.os.SystemClock;
+
+/**
+ * Time taken by each phase of opening the camera, measured in milliseconds from the call to
+ * {@link Cam2Lib#open(android.view.TextureView, int)}. A phase not reached yet reports -1.
+ */
+public final class Cam2LibStartupTimings {
+
+    private volatile long mStart;
+    private volatile long mDeviceOpened = -1;
+    private volatile long mSurfaceReady = -1;
+    private volatile long mSessionConfigured = -1;
+    private volatile long mFirstFrame = -1;
+
+    void start() {
+        mStart = SystemClock.elapsedRealtime();
+        mDeviceOpened = -1;
+        mSurfaceReady = -1;
+        mSessionConfigured = -1;
+        mFirstFrame = -1;
+    }
+
+    void markDeviceOpened() {
+        if(mDeviceOpened < 0) mDeviceOpened = elapsed();
+    }
+
+    void markSurfaceReady() {
+        if(mSurfaceReady < 0) mSurfaceReady = elapsed();
+    }
+
+    void markSessionConfigured() {
+        if(mSessionConfigured < 0) mSessionConfigured = elapsed();
+    }
+
+    boolean markFirstFrame() {
+        if(mFirstFrame >= 0) {
+            return false;
+        }
+        mFirstFrame = elapsed();
+        return true;
+    }
+
+    /**
+     * @return Time until the camera device was opened
+     */
+    public long getDeviceOpenedMs() {
+        return mDeviceOpened;
+    }
+
+    /**
+     * @return Time until the surface of the TextureView was available
+     */
+    public long getSurfaceReadyMs() {
+        return mSurfaceReady;
+    }
+
+    /**
+     * @return Time until the capture session was configured
+     */
+    public long getSessionConfiguredMs() {
+        return mSessionConfigured;
+    }
+
+    /**
+     * @return Time until the first preview frame was completed
+     */
+    public long getFirstFrameMs() {
+        return mFirstFrame;
+    }
+
+    @Override
+    public String toString() {
+        return "open=" + mDeviceOpened + "ms, surface=" + mSurfaceReady + "ms, session=" +
+                mSessionConfigured + "ms, first frame=" + mFirstFrame + "ms";
+    }
+
+    private long elapsed() {
+        return SystemClock.elapsedRealtime() - mStart;
+    }
+}
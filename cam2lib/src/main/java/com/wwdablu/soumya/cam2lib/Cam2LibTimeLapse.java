@@ -0,0 +1,239 @@
+package com.wwdablu.soumya.cam2lib;
+
+import android.graphics.ImageFormat;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Captures still images at a fixed interval and appends them to a Motion-JPEG video, instead of
+ * saving each capture to its own file. The captures are scheduled against the time the
+ * time-lapse started, so the time taken by each capture does not add up over a long session.
+ * When a capture is late by more than an interval, for example while the device was asleep, the
+ * missed captures are skipped rather than taken in a burst. At most one capture is being written
+ * at a time, a capture due while the previous one is still being written is skipped as well.
+ * <p>
+ * The time-lapse receives the still images through
+ * {@link Cam2Lib#setStillFrameListener(Cam2LibFrameListener)} while it runs.
+ */
+public final class Cam2LibTimeLapse implements Cam2LibFrameListener {
+
+    public interface Listener {
+        /**
+         * A capture is appended to the video, called on the writing thread
+         * @param frameCount Frames in the video
+         * @param timestamp Sensor timestamp of the capture
+         */
+        void onFrameAdded(int frameCount, long timestamp);
+
+        /**
+         * A capture could not be appended, the time-lapse continues with the next one
+         * @param error Reason
+         */
+        void onFailed(@NonNull Throwable error);
+    }
+
+    private final Cam2Lib mCam2Lib;
+    private final Cam2LibMjpegWriter mWriter;
+    private final long mInterval;
+    private final Listener mListener;
+
+    private final Object mLock = new Object();
+    private final AtomicBoolean mWriting = new AtomicBoolean();
+    private final AtomicInteger mSkipped = new AtomicInteger();
+    private ExecutorService mWriteExecutor;
+    private Thread mSchedulerThread;
+    private boolean mRunning;
+
+    /**
+     * @param cam2Lib Camera to capture with, which needs to be open
+     * @param writer Video to append the captures to, closed by the caller once the time-lapse stops
+     * @param intervalMs Time between two captures
+     * @param listener Notified of every capture, can be null
+     */
+    public Cam2LibTimeLapse(@NonNull Cam2Lib cam2Lib, @NonNull Cam2LibMjpegWriter writer, long intervalMs,
+                            @Nullable Listener listener) {
+        this.mCam2Lib = cam2Lib;
+        this.mWriter = writer;
+        this.mInterval = Math.max(1, intervalMs);
+        this.mListener = listener;
+    }
+
+    /**
+     * Start capturing, the first capture is taken right away
+     */
+    public void start() {
+
+        synchronized (mLock) {
+            if(mRunning) {
+                return;
+            }
+
+            mRunning = true;
+            mSkipped.set(0);
+            mWriteExecutor = Cam2LibExecutors.newImagePool(1);
+            mCam2Lib.setStillFrameListener(this);
+            mSchedulerThread = new Thread(mScheduler, Cam2LibTimeLapse.class.getName());
+            mSchedulerThread.start();
+        }
+    }
+
+    /**
+     * Stop capturing and wait for the capture being written. The still frame listener is
+     * cleared, and the video can be closed once this returns.
+     * @throws InterruptedException When interrupted while waiting
+     */
+    public void stop() throws InterruptedException {
+
+        Thread schedulerThread;
+        ExecutorService writeExecutor;
+        synchronized (mLock) {
+            if(!mRunning) {
+                return;
+            }
+
+            mRunning = false;
+            mLock.notifyAll();
+            schedulerThread = mSchedulerThread;
+            writeExecutor = mWriteExecutor;
+            mSchedulerThread = null;
+            mCam2Lib.setStillFrameListener(null);
+        }
+
+        schedulerThread.join();
+        writeExecutor.shutdown();
+        writeExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Number of captures skipped because they were late or the previous one was still being
+     * written
+     */
+    public int getSkippedCount() {
+        return mSkipped.get();
+    }
+
+    @Override
+    public void onFrame(Cam2LibFrame frame) {
+
+        if(frame.getFormat() != ImageFormat.JPEG) {
+            Log.d(Cam2LibTimeLapse.class.getName(), "Skipping still frame of format " + frame.getFormat());
+            return;
+        }
+
+        if(!mWriting.compareAndSet(false, true)) {
+            mSkipped.incrementAndGet();
+            return;
+        }
+
+        //Written on its own thread so that the image callbacks are not delayed by the storage
+        frame.retain();
+        try {
+            mWriteExecutor.execute(new Append(frame));
+        } catch (RejectedExecutionException ex) {
+            frame.release();
+            mWriting.set(false);
+        }
+    }
+
+    /**
+     * Number of whole intervals by which a capture is late, which are to be skipped
+     * @param due Time the capture was due
+     * @param now Current time
+     * @param interval Time between two captures
+     */
+    static long missedCaptures(long due, long now, long interval) {
+        return now <= due ? 0 : (now - due) / interval;
+    }
+
+    private final Runnable mScheduler = new Runnable() {
+        @Override
+        public void run() {
+
+            long start = SystemClock.elapsedRealtime();
+            long capture = 0;
+
+            synchronized (mLock) {
+                while (mRunning) {
+
+                    //Every capture is due at a multiple of the interval from the start, not from the last capture
+                    long due = start + capture * mInterval;
+                    long now = SystemClock.elapsedRealtime();
+                    if(now < due) {
+                        try {
+                            mLock.wait(due - now);
+                        } catch (InterruptedException ex) {
+                            return;
+                        }
+                        continue;
+                    }
+
+                    long missed = missedCaptures(due, now, mInterval);
+                    mSkipped.addAndGet((int) missed);
+                    capture += missed + 1;
+                    trigger();
+                }
+            }
+        }
+    };
+
+    private void trigger() {
+
+        if(mWriting.get() || mCam2Lib.getState() != Cam2Lib.State.READY) {
+            mSkipped.incrementAndGet();
+            return;
+        }
+
+        try {
+            mCam2Lib.getImage();
+        } catch (RuntimeException ex) {
+            //The camera can close between the check and the capture
+            notifyFailed(ex);
+        }
+    }
+
+    private void notifyFailed(Throwable error) {
+        Log.d(Cam2LibTimeLapse.class.getName(), "Could not add capture because, " + error.getMessage(), error);
+        if(mListener != null) {
+            mListener.onFailed(error);
+        }
+    }
+
+    private final class Append implements Runnable {
+
+        private final Cam2LibFrame mFrame;
+
+        Append(Cam2LibFrame frame) {
+            this.mFrame = frame;
+        }
+
+        @Override
+        public void run() {
+
+            long timestamp = mFrame.getTimestamp();
+            int frameCount;
+            try {
+                mWriter.append(mFrame.getImage().getPlanes()[0].getBuffer());
+                frameCount = mWriter.getFrameCount();
+            } catch (IOException | RuntimeException ex) {
+                notifyFailed(ex);
+                return;
+            } finally {
+                mFrame.release();
+                mWriting.set(false);
+            }
+
+            if(mListener != null) {
+                mListener.onFrameAdded(frameCount, timestamp);
+            }
+        }
+    }
+}
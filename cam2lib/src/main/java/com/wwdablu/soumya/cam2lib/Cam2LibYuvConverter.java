@@ -0,0 +1,384 @@
+package com.wwdablu.soumya.cam2lib;
+
+import android.graphics.Bitmap;
+import android.graphics.ImageFormat;
+import android.media.Image;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Converts YUV_420_888 images, as delivered by frame streaming, into ARGB, NV21 or I420. Any
+ * row and pixel stride is supported. Each plane is read a row at a time and the image is split
+ * into stripes of rows which are converted in parallel. Output buffers passed in are reused when
+ * they are large enough. An instance converts one image at a time.
+ */
+public final class Cam2LibYuvConverter {
+
+    private static final int OUTPUT_ARGB = 0;
+    private static final int OUTPUT_NV21 = 1;
+    private static final int OUTPUT_I420 = 2;
+
+    private static ExecutorService sSharedExecutor;
+
+    private final Executor mExecutor;
+    private final Stripe[] mStripes;
+
+    private final Object mLock = new Object();
+    private int mStripesRemaining;
+    private RuntimeException mStripeFailure;
+
+    private ByteBuffer mYBuffer, mUBuffer, mVBuffer;
+    private int mYRowStride, mURowStride, mVRowStride;
+    private int mYPixelStride, mUPixelStride, mVPixelStride;
+    private int mWidth, mHeight;
+    private int mOutput;
+    private int[] mArgbOut;
+    private byte[] mBytesOut;
+
+    private int[] mBitmapPixels;
+
+    /**
+     * Create a converter which splits the work across a shared pool sized to the CPU count
+     */
+    public Cam2LibYuvConverter() {
+        this(sharedExecutor(), Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create a converter
+     * @param executor Executor on which the stripes are converted, null to convert on the
+     *                 calling thread only
+     * @param stripes Number of row stripes the image is split into
+     */
+    public Cam2LibYuvConverter(@Nullable Executor executor, int stripes) {
+        this.mExecutor = executor;
+        this.mStripes = new Stripe[executor == null ? 1 : Math.max(1, stripes)];
+        for (int index = 0; index < mStripes.length; index++) {
+            mStripes[index] = new Stripe();
+        }
+    }
+
+    /**
+     * Convert to ARGB_8888 pixels
+     * @param image YUV_420_888 image
+     * @param output Array to reuse, a new one is allocated if null or too small
+     * @return Array holding width x height pixels
+     */
+    public synchronized int[] toArgb(@NonNull Image image, @Nullable int[] output) {
+        int[] argb = ensure(output, image.getWidth() * image.getHeight());
+        convert(image, OUTPUT_ARGB, argb, null);
+        return argb;
+    }
+
+    /**
+     * Convert to an ARGB_8888 bitmap
+     * @param image YUV_420_888 image
+     * @param reuse Mutable ARGB_8888 bitmap of the image size to draw into, can be null
+     * @return The reused bitmap, or a new one if it could not be reused
+     */
+    public synchronized Bitmap toBitmap(@NonNull Image image, @Nullable Bitmap reuse) {
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+
+        Bitmap bitmap = reuse;
+        if(bitmap == null || bitmap.isRecycled() || !bitmap.isMutable() || bitmap.getWidth() != width ||
+                bitmap.getHeight() != height || bitmap.getConfig() != Bitmap.Config.ARGB_8888) {
+            bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        }
+
+        mBitmapPixels = ensure(mBitmapPixels, width * height);
+        convert(image, OUTPUT_ARGB, mBitmapPixels, null);
+        bitmap.setPixels(mBitmapPixels, 0, width, 0, 0, width, height);
+        return bitmap;
+    }
+
+    /**
+     * Convert to NV21, the Y plane followed by interleaved V and U
+     * @param image YUV_420_888 image
+     * @param output Array to reuse, a new one is allocated if null or too small
+     * @return Array holding the NV21 data
+     */
+    public synchronized byte[] toNv21(@NonNull Image image, @Nullable byte[] output) {
+        byte[] nv21 = ensure(output, yuv420Size(image.getWidth(), image.getHeight()));
+        convert(image, OUTPUT_NV21, null, nv21);
+        return nv21;
+    }
+
+    /**
+     * Convert to I420, the Y plane followed by the U and then the V plane
+     * @param image YUV_420_888 image
+     * @param output Array to reuse, a new one is allocated if null or too small
+     * @return Array holding the I420 data
+     */
+    public synchronized byte[] toI420(@NonNull Image image, @Nullable byte[] output) {
+        byte[] i420 = ensure(output, yuv420Size(image.getWidth(), image.getHeight()));
+        convert(image, OUTPUT_I420, null, i420);
+        return i420;
+    }
+
+    /**
+     * Size of a YUV 4:2:0 image with fully sub sampled chroma planes
+     * @return Bytes needed for NV21 or I420 data
+     */
+    public static int yuv420Size(int width, int height) {
+        return width * height + 2 * ((width + 1) / 2) * ((height + 1) / 2);
+    }
+
+    private void convert(Image image, int output, int[] argb, byte[] bytes) {
+
+        if(image.getFormat() != ImageFormat.YUV_420_888) {
+            throw new IllegalArgumentException("Expected YUV_420_888 image but got format " + image.getFormat());
+        }
+
+        Image.Plane[] planes = image.getPlanes();
+        convertPlanes(planes[0].getBuffer(), planes[0].getRowStride(), planes[0].getPixelStride(),
+                planes[1].getBuffer(), planes[1].getRowStride(), planes[1].getPixelStride(),
+                planes[2].getBuffer(), planes[2].getRowStride(), planes[2].getPixelStride(),
+                image.getWidth(), image.getHeight(), output, argb, bytes);
+    }
+
+    synchronized void convertPlanes(ByteBuffer y, int yRowStride, int yPixelStride,
+                                    ByteBuffer u, int uRowStride, int uPixelStride,
+                                    ByteBuffer v, int vRowStride, int vPixelStride,
+                                    int width, int height, int output, int[] argb, byte[] bytes) {
+
+        mYBuffer = y;
+        mUBuffer = u;
+        mVBuffer = v;
+        mYRowStride = yRowStride;
+        mURowStride = uRowStride;
+        mVRowStride = vRowStride;
+        mYPixelStride = yPixelStride;
+        mUPixelStride = uPixelStride;
+        mVPixelStride = vPixelStride;
+        mWidth = width;
+        mHeight = height;
+        mOutput = output;
+        mArgbOut = argb;
+        mBytesOut = bytes;
+
+        //Stripes start on even rows so that every stripe reads its own chroma rows
+        int stripeCount = Math.min(mStripes.length, Math.max(1, height / 2));
+        int rowsPerStripe = ((height / stripeCount) + 1) & ~1;
+
+        synchronized (mLock) {
+            mStripesRemaining = stripeCount;
+            mStripeFailure = null;
+        }
+
+        for (int index = 0; index < stripeCount; index++) {
+            Stripe stripe = mStripes[index];
+            stripe.mRowStart = Math.min(height, index * rowsPerStripe);
+            stripe.mRowEnd = index == stripeCount - 1 ? height : Math.min(height, (index + 1) * rowsPerStripe);
+
+            //The calling thread takes the last stripe itself
+            if(index < stripeCount - 1) {
+                mExecutor.execute(stripe);
+            }
+        }
+        mStripes[stripeCount - 1].run();
+
+        try {
+            synchronized (mLock) {
+                while (mStripesRemaining > 0) {
+                    mLock.wait();
+                }
+
+                if(mStripeFailure != null) {
+                    throw mStripeFailure;
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while converting the image", ex);
+        } finally {
+            mYBuffer = mUBuffer = mVBuffer = null;
+            mArgbOut = null;
+            mBytesOut = null;
+        }
+    }
+
+    private void onStripeDone(RuntimeException failure) {
+        synchronized (mLock) {
+            if(failure != null && mStripeFailure == null) {
+                mStripeFailure = failure;
+            }
+            mStripesRemaining--;
+            mLock.notifyAll();
+        }
+    }
+
+    private final class Stripe implements Runnable {
+
+        private int mRowStart;
+        private int mRowEnd;
+
+        private byte[] mYRow = new byte[0];
+        private byte[] mURow = new byte[0];
+        private byte[] mVRow = new byte[0];
+
+        @Override
+        public void run() {
+            RuntimeException failure = null;
+            try {
+                convertRows();
+            } catch (RuntimeException ex) {
+                failure = ex;
+            } finally {
+                onStripeDone(failure);
+            }
+        }
+
+        private void convertRows() {
+
+            if(mRowStart >= mRowEnd) {
+                return;
+            }
+
+            //Each stripe needs its own position in the buffers
+            ByteBuffer y = mYBuffer.duplicate();
+            ByteBuffer u = mUBuffer.duplicate();
+            ByteBuffer v = mVBuffer.duplicate();
+
+            int chromaWidth = (mWidth + 1) / 2;
+            int yLength = (mWidth - 1) * mYPixelStride + 1;
+            int uLength = (chromaWidth - 1) * mUPixelStride + 1;
+            int vLength = (chromaWidth - 1) * mVPixelStride + 1;
+
+            if(mYRow.length < yLength) mYRow = new byte[yLength];
+            if(mURow.length < uLength) mURow = new byte[uLength];
+            if(mVRow.length < vLength) mVRow = new byte[vLength];
+
+            int yBase = y.position();
+            int uBase = u.position();
+            int vBase = v.position();
+
+            for (int row = mRowStart; row < mRowEnd; row++) {
+
+                boolean readChroma = (row & 1) == 0 || row == mRowStart;
+                int chromaRow = row >> 1;
+
+                if(mOutput == OUTPUT_ARGB) {
+                    y.position(yBase + row * mYRowStride);
+                    y.get(mYRow, 0, yLength);
+
+                    if(readChroma) {
+                        u.position(uBase + chromaRow * mURowStride);
+                        u.get(mURow, 0, uLength);
+                        v.position(vBase + chromaRow * mVRowStride);
+                        v.get(mVRow, 0, vLength);
+                    }
+
+                    yuvRowToArgb(mYRow, mYPixelStride, mURow, mUPixelStride, mVRow, mVPixelStride,
+                            mArgbOut, row * mWidth, mWidth);
+                    continue;
+                }
+
+                //Luma is the same for NV21 and I420
+                y.position(yBase + row * mYRowStride);
+                if(mYPixelStride == 1) {
+                    y.get(mBytesOut, row * mWidth, mWidth);
+                } else {
+                    y.get(mYRow, 0, yLength);
+                    gather(mYRow, mYPixelStride, mBytesOut, row * mWidth, 1, mWidth);
+                }
+
+                if((row & 1) != 0) {
+                    continue;
+                }
+
+                u.position(uBase + chromaRow * mURowStride);
+                v.position(vBase + chromaRow * mVRowStride);
+                int chromaStart = mWidth * mHeight;
+
+                if(mOutput == OUTPUT_NV21) {
+                    u.get(mURow, 0, uLength);
+                    v.get(mVRow, 0, vLength);
+                    int offset = chromaStart + chromaRow * chromaWidth * 2;
+                    gather(mVRow, mVPixelStride, mBytesOut, offset, 2, chromaWidth);
+                    gather(mURow, mUPixelStride, mBytesOut, offset + 1, 2, chromaWidth);
+                } else {
+                    int chromaHeight = (mHeight + 1) / 2;
+                    int uOffset = chromaStart + chromaRow * chromaWidth;
+                    int vOffset = uOffset + chromaWidth * chromaHeight;
+                    copyChromaRow(u, mURow, uLength, mUPixelStride, uOffset, chromaWidth);
+                    copyChromaRow(v, mVRow, vLength, mVPixelStride, vOffset, chromaWidth);
+                }
+            }
+        }
+
+        private void copyChromaRow(ByteBuffer plane, byte[] scratch, int length, int pixelStride,
+                                   int offset, int count) {
+            if(pixelStride == 1) {
+                plane.get(mBytesOut, offset, count);
+            } else {
+                plane.get(scratch, 0, length);
+                gather(scratch, pixelStride, mBytesOut, offset, 1, count);
+            }
+        }
+    }
+
+    private static void gather(byte[] source, int sourceStride, byte[] target, int offset, int targetStride, int count) {
+        for (int index = 0, sourceIndex = 0, targetIndex = offset; index < count;
+             index++, sourceIndex += sourceStride, targetIndex += targetStride) {
+            target[targetIndex] = source[sourceIndex];
+        }
+    }
+
+    /**
+     * BT.601 limited range to RGB in 10 bit fixed point, same coefficients as the platform's
+     * YUV to RGB intrinsic.
+     */
+    private static void yuvRowToArgb(byte[] yRow, int yPixelStride, byte[] uRow, int uPixelStride,
+                                     byte[] vRow, int vPixelStride, int[] argb, int offset, int width) {
+
+        for (int x = 0; x < width; x++) {
+
+            int luma = (yRow[x * yPixelStride] & 0xff) - 16;
+            int cb = (uRow[(x >> 1) * uPixelStride] & 0xff) - 128;
+            int cr = (vRow[(x >> 1) * vPixelStride] & 0xff) - 128;
+
+            int y1192 = luma < 0 ? 0 : 1192 * luma;
+            int r = y1192 + 1634 * cr;
+            int g = y1192 - 833 * cr - 400 * cb;
+            int b = y1192 + 2066 * cb;
+
+            r = r < 0 ? 0 : (r > 262143 ? 262143 : r);
+            g = g < 0 ? 0 : (g > 262143 ? 262143 : g);
+            b = b < 0 ? 0 : (b > 262143 ? 262143 : b);
+
+            argb[offset + x] = 0xff000000 | ((r << 6) & 0xff0000) | ((g >> 2) & 0xff00) | ((b >> 10) & 0xff);
+        }
+    }
+
+    private static int[] ensure(int[] array, int length) {
+        return array != null && array.length >= length ? array : new int[length];
+    }
+
+    private static byte[] ensure(byte[] array, int length) {
+        return array != null && array.length >= length ? array : new byte[length];
+    }
+
+    private static synchronized Executor sharedExecutor() {
+
+        if(sSharedExecutor == null) {
+            sSharedExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull Runnable runnable) {
+                    Thread thread = new Thread(runnable, Cam2LibYuvConverter.class.getName());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        return sSharedExecutor;
+    }
+}
@@ -0,0 +1,66 @@
+package com.wwdablu.soumya.cam2lib;
+
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Handler;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.view.Surface;
+
+/**
+ * Frames of a camera stream, received through an ImageReader
+ */
+final class Camera2FrameSource implements FrameSource<Image>, ImageReader.OnImageAvailableListener {
+
+    private final ImageReader mImageReader;
+    private final Handler mCameraHandler;
+    private volatile Listener mListener;
+
+    Camera2FrameSource(int width, int height, int format, int maxImages, @NonNull Handler cameraHandler) {
+        this.mImageReader = ImageReader.newInstance(width, height, format, maxImages);
+        this.mCameraHandler = cameraHandler;
+    }
+
+    Surface getSurface() {
+        return mImageReader.getSurface();
+    }
+
+    @Override
+    public void setListener(@Nullable Listener listener) {
+        mListener = listener;
+        mImageReader.setOnImageAvailableListener(listener == null ? null : this, listener == null ? null : mCameraHandler);
+    }
+
+    @Override
+    public Image acquireNextFrame() {
+        return mImageReader.acquireNextImage();
+    }
+
+    @Override
+    public Image acquireLatestFrame() {
+        return mImageReader.acquireLatestImage();
+    }
+
+    @Override
+    public void releaseFrame(Image frame) {
+        frame.close();
+    }
+
+    @Override
+    public int getMaxFrames() {
+        return mImageReader.getMaxImages();
+    }
+
+    @Override
+    public void close() {
+        mImageReader.close();
+    }
+
+    @Override
+    public void onImageAvailable(ImageReader imageReader) {
+        Listener listener = mListener;
+        if(listener != null) {
+            listener.onFrameAvailable();
+        }
+    }
+}
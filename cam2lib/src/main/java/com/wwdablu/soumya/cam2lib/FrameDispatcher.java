@@ -0,0 +1,319 @@
+package com.wwdablu.soumya.cam2lib;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Moves frames from a {@link FrameSource} to a consumer as per a backpressure {@link Policy}.
+ * Frames are acquired on the thread of the source and delivered one at a time, in order, on the
+ * delivery executor, so a slow consumer never blocks the source. Frames held by the
+ * consumer count towards the depth, once all of it is held no more frames are acquired until
+ * one is released. Has no dependency on the Android framework.
+ * @param <F> Type of the frame
+ */
+final class FrameDispatcher<F> implements FrameSource.Listener {
+
+    /**
+     * The policies of {@link Cam2Lib.Backpressure}, declared here so that the dispatcher does not
+     * need Cam2Lib and can be compiled on its own, as in the benchmarks
+     */
+    enum Policy {
+        KEEP_LATEST,
+        BOUNDED_QUEUE,
+        BLOCK
+    }
+
+    interface Consumer<F> {
+        /**
+         * Called on the delivery executor. The frame is to be given back using
+         * {@link FrameDispatcher#release(Object)}, not necessarily before returning, and also
+         * when the consumer throws.
+         */
+        void onFrame(@NonNull F frame);
+    }
+
+    interface Stats {
+        void onFrameDropped();
+
+        void onHeldLimitReached();
+
+        /**
+         * The consumer threw while handling a frame, the delivery continues with the next one
+         */
+        void onConsumerFailed(@NonNull RuntimeException error);
+    }
+
+    private final FrameSource<F> mSource;
+    private final Policy mPolicy;
+    private final int mDepth;
+    private final Consumer<F> mConsumer;
+    private final Executor mSourceExecutor;
+
+    private final Object mLock = new Object();
+    private final ArrayDeque<F> mPending;
+
+    private volatile Executor mDeliveryExecutor;
+    private volatile Executor mFallbackExecutor;
+    private volatile Stats mStats;
+
+    private int mAcquired;
+    private long mDelivered;
+    private long mDropped;
+    private long mHeldLimitReached;
+    private boolean mStarved;
+    private boolean mDeliveryScheduled;
+    private boolean mStopped;
+
+    /**
+     * @param source Source of the frames, its listener is taken over
+     * @param policy What to do when the consumer cannot keep up
+     * @param depth Frames which can be acquired at a time, at most the maximum of the source
+     * @param consumer Receives the frames
+     * @param sourceExecutor Runs on the thread of the source, used to acquire again once a frame is released
+     * @param deliveryExecutor Runs the consumer
+     */
+    FrameDispatcher(@NonNull FrameSource<F> source, @NonNull Policy policy, int depth,
+                    @NonNull Consumer<F> consumer, @NonNull Executor sourceExecutor,
+                    @NonNull Executor deliveryExecutor) {
+        this.mSource = source;
+        this.mPolicy = policy;
+        this.mDepth = Math.max(1, Math.min(depth, source.getMaxFrames()));
+        this.mConsumer = consumer;
+        this.mSourceExecutor = sourceExecutor;
+        this.mDeliveryExecutor = deliveryExecutor;
+        this.mFallbackExecutor = deliveryExecutor;
+        this.mPending = new ArrayDeque<>(mDepth);
+    }
+
+    void start() {
+        mSource.setListener(this);
+    }
+
+    void setStats(Stats stats) {
+        mStats = stats;
+    }
+
+    /**
+     * Executor on which the consumer runs instead of the one given at creation. Frames are
+     * still delivered one at a time and in order.
+     * @param executor Delivery executor, null to use the one given at creation
+     */
+    void setDeliveryExecutor(Executor executor) {
+        mDeliveryExecutor = executor == null ? mFallbackExecutor : executor;
+    }
+
+    long getDeliveredCount() {
+        synchronized (mLock) {
+            return mDelivered;
+        }
+    }
+
+    long getDroppedCount() {
+        synchronized (mLock) {
+            return mDropped;
+        }
+    }
+
+    long getHeldLimitCount() {
+        synchronized (mLock) {
+            return mHeldLimitReached;
+        }
+    }
+
+    /**
+     * Frames acquired from the source and not yet released
+     */
+    int getAcquiredCount() {
+        synchronized (mLock) {
+            return mAcquired;
+        }
+    }
+
+    /**
+     * Stop the delivery. If the consumer still holds frames, the source is closed once those
+     * have been released.
+     */
+    void stop() {
+
+        synchronized (mLock) {
+
+            if(mStopped) {
+                return;
+            }
+
+            mStopped = true;
+            mSource.setListener(null);
+
+            while (!mPending.isEmpty()) {
+                mSource.releaseFrame(mPending.poll());
+                mAcquired--;
+            }
+
+            if(mAcquired == 0) {
+                mSource.close();
+            }
+        }
+    }
+
+    /**
+     * Give back a frame delivered to the consumer
+     */
+    void release(@NonNull F frame) {
+
+        synchronized (mLock) {
+            mSource.releaseFrame(frame);
+            mAcquired--;
+
+            if(mStopped) {
+                if(mAcquired == 0) {
+                    mSource.close();
+                }
+                return;
+            }
+
+            if(mStarved || mPolicy == Policy.BLOCK) {
+                mStarved = false;
+                mSourceExecutor.execute(mPull);
+            }
+        }
+    }
+
+    @Override
+    public void onFrameAvailable() {
+
+        synchronized (mLock) {
+
+            if(mStopped) {
+                return;
+            }
+
+            switch (mPolicy) {
+                case KEEP_LATEST:
+                    //Anything not yet delivered is stale now, make room for the newest frame
+                    dropPending(mPending.size());
+                    if(canAcquire()) {
+                        enqueue(mSource.acquireLatestFrame());
+                    }
+                    break;
+
+                case BOUNDED_QUEUE:
+                    //One frame can be with the consumer, the rest wait in the queue
+                    if(mPending.size() >= mDepth - 1) {
+                        dropPending(1);
+                    }
+                    if(canAcquire()) {
+                        enqueue(mSource.acquireNextFrame());
+                    }
+                    break;
+
+                case BLOCK:
+                    //Frames stay in the source until the consumer returns one
+                    while (canAcquire()) {
+                        F frame = mSource.acquireNextFrame();
+                        if(frame == null) {
+                            break;
+                        }
+                        enqueue(frame);
+                    }
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Acquiring beyond the depth would throw, so frames held by the consumer apply
+     * backpressure by leaving new frames in the source until one is released.
+     */
+    private boolean canAcquire() {
+
+        if(mAcquired < mDepth) {
+            return true;
+        }
+
+        if(!mStarved) {
+            mStarved = true;
+            mHeldLimitReached++;
+
+            Stats stats = mStats;
+            if(stats != null) {
+                stats.onHeldLimitReached();
+            }
+        }
+        return false;
+    }
+
+    private void enqueue(F frame) {
+
+        if(frame == null) {
+            return;
+        }
+
+        mAcquired++;
+        mPending.add(frame);
+
+        if(!mDeliveryScheduled) {
+            mDeliveryScheduled = true;
+            scheduleDelivery();
+        }
+    }
+
+    private void scheduleDelivery() {
+        try {
+            mDeliveryExecutor.execute(mDeliver);
+        } catch (RejectedExecutionException ex) {
+            mFallbackExecutor.execute(mDeliver);
+        }
+    }
+
+    private void dropPending(int count) {
+        for (int index = 0; index < count && !mPending.isEmpty(); index++) {
+            mSource.releaseFrame(mPending.poll());
+            mAcquired--;
+            mDropped++;
+
+            Stats stats = mStats;
+            if(stats != null) {
+                stats.onFrameDropped();
+            }
+        }
+    }
+
+    private final Runnable mPull = new Runnable() {
+        @Override
+        public void run() {
+            onFrameAvailable();
+        }
+    };
+
+    private final Runnable mDeliver = new Runnable() {
+        @Override
+        public void run() {
+
+            while (true) {
+
+                F frame;
+                synchronized (mLock) {
+                    frame = mPending.poll();
+                    if(frame == null) {
+                        mDeliveryScheduled = false;
+                        return;
+                    }
+                    mDelivered++;
+                }
+
+                //An exception escaping here would leave the delivery scheduled and stop it for good
+                try {
+                    mConsumer.onFrame(frame);
+                } catch (RuntimeException ex) {
+                    Stats stats = mStats;
+                    if(stats != null) {
+                        stats.onConsumerFailed(ex);
+                    }
+                }
+            }
+        }
+    };
+}
@@ -0,0 +1,48 @@
+package com.wwdablu.soumya.cam2lib;
+
+import android.support.annotation.Nullable;
+
+/**
+ * Source of frames, modelled on ImageReader. Separates the frame handling of the library from
+ * the camera, so that it can run against a synthetic source off the device.
+ * @param <F> Type of the frame
+ */
+interface FrameSource<F> {
+
+    interface Listener {
+        /**
+         * One or more frames can be acquired, called on the thread of the source
+         */
+        void onFrameAvailable();
+    }
+
+    void setListener(@Nullable Listener listener);
+
+    /**
+     * Acquire the oldest frame waiting
+     * @return Frame or null when none is waiting
+     * @throws IllegalStateException When {@link #getMaxFrames()} frames are already acquired
+     */
+    @Nullable
+    F acquireNextFrame();
+
+    /**
+     * Acquire the newest frame waiting, the older ones are released
+     * @return Frame or null when none is waiting
+     * @throws IllegalStateException When {@link #getMaxFrames()} frames are already acquired
+     */
+    @Nullable
+    F acquireLatestFrame();
+
+    void releaseFrame(F frame);
+
+    /**
+     * Maximum number of frames which can be acquired at a time
+     */
+    int getMaxFrames();
+
+    /**
+     * Stop producing frames and free the buffers
+     */
+    void close();
+}
@@ -0,0 +1,216 @@
+package com.wwdablu.soumya.cam2lib;
+
+import android.graphics.ImageFormat;
+import android.media.Image;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.support.annotation.NonNull;
+import android.util.Log;
+import android.util.Size;
+import android.view.Surface;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Streams YUV_420_888 frames from the repeating request to a {@link Cam2LibFrameListener}.
+ * Frames are acquired on the camera thread and delivered on a dedicated thread, so a slow
+ * consumer never runs on, or blocks, the thread that drives the camera. Frames retained by the
+ * consumer count towards the depth, once all of it is held no more frames are acquired. The
+ * backpressure itself is handled by a {@link FrameDispatcher}.
+ */
+final class FrameStreamer implements FrameDispatcher.Stats {
+
+    private final FrameDispatcher.Policy mPolicy;
+    private final int mDepth;
+    private final Cam2LibFrameListener mListener;
+
+    private final Object mLock = new Object();
+
+    private volatile Cam2LibMetrics mMetrics;
+    private volatile boolean mTrackLeaks;
+    private Executor mDeliveryExecutor;
+
+    private Camera2FrameSource mSource;
+    private FrameDispatcher<Image> mDispatcher;
+    private HandlerThread mDeliveryThread;
+
+    FrameStreamer(@NonNull Cam2Lib.Backpressure policy, int depth, @NonNull Cam2LibFrameListener listener) {
+        this.mPolicy = toPolicy(policy);
+        this.mDepth = Math.max(2, depth);
+        this.mListener = listener;
+    }
+
+    /**
+     * Create the reader for the given size and start the delivery thread.
+     * @param size Size of the YUV stream
+     * @param cameraHandler Handler of the camera thread on which the frames are acquired
+     */
+    void start(@NonNull Size size, @NonNull final Handler cameraHandler) {
+
+        stop();
+
+        synchronized (mLock) {
+            mDeliveryThread = new HandlerThread(FrameStreamer.class.getName());
+            mDeliveryThread.start();
+            final Handler deliveryHandler = new Handler(mDeliveryThread.getLooper());
+
+            Delivery delivery = new Delivery();
+            mSource = new Camera2FrameSource(size.getWidth(), size.getHeight(), ImageFormat.YUV_420_888, mDepth, cameraHandler);
+            mDispatcher = new FrameDispatcher<>(mSource, mPolicy, mDepth, delivery, new Executor() {
+                @Override
+                public void execute(@NonNull Runnable runnable) {
+                    cameraHandler.post(runnable);
+                }
+            }, new Executor() {
+                @Override
+                public void execute(@NonNull Runnable runnable) {
+                    deliveryHandler.post(runnable);
+                }
+            });
+            delivery.mDispatcher = mDispatcher;
+
+            mDispatcher.setStats(this);
+            mDispatcher.setDeliveryExecutor(mDeliveryExecutor);
+            mDispatcher.start();
+        }
+    }
+
+    void setMetrics(Cam2LibMetrics metrics) {
+        mMetrics = metrics;
+    }
+
+    void setTrackLeaks(boolean trackLeaks) {
+        mTrackLeaks = trackLeaks;
+    }
+
+    /**
+     * Executor on which the frames are delivered instead of the delivery thread. Frames are
+     * still delivered one at a time and in order.
+     * @param executor Delivery executor, null to use the delivery thread
+     */
+    void setDeliveryExecutor(Executor executor) {
+        synchronized (mLock) {
+            mDeliveryExecutor = executor;
+            if(mDispatcher != null) {
+                mDispatcher.setDeliveryExecutor(executor);
+            }
+        }
+    }
+
+    /**
+     * Surface to be added to the session and to the repeating request
+     * @return Surface of the YUV reader
+     */
+    Surface getSurface() {
+        synchronized (mLock) {
+            return mSource == null ? null : mSource.getSurface();
+        }
+    }
+
+    /**
+     * Number of frames dropped because the consumer could not keep up
+     * @return Dropped frame count since start
+     */
+    long getDroppedFrameCount() {
+        synchronized (mLock) {
+            return mDispatcher == null ? 0 : mDispatcher.getDroppedCount();
+        }
+    }
+
+    /**
+     * Number of times a frame could not be acquired because the consumer held the whole depth
+     * @return Count since start
+     */
+    long getHeldLimitCount() {
+        synchronized (mLock) {
+            return mDispatcher == null ? 0 : mDispatcher.getHeldLimitCount();
+        }
+    }
+
+    /**
+     * Stop the delivery and release the reader. If the consumer is still working on a frame,
+     * the reader is closed once that frame has been returned.
+     */
+    void stop() {
+
+        synchronized (mLock) {
+
+            if(mDeliveryThread == null) {
+                return;
+            }
+
+            mDispatcher.stop();
+            mDeliveryThread.quitSafely();
+            mDeliveryThread = null;
+            mSource = null;
+        }
+    }
+
+    @Override
+    public void onFrameDropped() {
+        Cam2LibMetrics metrics = mMetrics;
+        if(metrics != null) {
+            metrics.onFrameDropped();
+        }
+    }
+
+    @Override
+    public void onHeldLimitReached() {
+        Cam2LibMetrics metrics = mMetrics;
+        if(metrics != null) {
+            metrics.onHeldLimitReached();
+        }
+    }
+
+    @Override
+    public void onConsumerFailed(@NonNull RuntimeException error) {
+        Log.e(FrameStreamer.class.getName(), "Frame callback failed, continuing with the next frame", error);
+    }
+
+    private static FrameDispatcher.Policy toPolicy(Cam2Lib.Backpressure backpressure) {
+        switch (backpressure) {
+            case BOUNDED_QUEUE:
+                return FrameDispatcher.Policy.BOUNDED_QUEUE;
+            case BLOCK:
+                return FrameDispatcher.Policy.BLOCK;
+            default:
+                return FrameDispatcher.Policy.KEEP_LATEST;
+        }
+    }
+
+    /**
+     * Delivery of one start, frames released after a restart go back to the dispatcher which
+     * delivered them
+     */
+    private final class Delivery implements FrameDispatcher.Consumer<Image>, Cam2LibFrame.Owner {
+
+        FrameDispatcher<Image> mDispatcher;
+
+        @Override
+        public void onFrame(@NonNull Image image) {
+
+            Cam2LibFrame frame = new Cam2LibFrame(image, this, mTrackLeaks);
+
+            Cam2LibMetrics metrics = mMetrics;
+            long startedAt = metrics == null ? 0 : Cam2LibMetrics.now();
+            if(metrics != null) {
+                metrics.beginSection("Cam2Lib#onFrame");
+            }
+
+            try {
+                mListener.onFrame(frame);
+            } finally {
+                if(metrics != null) {
+                    metrics.endSection();
+                    metrics.onFrameCallback(startedAt);
+                }
+                frame.release();
+            }
+        }
+
+        @Override
+        public void onFrameReleased(@NonNull Cam2LibFrame frame) {
+            mDispatcher.release(frame.peekImage());
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.wwdablu.soumya.cam2lib;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free histogram of durations with microsecond resolution. Buckets are exponential with
+ * four linear sub buckets per power of two, so any percentile is within 25% of the real value.
+ */
+final class LatencyHistogram {
+
+    private static final int LINEAR_BUCKETS = 8;
+    private static final int SUB_BUCKETS = 4;
+    private static final int BUCKETS = LINEAR_BUCKETS + (63 - 3) * SUB_BUCKETS;
+
+    private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong mCount = new AtomicLong();
+    private final AtomicLong mSum = new AtomicLong();
+    private final AtomicLong mSumOfSquares = new AtomicLong();
+    private final AtomicLong mMax = new AtomicLong();
+
+    void recordNanos(long nanos) {
+        recordMicros(nanos / 1000);
+    }
+
+    void recordMicros(long micros) {
+
+        if(micros < 0) {
+            return;
+        }
+
+        mBuckets.incrementAndGet(bucketOf(micros));
+        mCount.incrementAndGet();
+        mSum.addAndGet(micros);
+        mSumOfSquares.addAndGet(micros * micros);
+
+        long max;
+        while (micros > (max = mMax.get())) {
+            if(mMax.compareAndSet(max, micros)) {
+                break;
+            }
+        }
+    }
+
+    long getCount() {
+        return mCount.get();
+    }
+
+    long getMaxMicros() {
+        return mMax.get();
+    }
+
+    double getMeanMicros() {
+        long count = mCount.get();
+        return count == 0 ? 0 : (double) mSum.get() / count;
+    }
+
+    double getStdDevMicros() {
+        long count = mCount.get();
+        if(count < 2) {
+            return 0;
+        }
+
+        double mean = (double) mSum.get() / count;
+        double variance = (double) mSumOfSquares.get() / count - mean * mean;
+        return variance <= 0 ? 0 : Math.sqrt(variance);
+    }
+
+    /**
+     * Value at the percentile, taken as the middle of the bucket it falls in
+     * @param percentile Percentile between 0 and 100
+     * @return Value in microseconds, 0 when nothing has been recorded
+     */
+    long getPercentileMicros(double percentile) {
+
+        long count = mCount.get();
+        if(count == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100d));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += mBuckets.get(bucket);
+            if(seen >= rank) {
+                return Math.min(mMax.get(), (lowerBoundOf(bucket) + lowerBoundOf(bucket + 1)) / 2);
+            }
+        }
+
+        return mMax.get();
+    }
+
+    void reset() {
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            mBuckets.set(bucket, 0);
+        }
+        mCount.set(0);
+        mSum.set(0);
+        mSumOfSquares.set(0);
+        mMax.set(0);
+    }
+
+    static int bucketOf(long micros) {
+
+        if(micros < LINEAR_BUCKETS) {
+            return (int) micros;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int subBucket = (int) (micros >> (exponent - 2)) & (SUB_BUCKETS - 1);
+        return LINEAR_BUCKETS + (exponent - 3) * SUB_BUCKETS + subBucket;
+    }
+
+    static long lowerBoundOf(int bucket) {
+
+        if(bucket < LINEAR_BUCKETS) {
+            return bucket;
+        }
+
+        int exponent = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + 3;
+        int subBucket = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + subBucket) << (exponent - 2);
+    }
+}
@@ -0,0 +1,36 @@
+package com.wwdablu.soumya.cam2lib;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Frame produced by a {@link SyntheticFrameSource}. YUV frames have three planes laid out like a
+ * YUV_420_888 image, JPEG frames have a single plane with the encoded bytes.
+ */
+final class SyntheticFrame {
+
+    final int format;
+    final int width;
+    final int height;
+    final ByteBuffer[] planes;
+    final int[] rowStrides;
+    final int[] pixelStrides;
+
+    /**
+     * Position of the frame in the sequence produced, starting at 0
+     */
+    long index;
+
+    /**
+     * Time the frame was produced as per System.nanoTime(), stands in for the sensor timestamp
+     */
+    long timestamp;
+
+    SyntheticFrame(int format, int width, int height, ByteBuffer[] planes, int[] rowStrides, int[] pixelStrides) {
+        this.format = format;
+        this.width = width;
+        this.height = height;
+        this.planes = planes;
+        this.rowStrides = rowStrides;
+        this.pixelStrides = pixelStrides;
+    }
+}
@@ -0,0 +1,272 @@
+package com.wwdablu.soumya.cam2lib;
+
+import android.graphics.ImageFormat;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Produces deterministic frames at a fixed rate without a camera, to run the frame handling off
+ * the device. Behaves like an ImageReader: the buffers are allocated once, a frame produced while
+ * all of them are in use is skipped, as a camera would drop it, and acquiring more than the
+ * maximum throws. Has no dependency on the Android framework.
+ * <p>
+ * YUV_420_888 frames have a padded luma row stride and interleaved chroma with a pixel stride
+ * of 2, like most camera HALs. The luma is a diagonal ramp shifted by one per frame. JPEG frames
+ * carry a payload framed by the JPEG start and end markers, sized like a compressed image, which
+ * is meant for I/O and is not decodable.
+ */
+final class SyntheticFrameSource implements FrameSource<SyntheticFrame> {
+
+    private static final int ROW_ALIGNMENT = 64;
+
+    private final int mFormat;
+    private final int mWidth;
+    private final int mHeight;
+    private final int mMaxFrames;
+    private final long mPeriodNanos;
+
+    private final ArrayDeque<SyntheticFrame> mFree;
+    private final ArrayDeque<SyntheticFrame> mQueued;
+    private final byte[] mRamp;
+    private final ScheduledExecutorService mProducer;
+    private final Executor mExecutor;
+
+    private Listener mListener;
+    private boolean mProducing;
+    private boolean mClosed;
+    private int mAcquired;
+    private long mNextIndex;
+    private long mSkipped;
+
+    /**
+     * @param width Width of the frames
+     * @param height Height of the frames
+     * @param format ImageFormat.YUV_420_888 or ImageFormat.JPEG
+     * @param maxFrames Buffers allocated, which is the maximum frames acquired at a time
+     * @param fps Frames produced per second
+     */
+    SyntheticFrameSource(int width, int height, int format, int maxFrames, int fps) {
+
+        if(format != ImageFormat.YUV_420_888 && format != ImageFormat.JPEG) {
+            throw new IllegalArgumentException("Only YUV_420_888 and JPEG are supported");
+        }
+
+        this.mFormat = format;
+        this.mWidth = width;
+        this.mHeight = height;
+        this.mMaxFrames = Math.max(1, maxFrames);
+        this.mPeriodNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, fps);
+        this.mFree = new ArrayDeque<>(mMaxFrames);
+        this.mQueued = new ArrayDeque<>(mMaxFrames);
+
+        this.mRamp = new byte[width + 256];
+        for (int index = 0; index < mRamp.length; index++) {
+            mRamp[index] = (byte) index;
+        }
+
+        for (int index = 0; index < mMaxFrames; index++) {
+            mFree.add(format == ImageFormat.JPEG ? allocateJpeg() : allocateYuv());
+        }
+
+        this.mProducer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable runnable) {
+                return new Thread(runnable, SyntheticFrameSource.class.getName());
+            }
+        });
+        this.mExecutor = new Executor() {
+            @Override
+            public void execute(@NonNull Runnable runnable) {
+                if(!mProducer.isShutdown()) {
+                    mProducer.execute(runnable);
+                }
+            }
+        };
+    }
+
+    /**
+     * Executor of the thread which produces the frames and calls the listener, the equivalent
+     * of the camera thread
+     */
+    Executor getExecutor() {
+        return mExecutor;
+    }
+
+    /**
+     * Frames produced so far, including the skipped ones
+     */
+    synchronized long getProducedCount() {
+        return mNextIndex;
+    }
+
+    /**
+     * Frames which could not be produced as all the buffers were in use
+     */
+    synchronized long getSkippedCount() {
+        return mSkipped;
+    }
+
+    @Override
+    public synchronized void setListener(@Nullable Listener listener) {
+        mListener = listener;
+        if(listener != null && !mProducing && !mClosed) {
+            mProducing = true;
+            mProducer.scheduleAtFixedRate(mProduce, 0, mPeriodNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public synchronized SyntheticFrame acquireNextFrame() {
+        checkCanAcquire();
+        SyntheticFrame frame = mQueued.poll();
+        if(frame != null) {
+            mAcquired++;
+        }
+        return frame;
+    }
+
+    @Override
+    public synchronized SyntheticFrame acquireLatestFrame() {
+        checkCanAcquire();
+        SyntheticFrame frame = mQueued.pollLast();
+        if(frame == null) {
+            return null;
+        }
+
+        while (!mQueued.isEmpty()) {
+            mFree.add(mQueued.poll());
+        }
+        mAcquired++;
+        return frame;
+    }
+
+    @Override
+    public synchronized void releaseFrame(SyntheticFrame frame) {
+        mAcquired--;
+        if(!mClosed) {
+            mFree.add(frame);
+        }
+    }
+
+    @Override
+    public int getMaxFrames() {
+        return mMaxFrames;
+    }
+
+    @Override
+    public synchronized void close() {
+        mClosed = true;
+        mListener = null;
+        mProducer.shutdownNow();
+        mFree.clear();
+        mQueued.clear();
+    }
+
+    private void checkCanAcquire() {
+        if(mAcquired >= mMaxFrames) {
+            throw new IllegalStateException("maxImages (" + mMaxFrames + ") has already been acquired");
+        }
+    }
+
+    private final Runnable mProduce = new Runnable() {
+        @Override
+        public void run() {
+
+            Listener listener;
+            synchronized (SyntheticFrameSource.this) {
+
+                if(mClosed) {
+                    return;
+                }
+
+                long index = mNextIndex++;
+                SyntheticFrame frame = mFree.poll();
+                if(frame == null) {
+                    mSkipped++;
+                    return;
+                }
+
+                frame.index = index;
+                frame.timestamp = System.nanoTime();
+                fill(frame);
+                mQueued.add(frame);
+                listener = mListener;
+            }
+
+            if(listener != null) {
+                listener.onFrameAvailable();
+            }
+        }
+    };
+
+    private void fill(SyntheticFrame frame) {
+
+        if(mFormat == ImageFormat.JPEG) {
+            //The index makes every payload unique
+            ByteBuffer buffer = frame.planes[0];
+            buffer.putLong(20, frame.index);
+            return;
+        }
+
+        ByteBuffer luma = frame.planes[0];
+        int rowStride = frame.rowStrides[0];
+        for (int row = 0; row < mHeight; row++) {
+            luma.position(row * rowStride);
+            luma.put(mRamp, (int) ((row + frame.index) & 0xff), mWidth);
+        }
+        luma.position(0);
+    }
+
+    private SyntheticFrame allocateYuv() {
+
+        int lumaStride = align(mWidth);
+        int chromaStride = align(mWidth);
+        int chromaRows = (mHeight + 1) / 2;
+
+        ByteBuffer luma = ByteBuffer.allocateDirect(lumaStride * mHeight);
+
+        //Interleaved VU like NV21, the U plane starts one byte into the same memory
+        ByteBuffer chroma = ByteBuffer.allocateDirect(chromaStride * chromaRows);
+        for (int index = 0; index < chroma.capacity(); index++) {
+            chroma.put(index, (byte) (index % 2 == 0 ? 160 : 96));
+        }
+
+        ByteBuffer v = chroma.duplicate();
+        v.limit(chromaStride * (chromaRows - 1) + 2 * ((mWidth + 1) / 2) - 1);
+        ByteBuffer u = chroma.duplicate();
+        u.position(1);
+        u.limit(v.limit() + 1);
+        u = u.slice();
+
+        return new SyntheticFrame(ImageFormat.YUV_420_888, mWidth, mHeight,
+                new ByteBuffer[] { luma, u, v.slice() },
+                new int[] { lumaStride, chromaStride, chromaStride }, new int[] { 1, 2, 2 });
+    }
+
+    private SyntheticFrame allocateJpeg() {
+
+        //Roughly the size of a JPEG of good quality
+        int length = Math.max(64, mWidth * mHeight / 8);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(length);
+        buffer.put(0, (byte) 0xFF).put(1, (byte) 0xD8);
+        for (int index = 2; index < length - 2; index++) {
+            buffer.put(index, (byte) (index % 0xFE));
+        }
+        buffer.put(length - 2, (byte) 0xFF).put(length - 1, (byte) 0xD9);
+
+        return new SyntheticFrame(ImageFormat.JPEG, mWidth, mHeight, new ByteBuffer[] { buffer },
+                new int[] { 0 }, new int[] { 0 });
+    }
+
+    private static int align(int value) {
+        return (value + ROW_ALIGNMENT - 1) / ROW_ALIGNMENT * ROW_ALIGNMENT;
+    }
+}
@@ -0,0 +1,101 @@
+package com.wwdablu.soumya.cam2lib;
+
+/**
+ * Fixed capacity ring of items ordered by their sensor timestamp, oldest first. The arrays are
+ * allocated once, so adding and removing never allocates.
+ */
+final class TimestampRing<T> {
+
+    private final long[] mTimestamps;
+    private final Object[] mItems;
+    private int mHead;
+    private int mSize;
+
+    TimestampRing(int capacity) {
+        this.mTimestamps = new long[Math.max(1, capacity)];
+        this.mItems = new Object[Math.max(1, capacity)];
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    int capacity() {
+        return mItems.length;
+    }
+
+    boolean isFull() {
+        return mSize == mItems.length;
+    }
+
+    /**
+     * Add the newest item
+     * @return Oldest item which was evicted to make room, null if there was room
+     */
+    T add(long timestamp, T item) {
+
+        T evicted = isFull() ? removeOldest() : null;
+
+        int index = (mHead + mSize) % mItems.length;
+        mTimestamps[index] = timestamp;
+        mItems[index] = item;
+        mSize++;
+        return evicted;
+    }
+
+    T removeOldest() {
+        return mSize == 0 ? null : removeAt(0);
+    }
+
+    /**
+     * Remove the item with exactly the timestamp
+     * @return Item or null if none has the timestamp
+     */
+    T remove(long timestamp) {
+        for (int position = 0; position < mSize; position++) {
+            if(mTimestamps[(mHead + position) % mItems.length] == timestamp) {
+                return removeAt(position);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Remove the item whose timestamp is closest to the one given, the newer one on a tie
+     * @return Item or null if the ring is empty
+     */
+    T removeClosest(long timestamp) {
+
+        int closest = -1;
+        long closestDistance = Long.MAX_VALUE;
+        for (int position = 0; position < mSize; position++) {
+            long distance = Math.abs(mTimestamps[(mHead + position) % mItems.length] - timestamp);
+            if(distance <= closestDistance) {
+                closest = position;
+                closestDistance = distance;
+            }
+        }
+
+        return closest < 0 ? null : removeAt(closest);
+    }
+
+    @SuppressWarnings("unchecked")
+    private T removeAt(int position) {
+
+        int index = (mHead + position) % mItems.length;
+        T item = (T) mItems[index];
+
+        //Close the gap by moving the older items up by one, which keeps the order
+        for (int from = position - 1; from >= 0; from--) {
+            int source = (mHead + from) % mItems.length;
+            int target = (source + 1) % mItems.length;
+            mTimestamps[target] = mTimestamps[source];
+            mItems[target] = mItems[source];
+        }
+
+        mItems[mHead] = null;
+        mHead = (mHead + 1) % mItems.length;
+        mSize--;
+        return item;
+    }
+}
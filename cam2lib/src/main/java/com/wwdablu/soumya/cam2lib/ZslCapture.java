@@ -0,0 +1,267 @@
+package com.wwdablu.soumya.cam2lib;
+
+import android.graphics.ImageFormat;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CaptureResult;
+import android.hardware.camera2.TotalCaptureResult;
+import android.hardware.camera2.params.InputConfiguration;
+import android.media.Image;
+import android.media.ImageReader;
+import android.media.ImageWriter;
+import android.os.Build;
+import android.os.Handler;
+import android.support.annotation.NonNull;
+import android.support.annotation.RequiresApi;
+import android.util.Size;
+import android.view.Surface;
+
+/**
+ * Keeps the most recent full resolution frames of the repeating request along with their
+ * capture results, so that a capture can use a frame from the moment of the trigger instead of
+ * waiting for a new one. When the camera supports reprocessing the frame is sent back to the
+ * camera to be encoded as JPEG, otherwise the YUV frame itself is handed over.
+ */
+final class ZslCapture implements ImageReader.OnImageAvailableListener {
+
+    /**
+     * Frame taken out of the ring, owned by the caller
+     */
+    static final class Frame {
+        final Image image;
+        final TotalCaptureResult result;
+        final Cam2LibFrame.Owner owner;
+
+        Frame(Image image, TotalCaptureResult result, Cam2LibFrame.Owner owner) {
+            this.image = image;
+            this.result = result;
+            this.owner = owner;
+        }
+    }
+
+    /**
+     * Frames taken out of the ring still use up slots of their reader. The reader is kept open
+     * after a stop until all of them are given back.
+     */
+    private static final class ReaderSlots implements Cam2LibFrame.Owner {
+
+        final ImageReader reader;
+        int outstanding;
+        boolean stopped;
+
+        ReaderSlots(ImageReader reader) {
+            this.reader = reader;
+        }
+
+        synchronized int taken() {
+            return outstanding;
+        }
+
+        synchronized void take() {
+            outstanding++;
+        }
+
+        synchronized void stop() {
+            stopped = true;
+            if(outstanding == 0) {
+                reader.close();
+            }
+        }
+
+        @Override
+        public synchronized void onFrameReleased(@NonNull Cam2LibFrame frame) {
+            give();
+        }
+
+        synchronized void give() {
+            outstanding--;
+            if(stopped && outstanding == 0) {
+                reader.close();
+            }
+        }
+    }
+
+    private final int mDepth;
+    private final TimestampRing<Image> mImages;
+    private final TimestampRing<TotalCaptureResult> mResults;
+
+    private ImageReader mImageReader;
+    private ReaderSlots mSlots;
+    private ImageWriter mImageWriter;
+    private int mFormat;
+    private boolean mReprocessing;
+    private boolean mRealtimeTimestamps;
+
+    ZslCapture(int depth) {
+        this.mDepth = Math.max(1, depth);
+        this.mImages = new TimestampRing<>(mDepth);
+        this.mResults = new TimestampRing<>(mDepth * 2);
+    }
+
+    /**
+     * Decide the format of the ring for the camera
+     * @return Image format of the frames to be kept
+     */
+    synchronized int configure(@NonNull CameraCharacteristics characteristics) {
+
+        mReprocessing = false;
+        mFormat = ImageFormat.YUV_420_888;
+
+        int[] capabilities = characteristics.get(CameraCharacteristics.REQUEST_AVAILABLE_CAPABILITIES);
+        if(capabilities != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            for (int capability : capabilities) {
+                if(capability == CameraCharacteristics.REQUEST_AVAILABLE_CAPABILITIES_PRIVATE_REPROCESSING) {
+                    mReprocessing = true;
+                    mFormat = ImageFormat.PRIVATE;
+                    break;
+                } else if(capability == CameraCharacteristics.REQUEST_AVAILABLE_CAPABILITIES_YUV_REPROCESSING) {
+                    mReprocessing = true;
+                }
+            }
+        }
+
+        //Sensor timestamps can only be compared with the trigger time when on the realtime clock
+        Integer timestampSource = characteristics.get(CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE);
+        mRealtimeTimestamps = timestampSource != null &&
+                timestampSource == CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE_REALTIME;
+        return mFormat;
+    }
+
+    /**
+     * Allocate the reader for the ring. It holds the depth plus one frame, the spare being the
+     * slot into which the next frame is acquired before the oldest is evicted.
+     */
+    synchronized void start(@NonNull Size size, @NonNull Handler cameraHandler) {
+
+        stop();
+        mImageReader = ImageReader.newInstance(size.getWidth(), size.getHeight(), mFormat, mDepth + 1);
+        mImageReader.setOnImageAvailableListener(this, cameraHandler);
+        mSlots = new ReaderSlots(mImageReader);
+    }
+
+    synchronized void stop() {
+
+        Image image;
+        while ((image = mImages.removeOldest()) != null) {
+            image.close();
+        }
+        while (mResults.removeOldest() != null) {
+            //Results only hold metadata
+        }
+
+        if(mImageWriter != null) {
+            mImageWriter.close();
+            mImageWriter = null;
+        }
+
+        //Frames still with the consumer keep the reader alive, it is released with them
+        if(mImageReader != null) {
+            mImageReader.setOnImageAvailableListener(null, null);
+            mSlots.stop();
+            mImageReader = null;
+            mSlots = null;
+        }
+    }
+
+    synchronized Surface getSurface() {
+        return mImageReader == null ? null : mImageReader.getSurface();
+    }
+
+    boolean isReprocessing() {
+        return mReprocessing;
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.M)
+    synchronized InputConfiguration getInputConfiguration() {
+        return new InputConfiguration(mImageReader.getWidth(), mImageReader.getHeight(), mFormat);
+    }
+
+    /**
+     * Create the writer through which frames are sent back for reprocessing
+     */
+    @RequiresApi(api = Build.VERSION_CODES.M)
+    synchronized void onSessionConfigured(@NonNull CameraCaptureSession session) {
+
+        if(mImageWriter != null) {
+            mImageWriter.close();
+            mImageWriter = null;
+        }
+
+        if(mReprocessing && session.isReprocessable()) {
+            mImageWriter = ImageWriter.newInstance(session.getInputSurface(), 2);
+        }
+    }
+
+    synchronized void onResult(@NonNull TotalCaptureResult result) {
+        Long timestamp = result.get(CaptureResult.SENSOR_TIMESTAMP);
+        if(timestamp != null) {
+            mResults.add(timestamp, result);
+        }
+    }
+
+    /**
+     * Take the frame closest to the trigger out of the ring
+     * @param triggeredAt Time of the trigger as per SystemClock.elapsedRealtimeNanos()
+     * @return Frame or null if the ring is empty
+     */
+    synchronized Frame take(long triggeredAt) {
+
+        //Without comparable clocks the newest frame is the closest one to the trigger
+        long triggerAt = mRealtimeTimestamps ? triggeredAt : Long.MAX_VALUE;
+        Image image = mImages.removeClosest(triggerAt);
+        if(image == null) {
+            return null;
+        }
+
+        mSlots.take();
+        return new Frame(image, mResults.remove(image.getTimestamp()), mSlots);
+    }
+
+    /**
+     * Send a taken frame back to the camera for reprocessing. The writer closes the image.
+     */
+    @RequiresApi(api = Build.VERSION_CODES.M)
+    synchronized void queueInput(@NonNull Frame frame) {
+        if(mImageWriter == null) {
+            discard(frame);
+            throw new IllegalStateException("Session is not reprocessable");
+        }
+        mImageWriter.queueInputImage(frame.image);
+        ((ReaderSlots) frame.owner).give();
+    }
+
+    /**
+     * Give back a taken frame which is not used
+     */
+    void discard(@NonNull Frame frame) {
+        frame.image.close();
+        ((ReaderSlots) frame.owner).give();
+    }
+
+    @Override
+    public synchronized void onImageAvailable(ImageReader imageReader) {
+
+        if(imageReader != mImageReader) {
+            return;
+        }
+
+        //Frames taken by a capture use up reader slots until given back
+        while (mImages.size() + mSlots.taken() < imageReader.getMaxImages()) {
+
+            Image image = imageReader.acquireNextImage();
+            if(image == null) {
+                return;
+            }
+
+            Image evicted = mImages.add(image.getTimestamp(), image);
+            if(evicted != null) {
+                evicted.close();
+            }
+
+            //Always leave a slot free, a stream without free buffers would stall the preview
+            if(mImages.size() + mSlots.taken() >= imageReader.getMaxImages() && mImages.size() > 0) {
+                mImages.removeOldest().close();
+            }
+        }
+    }
+}
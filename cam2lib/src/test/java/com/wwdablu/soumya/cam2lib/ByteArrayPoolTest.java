@@ -0,0 +1,47 @@
+package com.wwdablu.soumya.cam2lib;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ByteArrayPoolTest {
+
+    @Test
+    public void acquire_returnsArrayOfNextSizeClass() {
+        ByteArrayPool pool = new ByteArrayPool(Long.MAX_VALUE);
+        assertEquals(1 << 16, pool.acquire(10).length);
+        assertEquals(1 << 20, pool.acquire((1 << 19) + 1).length);
+        assertEquals(1 << 20, pool.acquire(1 << 20).length);
+    }
+
+    @Test
+    public void steadyState_reusesReleasedArrays() {
+        ByteArrayPool pool = new ByteArrayPool(Long.MAX_VALUE);
+        byte[] first = pool.acquire(3_000_000);
+        pool.release(first);
+
+        for (int index = 0; index < 10; index++) {
+            byte[] bytes = pool.acquire(2_500_000 + index);
+            assertSame(first, bytes);
+            pool.release(bytes);
+        }
+
+        assertEquals(1, pool.getMissCount());
+        assertEquals(10, pool.getHitCount());
+    }
+
+    @Test
+    public void release_respectsByteBudget() {
+        ByteArrayPool pool = new ByteArrayPool(1 << 20);
+        pool.release(pool.acquire(1 << 20));
+        pool.release(pool.acquire(1 << 20));
+        assertEquals(1 << 20, pool.getPooledBytes());
+    }
+
+    @Test
+    public void release_ignoresForeignArrays() {
+        ByteArrayPool pool = new ByteArrayPool(Long.MAX_VALUE);
+        pool.release(new byte[100_000]);
+        assertEquals(0, pool.getPooledBytes());
+    }
+}
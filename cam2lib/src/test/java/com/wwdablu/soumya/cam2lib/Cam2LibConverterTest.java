@@ -0,0 +1,26 @@
+package com.wwdablu.soumya.cam2lib;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class Cam2LibConverterTest {
+
+    @Test
+    public void inSampleSize_fitKeepsBothDimensionsAboveFinalSize() {
+        //4000x3000 into 400x400: final size 400x300, so 1/8 (500x375) is the largest
+        assertEquals(8, Cam2LibConverter.calculateInSampleSize(4000, 3000, 400, 400, Cam2LibConverter.ScaleMode.FIT));
+    }
+
+    @Test
+    public void inSampleSize_fillKeepsBothDimensionsAboveTarget() {
+        //4000x3000 to cover 400x400: final size 533x400, so 1/4 (1000x750) is the largest
+        assertEquals(4, Cam2LibConverter.calculateInSampleSize(4000, 3000, 400, 400, Cam2LibConverter.ScaleMode.FILL));
+    }
+
+    @Test
+    public void inSampleSize_neverUpscales() {
+        assertEquals(1, Cam2LibConverter.calculateInSampleSize(640, 480, 1920, 1080, Cam2LibConverter.ScaleMode.FILL));
+        assertEquals(1, Cam2LibConverter.calculateInSampleSize(640, 480, 0, 0, Cam2LibConverter.ScaleMode.FIT));
+    }
+}
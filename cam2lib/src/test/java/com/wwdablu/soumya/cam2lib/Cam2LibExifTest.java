@@ -0,0 +1,162 @@
+package com.wwdablu.soumya.cam2lib;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class Cam2LibExifTest {
+
+    private static final byte[] THUMBNAIL = { (byte) 0xFF, (byte) 0xD8, 1, 2, 3, 4, (byte) 0xFF, (byte) 0xD9 };
+    private static final String DATE_TIME = "2019:06:10 20:48:38";
+
+    @Test
+    public void readsBigEndianExifFromBuffer() {
+        ByteBuffer jpeg = ByteBuffer.wrap(jpeg(ByteOrder.BIG_ENDIAN));
+        jpeg.position(0);
+
+        Cam2LibExif exif = Cam2LibExif.read(jpeg);
+
+        assertNotNull(exif);
+        assertEquals(Cam2LibExif.ORIENTATION_ROTATE_90, exif.getOrientation());
+        assertEquals(90, exif.getRotationDegrees());
+        assertFalse(exif.isMirrored());
+        assertEquals(DATE_TIME, exif.getDateTime());
+        assertEquals("Cam2Lib", exif.getMake());
+        assertEquals(4032, exif.getWidth());
+        assertEquals(3024, exif.getHeight());
+        assertEquals(0, jpeg.position());
+
+        ByteBuffer thumbnail = exif.getThumbnail();
+        assertNotNull(thumbnail);
+        byte[] bytes = new byte[thumbnail.remaining()];
+        thumbnail.get(bytes);
+        assertEquals(ByteBuffer.wrap(THUMBNAIL), ByteBuffer.wrap(bytes));
+    }
+
+    @Test
+    public void readsLittleEndianExifFromFile() throws Exception {
+        File file = File.createTempFile("exif", ".jpg");
+        try {
+            FileOutputStream stream = new FileOutputStream(file);
+            stream.write(jpeg(ByteOrder.LITTLE_ENDIAN));
+            stream.close();
+
+            try (FileChannel channel = new RandomAccessFile(file, "r").getChannel()) {
+                Cam2LibExif exif = Cam2LibExif.read(channel);
+
+                assertNotNull(exif);
+                assertEquals(Cam2LibExif.ORIENTATION_ROTATE_90, exif.getOrientation());
+                assertEquals(DATE_TIME, exif.getDateTime());
+                assertTrue(exif.hasThumbnail());
+                assertEquals(THUMBNAIL.length, exif.getThumbnail().remaining());
+                assertEquals(0, channel.position());
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void returnsNullWithoutExif() {
+        byte[] jpeg = { (byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xDA, 0, 2, (byte) 0xFF, (byte) 0xD9 };
+        assertNull(Cam2LibExif.read(ByteBuffer.wrap(jpeg)));
+        assertNull(Cam2LibExif.read(ByteBuffer.wrap(new byte[] { 1, 2, 3, 4 })));
+    }
+
+    @Test
+    public void keepsWhatWasReadFromTruncatedExif() {
+        byte[] jpeg = jpeg(ByteOrder.BIG_ENDIAN);
+
+        //Point IFD1 past the end of the segment
+        ByteBuffer buffer = ByteBuffer.wrap(jpeg);
+        int tiff = 2 + 18 + 4 + 6;
+        buffer.putInt(tiff + 8 + 2 + 4 * 12, 0x7FFF);
+
+        Cam2LibExif exif = Cam2LibExif.read(buffer);
+        assertNotNull(exif);
+        assertEquals(Cam2LibExif.ORIENTATION_ROTATE_90, exif.getOrientation());
+        assertFalse(exif.hasThumbnail());
+    }
+
+    /**
+     * JPEG with an APP0 segment, followed by an APP1 segment with IFD0, the EXIF IFD and IFD1
+     * pointing to the thumbnail, and the start of the image data
+     */
+    private static byte[] jpeg(ByteOrder order) {
+
+        ByteBuffer tiff = ByteBuffer.allocate(512).order(order);
+        tiff.put(order == ByteOrder.BIG_ENDIAN ? (byte) 'M' : (byte) 'I');
+        tiff.put(order == ByteOrder.BIG_ENDIAN ? (byte) 'M' : (byte) 'I');
+        tiff.putShort((short) 42);
+        tiff.putInt(8);
+
+        int ifd0 = 8;
+        int exifIfd = ifd0 + 2 + 4 * 12 + 4;
+        int ifd1 = exifIfd + 2 + 3 * 12 + 4;
+        int data = ifd1 + 2 + 2 * 12 + 4;
+        int make = data;
+        int dateTime = make + 8;
+        int thumbnail = dateTime + 20;
+
+        tiff.position(ifd0);
+        tiff.putShort((short) 4);
+        entry(tiff, 0x010F, 2, 8, make);
+        shortEntry(tiff, 0x0112, 6);
+        entry(tiff, 0x0132, 2, 20, dateTime);
+        entry(tiff, 0x8769, 4, 1, exifIfd);
+        tiff.putInt(ifd1);
+
+        tiff.putShort((short) 3);
+        entry(tiff, 0x9003, 2, 20, dateTime);
+        shortEntry(tiff, 0xA002, 4032);
+        shortEntry(tiff, 0xA003, 3024);
+        tiff.putInt(0);
+
+        tiff.putShort((short) 2);
+        entry(tiff, 0x0201, 4, 1, thumbnail);
+        entry(tiff, 0x0202, 4, 1, THUMBNAIL.length);
+        tiff.putInt(0);
+
+        tiff.put("Cam2Lib\0".getBytes(StandardCharsets.US_ASCII));
+        tiff.put((DATE_TIME + "\0").getBytes(StandardCharsets.US_ASCII));
+        tiff.put(THUMBNAIL);
+        int tiffLength = tiff.position();
+
+        ByteBuffer jpeg = ByteBuffer.allocate(1024);
+        jpeg.put((byte) 0xFF).put((byte) 0xD8);
+
+        jpeg.put((byte) 0xFF).put((byte) 0xE0).putShort((short) 16);
+        jpeg.put(new byte[14]);
+
+        jpeg.put((byte) 0xFF).put((byte) 0xE1).putShort((short) (2 + 6 + tiffLength));
+        jpeg.put("Exif\0\0".getBytes(StandardCharsets.US_ASCII));
+        jpeg.put(tiff.array(), 0, tiffLength);
+
+        jpeg.put((byte) 0xFF).put((byte) 0xDA).putShort((short) 2);
+        jpeg.put((byte) 0xFF).put((byte) 0xD9);
+
+        byte[] bytes = new byte[jpeg.position()];
+        System.arraycopy(jpeg.array(), 0, bytes, 0, bytes.length);
+        return bytes;
+    }
+
+    private static void entry(ByteBuffer tiff, int tag, int type, int count, int value) {
+        tiff.putShort((short) tag).putShort((short) type).putInt(count).putInt(value);
+    }
+
+    private static void shortEntry(ByteBuffer tiff, int tag, int value) {
+        tiff.putShort((short) tag).putShort((short) 3).putInt(1).putShort((short) value).putShort((short) 0);
+    }
+}
@@ -0,0 +1,166 @@
+package com.wwdablu.soumya.cam2lib;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class Cam2LibJpegWriterTest {
+
+    @Test
+    public void savesEachCaptureToItsFile() throws Exception {
+        List<File> files = new ArrayList<>();
+        try {
+            RecordingListener listener = new RecordingListener();
+            Cam2LibJpegWriter writer = new Cam2LibJpegWriter(8, 2);
+            for (int index = 0; index < 5; index++) {
+                File file = File.createTempFile("capture", ".jpg");
+                files.add(file);
+                ByteBuffer jpeg = jpeg(100 + index);
+                assertTrue(writer.save(jpeg, 1000 + index, file, null, listener));
+                assertEquals(0, jpeg.position());
+            }
+            writer.close();
+
+            assertEquals(5, listener.saved.size());
+            assertEquals(0, listener.failed);
+            for (int index = 0; index < 5; index++) {
+                assertEquals(Long.valueOf(1000 + index), listener.saved.get(index)[0]);
+                assertEquals(Long.valueOf(100 + index), listener.saved.get(index)[1]);
+                assertArrayEquals(jpeg(100 + index).array(), Files.readAllBytes(files.get(index).toPath()));
+            }
+        } finally {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    @Test
+    public void appendsCapturesToOneChannel() throws Exception {
+        File file = File.createTempFile("captures", ".bin");
+        try (FileOutputStream stream = new FileOutputStream(file)) {
+            RecordingListener listener = new RecordingListener();
+            Cam2LibJpegWriter writer = new Cam2LibJpegWriter(8, 4);
+            for (int index = 0; index < 3; index++) {
+                assertTrue(writer.save(jpeg(50), index, null, stream.getChannel(), listener));
+            }
+            writer.close();
+
+            assertEquals(3, listener.saved.size());
+            assertEquals(0, listener.failed);
+            assertTrue(stream.getChannel().isOpen());
+            assertEquals(150, file.length());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void reportsFailedWrites() throws Exception {
+        File directory = Files.createTempDirectory("captures").toFile();
+        try {
+            RecordingListener listener = new RecordingListener();
+            Cam2LibJpegWriter writer = new Cam2LibJpegWriter();
+            assertTrue(writer.save(jpeg(10), 1, directory, null, listener));
+            writer.close();
+
+            assertEquals(0, listener.saved.size());
+            assertEquals(1, listener.failed);
+        } finally {
+            directory.delete();
+        }
+    }
+
+    @Test
+    public void throwingListener_doesNotStopWriter() throws Exception {
+        List<File> files = new ArrayList<>();
+        try {
+            final List<Long> saved = new ArrayList<>();
+            Cam2LibJpegWriter.Listener listener = new Cam2LibJpegWriter.Listener() {
+                @Override
+                public synchronized void onSaved(long timestamp, long bytes) {
+                    saved.add(bytes);
+                    throw new IllegalStateException("Listener failed");
+                }
+
+                @Override
+                public void onFailed(long timestamp, Throwable error) {
+                }
+            };
+
+            Cam2LibJpegWriter writer = new Cam2LibJpegWriter(8, 1);
+            for (int index = 0; index < 3; index++) {
+                File file = File.createTempFile("capture", ".jpg");
+                files.add(file);
+                assertTrue(writer.save(jpeg(20 + index), index, file, null, listener));
+            }
+            writer.close();
+
+            assertEquals(3, saved.size());
+            for (int index = 0; index < 3; index++) {
+                assertEquals(Long.valueOf(20 + index), saved.get(index));
+                assertEquals(20 + index, files.get(index).length());
+            }
+        } finally {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    @Test
+    public void refusesCapturesOnceClosed() throws Exception {
+        File file = File.createTempFile("capture", ".jpg");
+        try {
+            RecordingListener listener = new RecordingListener();
+            Cam2LibJpegWriter writer = new Cam2LibJpegWriter();
+            writer.close();
+            writer.close();
+
+            assertFalse(writer.save(jpeg(10), 1, file, null, listener));
+            assertEquals(0, listener.saved.size());
+            assertEquals(0, file.length());
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static ByteBuffer jpeg(int size) {
+        byte[] bytes = new byte[size];
+        bytes[0] = (byte) 0xFF;
+        bytes[1] = (byte) 0xD8;
+        bytes[size / 2] = (byte) size;
+        bytes[size - 2] = (byte) 0xFF;
+        bytes[size - 1] = (byte) 0xD9;
+        return ByteBuffer.wrap(bytes);
+    }
+
+    /**
+     * Records the callbacks, which are all made before close returns
+     */
+    private static final class RecordingListener implements Cam2LibJpegWriter.Listener {
+
+        final List<Long[]> saved = new ArrayList<>();
+        int failed;
+
+        @Override
+        public synchronized void onSaved(long timestamp, long bytes) {
+            saved.add(new Long[] {timestamp, bytes});
+        }
+
+        @Override
+        public synchronized void onFailed(long timestamp, Throwable error) {
+            failed++;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.wwdablu.soumya.cam2lib;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class Cam2LibMjpegWriterTest {
+
+    @Test
+    public void writesIndexedVideo() throws Exception {
+        File file = File.createTempFile("timelapse", ".avi");
+        try {
+            Cam2LibMjpegWriter writer = Cam2LibMjpegWriter.create(file, 640, 480, 30, 2);
+            for (int index = 0; index < 5; index++) {
+                ByteBuffer jpeg = jpeg(100 + index);
+                writer.append(jpeg);
+                assertEquals(0, jpeg.position());
+            }
+            writer.close();
+
+            assertFalse(new File(file.getPath() + ".idx").exists());
+            assertVideo(read(file), 5);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void recoversInterruptedVideo() throws Exception {
+        File file = File.createTempFile("timelapse", ".avi");
+        File crashed = File.createTempFile("crashed", ".avi");
+        try {
+            Cam2LibMjpegWriter writer = Cam2LibMjpegWriter.create(file, 640, 480, 30, 2);
+            for (int index = 0; index < 3; index++) {
+                writer.append(jpeg(200 + index));
+            }
+
+            //A copy of the file as it is on disk before being closed, with the last frame cut short
+            Files.copy(file.toPath(), crashed.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            try (RandomAccessFile copy = new RandomAccessFile(crashed, "rw")) {
+                copy.setLength(copy.length() - 10);
+            }
+            writer.close();
+
+            assertEquals(2, Cam2LibMjpegWriter.recover(crashed));
+            assertFalse(new File(crashed.getPath() + ".idx").exists());
+            assertVideo(read(crashed), 2);
+        } finally {
+            file.delete();
+            crashed.delete();
+            new File(crashed.getPath() + ".idx").delete();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void recoverRejectsOtherFiles() throws Exception {
+        File file = File.createTempFile("other", ".avi");
+        try {
+            Files.write(file.toPath(), new byte[512]);
+            Cam2LibMjpegWriter.recover(file);
+        } finally {
+            file.delete();
+            new File(file.getPath() + ".idx").delete();
+        }
+    }
+
+    /**
+     * Check the sizes and counts of the headers, and that every index entry points to its frame
+     */
+    private static void assertVideo(ByteBuffer avi, int frames) {
+        assertEquals("RIFF", fourCc(avi, 0));
+        assertEquals(avi.limit() - 8, avi.getInt(4));
+        assertEquals("AVI ", fourCc(avi, 8));
+
+        //Skipping each list by its size lands on the next one
+        assertEquals("LIST", fourCc(avi, 12));
+        assertEquals("hdrl", fourCc(avi, 20));
+        assertEquals("LIST", fourCc(avi, 20 + avi.getInt(16)));
+        assertEquals("LIST", fourCc(avi, 88));
+        assertEquals("strl", fourCc(avi, 96));
+        assertEquals(212, 96 + avi.getInt(92));
+        assertEquals(frames, avi.getInt(48));
+        assertEquals(frames, avi.getInt(140));
+        assertEquals(0x10, avi.getInt(44));
+        assertEquals(640, avi.getInt(64));
+        assertEquals(480, avi.getInt(68));
+        assertEquals("MJPG", fourCc(avi, 112));
+
+        assertEquals("movi", fourCc(avi, 220));
+        int moviEnd = 220 + avi.getInt(216);
+        assertEquals("idx1", fourCc(avi, moviEnd));
+        assertEquals(frames * 16, avi.getInt(moviEnd + 4));
+        assertEquals(avi.limit(), moviEnd + 8 + frames * 16);
+
+        for (int frame = 0; frame < frames; frame++) {
+            int entry = moviEnd + 8 + frame * 16;
+            assertEquals("00dc", fourCc(avi, entry));
+            int chunk = 220 + avi.getInt(entry + 8);
+            int size = avi.getInt(entry + 12);
+            assertEquals("00dc", fourCc(avi, chunk));
+            assertEquals(size, avi.getInt(chunk + 4));
+            assertEquals((byte) 0xFF, avi.get(chunk + 8));
+            assertEquals((byte) 0xD8, avi.get(chunk + 9));
+            assertEquals((byte) 0xD9, avi.get(chunk + 8 + size - 1));
+        }
+    }
+
+    private static ByteBuffer jpeg(int size) {
+        byte[] bytes = new byte[size];
+        bytes[0] = (byte) 0xFF;
+        bytes[1] = (byte) 0xD8;
+        bytes[size - 2] = (byte) 0xFF;
+        bytes[size - 1] = (byte) 0xD9;
+        return ByteBuffer.wrap(bytes);
+    }
+
+    private static ByteBuffer read(File file) throws IOException {
+        return ByteBuffer.wrap(Files.readAllBytes(file.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static String fourCc(ByteBuffer buffer, int position) {
+        byte[] code = new byte[4];
+        for (int index = 0; index < 4; index++) {
+            code[index] = buffer.get(position + index);
+        }
+        return new String(code, StandardCharsets.US_ASCII);
+    }
+}
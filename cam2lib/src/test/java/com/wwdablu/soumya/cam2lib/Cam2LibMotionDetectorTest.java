@@ -0,0 +1,132 @@
+package com.wwdablu.soumya.cam2lib;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class Cam2LibMotionDetectorTest {
+
+    private static final int WIDTH = 160;
+    private static final int HEIGHT = 120;
+    //Rows padded like the planes of an Image
+    private static final int ROW_STRIDE = 176;
+    private static final long FRAME_NANOS = TimeUnit.MILLISECONDS.toNanos(33);
+
+    @Test
+    public void staticSceneHasNoMotion() {
+        Cam2LibMotionDetector detector = detector();
+        ByteBuffer frame = frame(80, -1, -1, 0, 0);
+
+        for (int index = 0; index < 10; index++) {
+            assertNull(detector.analyse(frame, ROW_STRIDE, 1, WIDTH, HEIGHT, index * FRAME_NANOS));
+        }
+    }
+
+    @Test
+    public void movingSquareIsBounded() {
+        Cam2LibMotionDetector detector = detector();
+        assertNull(detector.analyse(frame(80, -1, -1, 0, 0), ROW_STRIDE, 1, WIDTH, HEIGHT, 0));
+
+        Cam2LibMotionDetector.Event event = detector.analyse(frame(80, 32, 48, 32, 200),
+                ROW_STRIDE, 1, WIDTH, HEIGHT, FRAME_NANOS);
+
+        assertNotNull(event);
+        assertFalse(event.isSceneChange());
+        assertEquals(32, event.getLeft());
+        assertEquals(48, event.getTop());
+        assertEquals(64, event.getRight());
+        assertEquals(80, event.getBottom());
+        assertEquals(10, event.getBlockColumns());
+        assertEquals(8, event.getBlockRows());
+        assertTrue(event.isBlockMoving(2, 3));
+        assertTrue(event.isBlockMoving(3, 4));
+        assertFalse(event.isBlockMoving(4, 3));
+        assertEquals(4f / 80f, event.getScore(), 0.0001f);
+    }
+
+    @Test
+    public void eventsAreThrottled() {
+        Cam2LibMotionDetector detector = detector();
+        detector.setEventInterval(90);
+        detector.analyse(frame(80, -1, -1, 0, 0), ROW_STRIDE, 1, WIDTH, HEIGHT, 0);
+
+        long timestamp = FRAME_NANOS;
+        assertNotNull(detector.analyse(frame(80, 0, 0, 32, 200), ROW_STRIDE, 1, WIDTH, HEIGHT, timestamp));
+        timestamp += FRAME_NANOS;
+        assertNull(detector.analyse(frame(80, 64, 0, 32, 200), ROW_STRIDE, 1, WIDTH, HEIGHT, timestamp));
+        timestamp += FRAME_NANOS;
+        assertNull(detector.analyse(frame(80, 96, 0, 32, 200), ROW_STRIDE, 1, WIDTH, HEIGHT, timestamp));
+        timestamp += FRAME_NANOS;
+        assertNotNull(detector.analyse(frame(80, 0, 64, 32, 200), ROW_STRIDE, 1, WIDTH, HEIGHT, timestamp));
+    }
+
+    @Test
+    public void lightChangeIsSceneChangeAndRelearnt() {
+        Cam2LibMotionDetector detector = detector();
+        detector.setEventInterval(0);
+        detector.analyse(frame(40, -1, -1, 0, 0), ROW_STRIDE, 1, WIDTH, HEIGHT, 0);
+
+        Cam2LibMotionDetector.Event event = detector.analyse(frame(200, -1, -1, 0, 0),
+                ROW_STRIDE, 1, WIDTH, HEIGHT, FRAME_NANOS);
+        assertNotNull(event);
+        assertTrue(event.isSceneChange());
+        assertEquals(1f, event.getScore(), 0f);
+
+        //The bright frame is the new background
+        assertNull(detector.analyse(frame(200, -1, -1, 0, 0), ROW_STRIDE, 1, WIDTH, HEIGHT, 2 * FRAME_NANOS));
+        assertNull(detector.analyse(frame(200, -1, -1, 0, 0), ROW_STRIDE, 1, WIDTH, HEIGHT, 3 * FRAME_NANOS));
+    }
+
+    @Test
+    public void readsPixelStride() {
+        Cam2LibMotionDetector detector = detector();
+        detector.analyse(interleaved(frame(80, -1, -1, 0, 0)), ROW_STRIDE * 2, 2, WIDTH, HEIGHT, 0);
+
+        Cam2LibMotionDetector.Event event = detector.analyse(interleaved(frame(80, 128, 96, 16, 0)),
+                ROW_STRIDE * 2, 2, WIDTH, HEIGHT, FRAME_NANOS);
+        assertNotNull(event);
+        assertEquals(128, event.getLeft());
+        assertEquals(96, event.getTop());
+        assertEquals(144, event.getRight());
+        assertEquals(112, event.getBottom());
+    }
+
+    private static Cam2LibMotionDetector detector() {
+        return new Cam2LibMotionDetector(new Cam2LibMotionDetector.Listener() {
+            @Override
+            public void onMotion(Cam2LibMotionDetector.Event event) {
+                //
+            }
+        });
+    }
+
+    /**
+     * Flat luma plane with a square of another value, or none when left is negative
+     */
+    private static ByteBuffer frame(int luma, int left, int top, int size, int squareLuma) {
+        byte[] plane = new byte[ROW_STRIDE * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                boolean inSquare = left >= 0 && x >= left && x < left + size && y >= top && y < top + size;
+                plane[y * ROW_STRIDE + x] = (byte) (inSquare ? squareLuma : luma);
+            }
+        }
+        return ByteBuffer.wrap(plane);
+    }
+
+    private static ByteBuffer interleaved(ByteBuffer plane) {
+        byte[] bytes = new byte[plane.capacity() * 2];
+        for (int index = 0; index < plane.capacity(); index++) {
+            bytes[index * 2] = plane.get(index);
+            bytes[index * 2 + 1] = (byte) 0x7F;
+        }
+        return ByteBuffer.wrap(bytes);
+    }
+}
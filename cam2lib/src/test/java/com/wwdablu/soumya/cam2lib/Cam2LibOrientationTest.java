@@ -0,0 +1,116 @@
+package com.wwdablu.soumya.cam2lib;
+
+import android.view.Surface;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class Cam2LibOrientationTest {
+
+    @Test
+    public void jpegOrientation_accountsForDeviceAndFacing() {
+        assertEquals(90, Cam2LibOrientation.getJpegOrientation(90, 0, false));
+        assertEquals(180, Cam2LibOrientation.getJpegOrientation(90, 90, false));
+        assertEquals(0, Cam2LibOrientation.getJpegOrientation(90, 265, false));
+        assertEquals(270, Cam2LibOrientation.getJpegOrientation(270, 0, true));
+        assertEquals(180, Cam2LibOrientation.getJpegOrientation(270, 90, true));
+        assertEquals(90, Cam2LibOrientation.getJpegOrientation(90, -1, false));
+    }
+
+    @Test
+    public void jpegOrientation_fromDisplayRotation() {
+        //Back camera mounted at 90, landscape either way round is upright
+        assertEquals(0, Cam2LibOrientation.getJpegOrientation(90,
+                Cam2LibOrientation.getDeviceDegrees(Surface.ROTATION_90), false));
+        assertEquals(180, Cam2LibOrientation.getJpegOrientation(90,
+                Cam2LibOrientation.getDeviceDegrees(Surface.ROTATION_270), false));
+        assertEquals(90, Cam2LibOrientation.getJpegOrientation(90,
+                Cam2LibOrientation.getDeviceDegrees(Surface.ROTATION_0), false));
+
+        //Front camera mounted at 270
+        assertEquals(0, Cam2LibOrientation.getJpegOrientation(270,
+                Cam2LibOrientation.getDeviceDegrees(Surface.ROTATION_90), true));
+        assertEquals(180, Cam2LibOrientation.getJpegOrientation(270,
+                Cam2LibOrientation.getDeviceDegrees(Surface.ROTATION_270), true));
+    }
+
+    @Test
+    public void rotateArgb_matchesPixelMapping() {
+        int[] argb = {
+                1, 2, 3,
+                4, 5, 6
+        };
+
+        assertArrayEquals(new int[] { 4, 1, 5, 2, 6, 3 }, Cam2LibOrientation.rotateArgb(argb, 3, 2, 90, false, null));
+        assertArrayEquals(new int[] { 6, 5, 4, 3, 2, 1 }, Cam2LibOrientation.rotateArgb(argb, 3, 2, 180, false, null));
+        assertArrayEquals(new int[] { 3, 6, 2, 5, 1, 4 }, Cam2LibOrientation.rotateArgb(argb, 3, 2, 270, false, null));
+        assertArrayEquals(new int[] { 3, 2, 1, 6, 5, 4 }, Cam2LibOrientation.rotateArgb(argb, 3, 2, 0, true, null));
+        assertArrayEquals(new int[] { 1, 4, 2, 5, 3, 6 }, Cam2LibOrientation.rotateArgb(argb, 3, 2, 90, true, null));
+    }
+
+    @Test
+    public void rotateArgb_acrossTilesMatchesNaiveRotation() {
+        int width = 70;
+        int height = 45;
+        int[] argb = new int[width * height];
+        for (int index = 0; index < argb.length; index++) {
+            argb[index] = index;
+        }
+
+        int[] rotated = Cam2LibOrientation.rotateArgb(argb, width, height, 270, true, new int[width * height]);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                //270 maps x, y to y, width - 1 - x, the mirror flips the row of the output
+                int outX = height - 1 - y;
+                int outY = width - 1 - x;
+                assertEquals(argb[y * width + x], rotated[outY * height + outX]);
+            }
+        }
+    }
+
+    @Test
+    public void rotateNv21_movesChromaPairsTogether() {
+        int width = 4;
+        int height = 2;
+        byte[] nv21 = {
+                0, 1, 2, 3,
+                4, 5, 6, 7,
+                10, 11, 20, 21
+        };
+
+        byte[] rotated = Cam2LibOrientation.rotateNv21(nv21, width, height, 90, false, null);
+
+        assertArrayEquals(new byte[] {
+                4, 0,
+                5, 1,
+                6, 2,
+                7, 3,
+                10, 11,
+                20, 21
+        }, rotated);
+    }
+
+    @Test
+    public void rotateI420_fourTimesIsIdentity() {
+        int width = 5;
+        int height = 3;
+        byte[] i420 = new byte[Cam2LibYuvConverter.yuv420Size(width, height)];
+        for (int index = 0; index < i420.length; index++) {
+            i420[index] = (byte) index;
+        }
+
+        byte[] rotated = i420;
+        int rotatedWidth = width;
+        int rotatedHeight = height;
+        for (int turn = 0; turn < 4; turn++) {
+            rotated = Cam2LibOrientation.rotateI420(rotated, rotatedWidth, rotatedHeight, 90, false, null);
+            int previousWidth = rotatedWidth;
+            rotatedWidth = rotatedHeight;
+            rotatedHeight = previousWidth;
+        }
+
+        assertArrayEquals(i420, rotated);
+    }
+}
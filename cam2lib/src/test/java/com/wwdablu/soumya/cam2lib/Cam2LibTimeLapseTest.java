@@ -0,0 +1,21 @@
+package com.wwdablu.soumya.cam2lib;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class Cam2LibTimeLapseTest {
+
+    @Test
+    public void lateCapturesAreSkipped() {
+        assertEquals(0, Cam2LibTimeLapse.missedCaptures(1000, 900, 100));
+        assertEquals(0, Cam2LibTimeLapse.missedCaptures(1000, 1099, 100));
+        assertEquals(3, Cam2LibTimeLapse.missedCaptures(1000, 1350, 100));
+    }
+
+    @Test
+    public void capturesOnTimeAreNotSkipped() {
+        assertEquals(0, Cam2LibTimeLapse.missedCaptures(1000, 1000, 100));
+        assertEquals(1, Cam2LibTimeLapse.missedCaptures(1000, 1100, 100));
+    }
+}
@@ -0,0 +1,154 @@
+package com.wwdablu.soumya.cam2lib;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+public class Cam2LibYuvConverterTest {
+
+    private static final int OUTPUT_ARGB = 0;
+    private static final int OUTPUT_NV21 = 1;
+    private static final int OUTPUT_I420 = 2;
+
+    private static final int WIDTH = 38;
+    private static final int HEIGHT = 22;
+
+    @Test
+    public void nv21_handlesRowAndPixelStrides() {
+        Planes planes = new Planes(WIDTH + 10, 2);
+        byte[] nv21 = new byte[Cam2LibYuvConverter.yuv420Size(WIDTH, HEIGHT)];
+
+        new Cam2LibYuvConverter(null, 1).convertPlanes(planes.y, planes.yRowStride, 1,
+                planes.u, planes.cRowStride, planes.cPixelStride,
+                planes.v, planes.cRowStride, planes.cPixelStride, WIDTH, HEIGHT, OUTPUT_NV21, null, nv21);
+
+        for (int row = 0; row < HEIGHT; row++) {
+            for (int x = 0; x < WIDTH; x++) {
+                assertEquals(luma(x, row), nv21[row * WIDTH + x] & 0xff);
+            }
+        }
+
+        int offset = WIDTH * HEIGHT;
+        for (int row = 0; row < HEIGHT / 2; row++) {
+            for (int x = 0; x < WIDTH / 2; x++) {
+                assertEquals(cr(x, row), nv21[offset++] & 0xff);
+                assertEquals(cb(x, row), nv21[offset++] & 0xff);
+            }
+        }
+    }
+
+    @Test
+    public void i420_matchesPlanarLayout() {
+        Planes planes = new Planes(WIDTH, 1);
+        byte[] i420 = new byte[Cam2LibYuvConverter.yuv420Size(WIDTH, HEIGHT)];
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            new Cam2LibYuvConverter(executor, 4).convertPlanes(planes.y, planes.yRowStride, 1,
+                    planes.u, planes.cRowStride, planes.cPixelStride,
+                    planes.v, planes.cRowStride, planes.cPixelStride, WIDTH, HEIGHT, OUTPUT_I420, null, i420);
+        } finally {
+            executor.shutdown();
+        }
+
+        int chroma = (WIDTH / 2) * (HEIGHT / 2);
+        for (int row = 0; row < HEIGHT / 2; row++) {
+            for (int x = 0; x < WIDTH / 2; x++) {
+                int index = WIDTH * HEIGHT + row * (WIDTH / 2) + x;
+                assertEquals(cb(x, row), i420[index] & 0xff);
+                assertEquals(cr(x, row), i420[index + chroma] & 0xff);
+            }
+        }
+    }
+
+    @Test
+    public void argb_parallelMatchesReference() {
+        Planes planes = new Planes(WIDTH + 6, 2);
+        int[] argb = new int[WIDTH * HEIGHT];
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            new Cam2LibYuvConverter(executor, 5).convertPlanes(planes.y, planes.yRowStride, 1,
+                    planes.u, planes.cRowStride, planes.cPixelStride,
+                    planes.v, planes.cRowStride, planes.cPixelStride, WIDTH, HEIGHT, OUTPUT_ARGB, argb, null);
+        } finally {
+            executor.shutdown();
+        }
+
+        for (int row = 0; row < HEIGHT; row++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int expected = reference(luma(x, row), cb(x / 2, row / 2), cr(x / 2, row / 2));
+                int actual = argb[row * WIDTH + x];
+                assertEquals(0xff, actual >>> 24);
+                for (int shift = 0; shift <= 16; shift += 8) {
+                    assertTrue(Math.abs(((expected >> shift) & 0xff) - ((actual >> shift) & 0xff)) <= 1);
+                }
+            }
+        }
+    }
+
+    private static int reference(int y, int u, int v) {
+        double luma = 1.164 * Math.max(0, y - 16);
+        int r = clamp(luma + 1.596 * (v - 128));
+        int g = clamp(luma - 0.813 * (v - 128) - 0.391 * (u - 128));
+        int b = clamp(luma + 2.018 * (u - 128));
+        return (r << 16) | (g << 8) | b;
+    }
+
+    private static int clamp(double value) {
+        return (int) Math.max(0, Math.min(255, Math.floor(value)));
+    }
+
+    private static int luma(int x, int y) {
+        return (x * 7 + y * 13) & 0xff;
+    }
+
+    private static int cb(int x, int y) {
+        return (x * 11 + y * 3 + 40) & 0xff;
+    }
+
+    private static int cr(int x, int y) {
+        return (x * 5 + y * 17 + 90) & 0xff;
+    }
+
+    /**
+     * Planes laid out like a camera would, with padding at the end of every row and optionally
+     * interleaved chroma.
+     */
+    private static final class Planes {
+
+        final ByteBuffer y, u, v;
+        final int yRowStride, cRowStride, cPixelStride;
+
+        Planes(int yRowStride, int cPixelStride) {
+            this.yRowStride = yRowStride;
+            this.cPixelStride = cPixelStride;
+            this.cRowStride = cPixelStride == 1 ? yRowStride / 2 : yRowStride;
+
+            byte[] yBytes = new byte[yRowStride * (HEIGHT - 1) + WIDTH];
+            for (int row = 0; row < HEIGHT; row++) {
+                for (int x = 0; x < WIDTH; x++) {
+                    yBytes[row * yRowStride + x] = (byte) luma(x, row);
+                }
+            }
+
+            int chromaLength = cRowStride * (HEIGHT / 2 - 1) + (WIDTH / 2 - 1) * cPixelStride + 1;
+            byte[] uBytes = new byte[chromaLength];
+            byte[] vBytes = new byte[chromaLength];
+            for (int row = 0; row < HEIGHT / 2; row++) {
+                for (int x = 0; x < WIDTH / 2; x++) {
+                    uBytes[row * cRowStride + x * cPixelStride] = (byte) cb(x, row);
+                    vBytes[row * cRowStride + x * cPixelStride] = (byte) cr(x, row);
+                }
+            }
+
+            y = ByteBuffer.wrap(yBytes);
+            u = ByteBuffer.wrap(uBytes);
+            v = ByteBuffer.wrap(vBytes);
+        }
+    }
+}
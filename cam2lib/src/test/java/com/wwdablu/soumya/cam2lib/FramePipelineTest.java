@@ -0,0 +1,171 @@
+package com.wwdablu.soumya.cam2lib;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the frame dispatching and the YUV conversion end to end against a synthetic source, and
+ * checks the order, the drops and that every frame is released. The throughput, latency and
+ * allocation per frame are measured by PipelineBenchmark in cam2lib-benchmarks.
+ */
+public class FramePipelineTest {
+
+    private static final int YUV_420_888 = 0x23;
+    private static final int OUTPUT_ARGB = 0;
+    private static final long TIMEOUT_SECONDS = 10;
+
+    @Test
+    public void keepLatest_deliversInOrderAndReleasesEverything() throws Exception {
+        Result result = run(FrameDispatcher.Policy.KEEP_LATEST, 640, 480, 200, 3, false, 20);
+
+        assertTrue(result.inOrder);
+        assertEquals(0, result.acquiredAfterStop);
+    }
+
+    @Test
+    public void block_neverDropsAcquiredFrames() throws Exception {
+        Result result = run(FrameDispatcher.Policy.BLOCK, 320, 240, 500, 3, true, 10);
+
+        assertTrue(result.inOrder);
+        assertEquals(0, result.dropped);
+        assertTrue(result.heldLimit > 0);
+        assertEquals(0, result.acquiredAfterStop);
+    }
+
+    @Test
+    public void boundedQueue_dropsOldestUnderLoad() throws Exception {
+        Result result = run(FrameDispatcher.Policy.BOUNDED_QUEUE, 320, 240, 500, 4, true, 10);
+
+        assertTrue(result.inOrder);
+        assertTrue(result.dropped + result.skipped > 0);
+        assertEquals(0, result.acquiredAfterStop);
+    }
+
+    @Test
+    public void throwingConsumer_doesNotStopDelivery() throws Exception {
+        SyntheticFrameSource source = new SyntheticFrameSource(64, 48, YUV_420_888, 3, 500);
+        final CountDownLatch calls = new CountDownLatch(5);
+        final AtomicInteger failures = new AtomicInteger();
+        final AtomicReference<FrameDispatcher<SyntheticFrame>> dispatcher = new AtomicReference<>();
+
+        ExecutorService delivery = Executors.newSingleThreadExecutor();
+        dispatcher.set(new FrameDispatcher<>(source, FrameDispatcher.Policy.KEEP_LATEST, 3,
+                new FrameDispatcher.Consumer<SyntheticFrame>() {
+                    @Override
+                    public void onFrame(SyntheticFrame frame) {
+                        dispatcher.get().release(frame);
+                        failures.incrementAndGet();
+                        calls.countDown();
+                        throw new IllegalArgumentException("Unexpected format");
+                    }
+                }, source.getExecutor(), delivery));
+
+        final AtomicInteger reported = new AtomicInteger();
+        dispatcher.get().setStats(new FrameDispatcher.Stats() {
+            @Override
+            public void onFrameDropped() {
+            }
+
+            @Override
+            public void onHeldLimitReached() {
+            }
+
+            @Override
+            public void onConsumerFailed(RuntimeException error) {
+                reported.incrementAndGet();
+            }
+        });
+
+        dispatcher.get().start();
+        assertTrue(calls.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        dispatcher.get().stop();
+        drain(delivery);
+
+        assertEquals(failures.get(), reported.get());
+        assertEquals(0, dispatcher.get().getAcquiredCount());
+    }
+
+    /**
+     * Dispatch until the given number of frames is delivered
+     * @param slowConsumer Hold every frame until the source has produced more frames than the
+     *                     depth, so that the consumer falls behind whatever the speed of the machine
+     */
+    private static Result run(FrameDispatcher.Policy policy, int width, int height, int fps, final int depth,
+                              final boolean slowConsumer, int frames) throws Exception {
+
+        final SyntheticFrameSource source = new SyntheticFrameSource(width, height, YUV_420_888, depth, fps);
+        final Cam2LibYuvConverter converter = new Cam2LibYuvConverter(null, 1);
+        final int[] argb = new int[width * height];
+        final CountDownLatch delivered = new CountDownLatch(frames);
+        final Result result = new Result();
+
+        ExecutorService delivery = Executors.newSingleThreadExecutor();
+        final AtomicReference<FrameDispatcher<SyntheticFrame>> dispatcher = new AtomicReference<>();
+        dispatcher.set(new FrameDispatcher<>(source, policy, depth, new FrameDispatcher.Consumer<SyntheticFrame>() {
+
+            private long mLastIndex = -1;
+
+            @Override
+            public void onFrame(SyntheticFrame frame) {
+
+                converter.convertPlanes(frame.planes[0], frame.rowStrides[0], frame.pixelStrides[0],
+                        frame.planes[1], frame.rowStrides[1], frame.pixelStrides[1],
+                        frame.planes[2], frame.rowStrides[2], frame.pixelStrides[2],
+                        frame.width, frame.height, OUTPUT_ARGB, argb, null);
+
+                if(slowConsumer) {
+                    awaitProduced(source, frame.index + depth + 1);
+                }
+
+                result.inOrder &= frame.index > mLastIndex;
+                mLastIndex = frame.index;
+
+                dispatcher.get().release(frame);
+                delivered.countDown();
+            }
+        }, source.getExecutor(), delivery));
+
+        dispatcher.get().start();
+        assertTrue(delivered.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        dispatcher.get().stop();
+        drain(delivery);
+
+        result.dropped = dispatcher.get().getDroppedCount();
+        result.heldLimit = dispatcher.get().getHeldLimitCount();
+        result.skipped = source.getSkippedCount();
+        result.acquiredAfterStop = dispatcher.get().getAcquiredCount();
+        return result;
+    }
+
+    /**
+     * Let the frame being delivered complete
+     */
+    private static void drain(ExecutorService delivery) throws InterruptedException {
+        delivery.shutdown();
+        assertTrue(delivery.awaitTermination(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    private static void awaitProduced(SyntheticFrameSource source, long count) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (source.getProducedCount() < count && System.nanoTime() < deadline) {
+            Thread.yield();
+        }
+    }
+
+    private static final class Result {
+        long dropped;
+        long skipped;
+        long heldLimit;
+        int acquiredAfterStop;
+        boolean inOrder = true;
+    }
+}
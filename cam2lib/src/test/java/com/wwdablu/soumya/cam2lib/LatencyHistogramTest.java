@@ -0,0 +1,42 @@
+package com.wwdablu.soumya.cam2lib;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void buckets_coverValuesContiguously() {
+        for (long micros = 0; micros < 100_000; micros++) {
+            int bucket = LatencyHistogram.bucketOf(micros);
+            assertTrue(LatencyHistogram.lowerBoundOf(bucket) <= micros);
+            assertTrue(LatencyHistogram.lowerBoundOf(bucket + 1) > micros);
+        }
+    }
+
+    @Test
+    public void percentiles_withinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int micros = 1; micros <= 10_000; micros++) {
+            histogram.recordMicros(micros);
+        }
+
+        assertEquals(10_000, histogram.getCount());
+        assertEquals(10_000, histogram.getMaxMicros());
+        assertEquals(5_000, histogram.getPercentileMicros(50), 5_000 * 0.25);
+        assertEquals(9_900, histogram.getPercentileMicros(99), 9_900 * 0.25);
+        assertEquals(5_000.5, histogram.getMeanMicros(), 0.001);
+    }
+
+    @Test
+    public void stdDev_zeroForConstantIntervals() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int index = 0; index < 100; index++) {
+            histogram.recordNanos(33_333_000);
+        }
+
+        assertEquals(33_333, histogram.getPercentileMicros(50), 33_333 * 0.25);
+        assertEquals(0, histogram.getStdDevMicros(), 0.001);
+    }
+}
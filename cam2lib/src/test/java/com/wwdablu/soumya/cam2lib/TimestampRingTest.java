@@ -0,0 +1,57 @@
+package com.wwdablu.soumya.cam2lib;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TimestampRingTest {
+
+    @Test
+    public void evictsOldestWhenFull() {
+        TimestampRing<String> ring = new TimestampRing<>(3);
+        assertNull(ring.add(10, "a"));
+        assertNull(ring.add(20, "b"));
+        assertNull(ring.add(30, "c"));
+        assertTrue(ring.isFull());
+
+        assertEquals("a", ring.add(40, "d"));
+        assertEquals("b", ring.removeOldest());
+        assertEquals("c", ring.removeOldest());
+        assertEquals("d", ring.removeOldest());
+        assertNull(ring.removeOldest());
+    }
+
+    @Test
+    public void removesClosestAndKeepsOrder() {
+        TimestampRing<String> ring = new TimestampRing<>(4);
+        ring.add(100, "a");
+        ring.add(200, "b");
+        ring.add(300, "c");
+        ring.add(400, "d");
+
+        assertEquals("c", ring.removeClosest(290));
+        assertEquals("d", ring.removeClosest(Long.MAX_VALUE));
+        assertEquals(2, ring.size());
+
+        ring.add(500, "e");
+        ring.add(600, "f");
+        assertEquals("a", ring.removeOldest());
+        assertEquals("b", ring.removeOldest());
+        assertEquals("e", ring.removeOldest());
+        assertEquals("f", ring.removeOldest());
+    }
+
+    @Test
+    public void removesExactTimestamp() {
+        TimestampRing<String> ring = new TimestampRing<>(2);
+        ring.add(5, "a");
+        ring.add(7, "b");
+
+        assertNull(ring.remove(6));
+        assertEquals("b", ring.remove(7));
+        assertEquals("a", ring.remove(5));
+        assertEquals(0, ring.size());
+    }
+}